@@ -0,0 +1,360 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.converter.KShingler;
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.SignatureToBandsConverter;
+import orestes.bloomfilter.HashProvider.HashMethod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Reproducible evaluation of the accuracy and speed of MinHash and LSH configurations, on a
+ * synthetic corpus of string pairs. Every pair is made of a random text and a copy of it where
+ * every word was replaced with a probability drawn uniformly between 0 and 1 for that pair, and
+ * its true similarity is the exact Jaccard index of the sets of shingles of both strings. Only
+ * the replacement probability is uniform: since a replaced word also changes the shingles that
+ * span its neighbours, the true similarities are skewed towards 0, and the header reports how
+ * many pairs are at or above the threshold. The string Jaccard path of {@link JaccardFactory},
+ * which compares the shingle counts of both strings, is reported against the same truth.
+ * <p>
+ * For every signature size and hash method, it reports the error of the MinHash estimates
+ * against the true similarities, and for every layout of bands and rows of that signature size,
+ * the recall and precision of the LSH candidate pairs for pairs with a true similarity equal or
+ * above a threshold, along with the number of candidate pairs. Candidate pairs are measured on
+ * both paths of the library: "lsh" is the path of {@link LSHFactory}, which reduces every band
+ * modulo r with {@link SignatureToBandsConverter#apply} and matches them with
+ * {@link Similarity#isCandidatePair}, and "lsh-index" is the path of the LSH indexes, which
+ * matches the 64-bit keys of {@link SignatureToBandsConverter#toBandKeys}. Times are the fastest
+ * of several runs over all pairs in one thread, and exclude shingling, which is shared by all
+ * engines. Finally, it reports the fastest configuration of each path that meets a target recall.
+ * <p>
+ * Run with, for example:
+ * <pre>
+ * ./gradlew accuracy -PaccuracyArgs="--threshold=0.7 --recall=0.95"
+ * </pre>
+ * where the options are:
+ * <pre>
+ * --pairs=N                number of string pairs (default: 1000)
+ * --words=N                number of words in every string (default: 100)
+ * --shingle-length=K       (default: 3)
+ * --signature-sizes=LIST   (default: 32,64,128,256)
+ * --hashes=LIST            hash methods, or "permutation" (default: Murmur3,permutation)
+ * --threshold=T            similarity of the pairs that LSH should find (default: 0.5)
+ * --recall=R               target recall of LSH at that threshold (default: 0.9)
+ * --seed=S                 seed of the corpus and of permutation hashing (default: 42)
+ * </pre>
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class AccuracyEvaluation {
+
+  private static final int RUNS = 3;
+
+  private static final String PERMUTATION = "permutation";
+
+
+  private AccuracyEvaluation() {
+  }
+
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseOptions(args);
+    int pairCount = Integer.parseInt(options.getOrDefault("pairs", "1000"));
+    int wordCount = Integer.parseInt(options.getOrDefault("words", "100"));
+    int k = Integer.parseInt(options.getOrDefault("shingle-length", "3"));
+    String[] sigSizes = options.getOrDefault("signature-sizes", "32,64,128,256").split(",");
+    String[] hashes = options.getOrDefault("hashes", "Murmur3," + PERMUTATION).split(",");
+    double threshold = Double.parseDouble(options.getOrDefault("threshold", "0.5"));
+    double targetRecall = Double.parseDouble(options.getOrDefault("recall", "0.9"));
+    long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+    // corpus and ground truth
+    List<List<CharSequence>> shingles1 = new ArrayList<>(pairCount);
+    List<List<CharSequence>> shingles2 = new ArrayList<>(pairCount);
+    SplittableRandom random = new SplittableRandom(seed);
+    KShingler shingler = new KShingler(k);
+    for (int i = 0; i < pairCount; i++) {
+      String[] words = randomWords(random, wordCount);
+      String s1 = String.join(" ", words);
+      double replaceProbability = random.nextDouble();
+      for (int w = 0; w < wordCount; w++) {
+        if (random.nextDouble() < replaceProbability) {
+          words[w] = randomWord(random);
+        }
+      }
+      String s2 = String.join(" ", words);
+      shingles1.add(shingler.apply(s1).call());
+      shingles2.add(shingler.apply(s2).call());
+    }
+    double[] truth = new double[pairCount];
+    long setNanos = fastest(() -> {
+      for (int i = 0; i < pairCount; i++) {
+        truth[i] = setJaccard(shingles1.get(i), shingles2.get(i));
+      }
+      return 0;
+    });
+    double[] jaccard = new double[pairCount];
+    long jaccardNanos = fastest(() -> {
+      for (int i = 0; i < pairCount; i++) {
+        jaccard[i] = Similarity.jaccardIndexFromShingles(shingles1.get(i), shingles2.get(i));
+      }
+      return 0;
+    });
+    int relevant = 0;
+    for (double t : truth) {
+      if (t >= threshold) {
+        relevant++;
+      }
+    }
+
+    System.out.printf(Locale.ROOT,
+        "%d pairs of %d words, %d-shingles, %d pairs with similarity >= %.2f%n%n",
+        pairCount, wordCount, k, relevant, threshold);
+    System.out.printf(Locale.ROOT, "%-9s %5s %-12s %4s %4s %8s %8s %8s %8s %10s %10s%n",
+        "engine", "sig", "hash", "b", "r", "mae", "rmse", "recall", "prec.", "candidates",
+        "ms");
+    System.out.printf(Locale.ROOT, "%-9s %5s %-12s %4s %4s %8s %8s %8s %8s %10s %10.2f%n",
+        "exact", "-", "-", "-", "-", "0", "0", "1", "1", relevant, setNanos / 1e6);
+    printErrors("jaccard", "-", "-", jaccard, truth, jaccardNanos);
+
+    // fastest configuration of the factory path and of the index path that meets the recall
+    Best[] best = {null, null};
+    for (String hash : hashes) {
+      for (String sigSizeOption : sigSizes) {
+        int sigSize = Integer.parseInt(sigSizeOption.trim());
+        KShinglesToSignatureConverter converter = PERMUTATION.equals(hash)
+            ? new KShinglesToSignatureConverter(sigSize, seed)
+            : new KShinglesToSignatureConverter(HashMethod.valueOf(hash), sigSize);
+
+        int[][] signatures1 = new int[pairCount][sigSize];
+        int[][] signatures2 = new int[pairCount][sigSize];
+        long signNanos = fastest(() -> {
+          for (int i = 0; i < pairCount; i++) {
+            converter.sign(shingles1.get(i), signatures1[i]);
+            converter.sign(shingles2.get(i), signatures2[i]);
+          }
+          return 0;
+        });
+
+        double[] estimates = new double[pairCount];
+        long estimateNanos = fastest(() -> {
+          for (int i = 0; i < pairCount; i++) {
+            estimates[i] = Similarity.signatureIndex(signatures1[i], signatures2[i]);
+          }
+          return 0;
+        });
+        printErrors("minhash", String.valueOf(sigSize), hash, estimates, truth,
+            signNanos + estimateNanos);
+
+        // every layout of bands and rows with at least two of each
+        for (int r = 2; r <= sigSize / 2; r++) {
+          if (sigSize % r != 0) {
+            continue;
+          }
+          int b = sigSize / r;
+          SignatureToBandsConverter bandConverter = new SignatureToBandsConverter(b, r);
+          boolean[] candidates = new boolean[pairCount];
+          long bandNanos = fastest(() -> {
+            for (int i = 0; i < pairCount; i++) {
+              candidates[i] = Similarity.isCandidatePair(
+                  bandsOf(bandConverter, signatures1[i]),
+                  bandsOf(bandConverter, signatures2[i]));
+            }
+            return 0;
+          });
+          best[0] = printCandidates("lsh", sigSize, hash, b, r, candidates, truth, threshold,
+              relevant, targetRecall, signNanos + bandNanos, best[0]);
+
+          long keyNanos = fastest(() -> {
+            for (int i = 0; i < pairCount; i++) {
+              candidates[i] = isCandidatePair(
+                  bandConverter.toBandKeys(signatures1[i]),
+                  bandConverter.toBandKeys(signatures2[i]));
+            }
+            return 0;
+          });
+          best[1] = printCandidates("lsh-index", sigSize, hash, b, r, candidates, truth,
+              threshold, relevant, targetRecall, signNanos + keyNanos, best[1]);
+        }
+      }
+    }
+
+    System.out.println();
+    String[] engines = {"lsh", "lsh-index"};
+    for (int i = 0; i < engines.length; i++) {
+      System.out.printf(Locale.ROOT, "fastest %s configuration with recall >= %.2f: %s%n",
+          engines[i], targetRecall, best[i] != null ? best[i].description : "none");
+    }
+  }
+
+
+  private static double setJaccard(List<CharSequence> shingles1, List<CharSequence> shingles2) {
+    Set<String> set1 = new HashSet<>();
+    Set<String> set2 = new HashSet<>();
+    shingles1.forEach(shingle -> set1.add(shingle.toString()));
+    shingles2.forEach(shingle -> set2.add(shingle.toString()));
+    int intersection = 0;
+    for (String shingle : set2) {
+      if (set1.contains(shingle)) {
+        intersection++;
+      }
+    }
+    return Similarity.jaccardIndex(intersection, set1.size() + set2.size() - intersection);
+  }
+
+
+  /**
+   * Prints the mean absolute error and the root mean squared error of the specified similarities.
+   */
+  private static void printErrors(
+      String engine,
+      String sigSize,
+      String hash,
+      double[] similarities,
+      double[] truth,
+      long nanos) {
+    double absoluteErrors = 0;
+    double squaredErrors = 0;
+    for (int i = 0; i < truth.length; i++) {
+      double error = similarities[i] - truth[i];
+      absoluteErrors += Math.abs(error);
+      squaredErrors += error * error;
+    }
+    System.out.printf(Locale.ROOT, "%-9s %5s %-12s %4s %4s %8.4f %8.4f %8s %8s %10s %10.2f%n",
+        engine, sigSize, hash, "-", "-",
+        absoluteErrors / truth.length, Math.sqrt(squaredErrors / truth.length),
+        "-", "-", "-", nanos / 1e6);
+  }
+
+
+  /**
+   * Prints the recall and precision of the specified candidate pairs, and returns the faster of
+   * the specified best configuration and this one if it meets the target recall.
+   */
+  private static Best printCandidates(
+      String engine,
+      int sigSize,
+      String hash,
+      int b,
+      int r,
+      boolean[] candidates,
+      double[] truth,
+      double threshold,
+      int relevant,
+      double targetRecall,
+      long nanos,
+      Best best) {
+    int candidateCount = 0;
+    int truePositives = 0;
+    for (int i = 0; i < candidates.length; i++) {
+      if (candidates[i]) {
+        candidateCount++;
+        if (truth[i] >= threshold) {
+          truePositives++;
+        }
+      }
+    }
+    double recall = relevant == 0 ? 1 : (double) truePositives / relevant;
+    double precision = candidateCount == 0 ? 1 : (double) truePositives / candidateCount;
+    System.out.printf(Locale.ROOT,
+        "%-9s %5d %-12s %4d %4d %8s %8s %8.4f %8.4f %10d %10.2f%n",
+        engine, sigSize, hash, b, r, "-", "-", recall, precision, candidateCount, nanos / 1e6);
+    if (recall < targetRecall || (best != null && best.nanos <= nanos)) {
+      return best;
+    }
+    return new Best(nanos, String.format(Locale.ROOT,
+        "sig=%d hash=%s b=%d r=%d (recall %.4f, precision %.4f, %.2f ms)",
+        sigSize, hash, b, r, recall, precision, nanos / 1e6));
+  }
+
+
+  /**
+   * Returns the bands of the specified signature as {@link LSHFactory} computes them.
+   */
+  private static int[] bandsOf(SignatureToBandsConverter bandConverter, int[] signature) {
+    try {
+      return bandConverter.apply(signature).call();
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+
+  private static boolean isCandidatePair(long[] bandKeys1, long[] bandKeys2) {
+    for (int band = 0; band < bandKeys1.length; band++) {
+      if (bandKeys1[band] == bandKeys2[band]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Returns the fastest time of several runs of the specified task, in nanoseconds.
+   */
+  private static long fastest(LongSupplier task) {
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+      task.getAsLong();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+
+  private static String[] randomWords(SplittableRandom random, int count) {
+    String[] words = new String[count];
+    for (int i = 0; i < count; i++) {
+      words[i] = randomWord(random);
+    }
+    return words;
+  }
+
+
+  private static String randomWord(SplittableRandom random) {
+    char[] word = new char[3 + random.nextInt(6)];
+    for (int i = 0; i < word.length; i++) {
+      word[i] = (char) ('a' + random.nextInt(26));
+    }
+    return new String(word);
+  }
+
+
+  private static final class Best {
+
+    private final long nanos;
+
+    private final String description;
+
+
+    private Best(long nanos, String description) {
+      this.nanos = nanos;
+      this.description = description;
+    }
+  }
+
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (!arg.startsWith("--") || equals < 0) {
+        throw new IllegalArgumentException("Options must have the form --name=value: " + arg);
+      }
+      options.put(arg.substring(2, equals), arg.substring(equals + 1));
+    }
+    return options;
+  }
+}
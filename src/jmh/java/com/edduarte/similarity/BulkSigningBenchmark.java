@@ -0,0 +1,75 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.converter.KShingler;
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.signature.HeapSignatureMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares signing a corpus of 10000 email-sized strings with a future and a signature array per
+ * string, as done when calling the converters directly, with bulk signing into a packed matrix.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkSigningBenchmark {
+
+  private List<String> corpus;
+
+  private MinHashFactory factory;
+
+
+  @Setup
+  public void setUp() {
+    corpus = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      corpus.add(Corpus.text(430, i));
+    }
+    factory = Similarity.minhash().withShingleLength(5).withPermutationHashing(42);
+  }
+
+
+  @Benchmark
+  public List<int[]> perDocumentFutures() throws Exception {
+    KShingler shingler = new KShingler(5);
+    KShinglesToSignatureConverter converter = new KShinglesToSignatureConverter(100, 42);
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    List<Future<int[]>> futures = new ArrayList<>();
+    for (String s : corpus) {
+      futures.add(pool.submit(() -> converter.apply(shingler.apply(s).call()).call()));
+    }
+    List<int[]> signatures = new ArrayList<>();
+    for (Future<int[]> future : futures) {
+      signatures.add(future.get());
+    }
+    return signatures;
+  }
+
+
+  @Benchmark
+  public HeapSignatureMatrix signAll() {
+    return factory.signAll(corpus);
+  }
+}
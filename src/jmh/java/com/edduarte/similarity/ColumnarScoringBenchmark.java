@@ -0,0 +1,91 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.signature.ColumnarSignatureBlock;
+import com.edduarte.similarity.signature.HeapSignatureMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to compare one query signature against a block of stored signatures, kept
+ * as separate row arrays, as a packed row-major matrix and as a columnar block.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnarScoringBenchmark {
+
+  @Param({"10000"})
+  public int rows;
+
+  @Param({"128"})
+  public int signatureSize;
+
+  private int[][] signatures;
+
+  private HeapSignatureMatrix packed;
+
+  private ColumnarSignatureBlock columnar;
+
+  private int[] query;
+
+  private int[] matches;
+
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    signatures = new int[rows][];
+    packed = new HeapSignatureMatrix(signatureSize, rows);
+    columnar = new ColumnarSignatureBlock(signatureSize, rows);
+    for (int row = 0; row < rows; row++) {
+      signatures[row] = random.ints(signatureSize, 0, 16).toArray();
+      packed.append(signatures[row]);
+      columnar.append(signatures[row]);
+    }
+    query = random.ints(signatureSize, 0, 16).toArray();
+    matches = new int[rows];
+  }
+
+
+  @Benchmark
+  public double[] rowArrays() {
+    double[] similarities = new double[rows];
+    for (int row = 0; row < rows; row++) {
+      similarities[row] = Similarity.signatureIndex(query, signatures[row]);
+    }
+    return similarities;
+  }
+
+
+  @Benchmark
+  public int[] packedRows() {
+    packed.matches(query, 0, rows, matches);
+    return matches;
+  }
+
+
+  @Benchmark
+  public int[] columnarBlock() {
+    columnar.matches(query, 0, rows, matches);
+    return matches;
+  }
+}
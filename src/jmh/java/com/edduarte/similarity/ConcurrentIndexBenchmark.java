@@ -0,0 +1,140 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.index.ConcurrentLSHIndex;
+import com.edduarte.similarity.index.LSHIndex;
+import com.edduarte.similarity.index.Match;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of the read-write locked LSH index with the concurrent LSH index, when
+ * documents are added by several threads, and when they are added while other threads query.
+ * Scalability is measured by running this benchmark with an increasing number of threads, for
+ * example with {@code -t 1}, {@code -t 2}, {@code -t 4} up to the number of cores (or, with
+ * gradle, {@code -PjmhThreads=4}). The mixed group runs one adding thread for every querying one.
+ * Every added document has a new random signature, so that buckets do not grow with the number of
+ * times the same signatures were added.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentIndexBenchmark {
+
+  private static final int BANDS = 20;
+
+  private static final int SIGNATURE_SIZE = 100;
+
+  private static final int POOL_SIZE = 1 << 14;
+
+  @Param({"locked", "concurrent"})
+  public String index;
+
+  private int[][] pool;
+
+  private AtomicLong ids;
+
+  private LSHIndex lockedIndex;
+
+  private ConcurrentLSHIndex concurrentIndex;
+
+
+  @Setup
+  public void setUp() {
+    pool = new int[POOL_SIZE][];
+    for (int i = 0; i < POOL_SIZE; i++) {
+      pool[i] = signatureOf(i);
+    }
+  }
+
+
+  /**
+   * Starts every iteration with an index that holds the signatures of the pool, which are those of
+   * the first ids, so that queries find a match and the size of the index does not depend on
+   * earlier iterations.
+   */
+  @Setup(Level.Iteration)
+  public void setUpIndex() {
+    ids = new AtomicLong();
+    lockedIndex = "locked".equals(index) ? new LSHIndex(BANDS, SIGNATURE_SIZE) : null;
+    concurrentIndex = "concurrent".equals(index)
+        ? new ConcurrentLSHIndex(BANDS, SIGNATURE_SIZE)
+        : null;
+    for (int i = 0; i < POOL_SIZE; i++) {
+      add();
+    }
+  }
+
+
+  @Benchmark
+  public void add() {
+    long id = ids.getAndIncrement();
+    int[] signature = signatureOf(id);
+    if (lockedIndex != null) {
+      lockedIndex.add(id, signature);
+    } else {
+      concurrentIndex.add(id, signature);
+    }
+  }
+
+
+  @Benchmark
+  public List<Match> query() {
+    int[] signature = pool[ThreadLocalRandom.current().nextInt(POOL_SIZE)];
+    if (lockedIndex != null) {
+      return lockedIndex.query(signature, 10);
+    } else {
+      return concurrentIndex.query(signature, 10);
+    }
+  }
+
+
+  @Benchmark
+  @Group("mixed")
+  public void mixedAdd() {
+    add();
+  }
+
+
+  @Benchmark
+  @Group("mixed")
+  public List<Match> mixedQuery() {
+    return query();
+  }
+
+
+  /**
+   * Returns the random signature of the document with the specified id.
+   */
+  private static int[] signatureOf(long id) {
+    SplittableRandom random = new SplittableRandom(id);
+    int[] signature = new int[SIGNATURE_SIZE];
+    for (int i = 0; i < SIGNATURE_SIZE; i++) {
+      signature[i] = random.nextInt();
+    }
+    return signature;
+  }
+}
@@ -0,0 +1,37 @@
+package com.edduarte.similarity;
+
+import java.util.Random;
+
+/**
+ * Generator of reproducible synthetic text for benchmarks.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+final class Corpus {
+
+  private static final String[] WORDS = {
+      "the", "of", "and", "a", "to", "in", "is", "was", "for", "on", "that", "with", "as", "by",
+      "giant", "mythology", "greek", "norse", "eyed", "hundred", "watchman", "goddess", "hera",
+      "argus", "panoptes", "slain", "hermes", "peacock", "tail", "eyes", "sleep", "never", "all",
+      "name", "myth", "story", "ancient", "poem", "tells", "cow", "io", "zeus", "guard", "lyre"
+  };
+
+
+  private Corpus() {
+  }
+
+
+  /**
+   * Returns a string of random words with approximately the specified length.
+   */
+  static String text(int length, long seed) {
+    Random random = new Random(seed);
+    StringBuilder sb = new StringBuilder(length + 16);
+    while (sb.length() < length) {
+      sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+    }
+    return sb.toString();
+  }
+}
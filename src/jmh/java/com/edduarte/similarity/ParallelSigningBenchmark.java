@@ -0,0 +1,58 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.converter.KShingler;
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares signing the shingles of a single 2MB document in one thread with signing them in
+ * parallel chunks on the common pool.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelSigningBenchmark {
+
+  private List<CharSequence> shingles;
+
+  private KShinglesToSignatureConverter converter;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    shingles = new KShingler(8).apply(Corpus.text(2 << 20, 42)).call();
+    converter = new KShinglesToSignatureConverter(100, 42);
+  }
+
+
+  @Benchmark
+  public int[] sequential() throws Exception {
+    return converter.apply(shingles).call();
+  }
+
+
+  @Benchmark
+  public int[] parallel() {
+    return converter.signParallel(shingles, ForkJoinPool.commonPool());
+  }
+}
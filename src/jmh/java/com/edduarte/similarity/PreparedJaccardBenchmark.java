@@ -0,0 +1,80 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.sketch.PreparedDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the exact Jaccard similarity of two article-sized strings (about 7800 characters)
+ * computed from the strings, with the one computed from their prepared documents, and with the
+ * MinHash estimate computed from their signatures, as when the same reference documents are
+ * compared many times.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreparedJaccardBenchmark {
+
+  private String s1;
+
+  private String s2;
+
+  private JaccardFactory jaccard;
+
+  private PreparedDocument prepared1;
+
+  private PreparedDocument prepared2;
+
+  private int[] signature1;
+
+  private int[] signature2;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    s1 = Corpus.text(7800, 42);
+    s2 = Corpus.text(3900, 42) + Corpus.text(3900, 7);
+    jaccard = Similarity.jaccard().withShingleLength(8);
+    prepared1 = jaccard.prepare(s1);
+    prepared2 = jaccard.prepare(s2);
+    KShinglesToSignatureConverter converter = new KShinglesToSignatureConverter(100, 42);
+    signature1 = converter.apply(jaccard.newShingler(8).apply(s1).call()).call();
+    signature2 = converter.apply(jaccard.newShingler(8).apply(s2).call()).call();
+  }
+
+
+  @Benchmark
+  public double strings() {
+    return jaccard.of(s1, s2);
+  }
+
+
+  @Benchmark
+  public double prepared() {
+    return prepared1.jaccard(prepared2);
+  }
+
+
+  @Benchmark
+  public double minhashSignatures() {
+    return Similarity.signatureIndex(signature1, signature2);
+  }
+}
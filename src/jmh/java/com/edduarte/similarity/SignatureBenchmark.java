@@ -0,0 +1,62 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.converter.KShingler;
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import orestes.bloomfilter.HashProvider.HashMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to sign the shingles of an article-sized string (about 7800 characters) with
+ * each of the hash methods, and with universal permutations of a single hash per shingle.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+
+  @Param({"Permutation", "Murmur3", "Murmur3KirschMitzenmacher", "FNVWithLCG", "CRC32", "MD5"})
+  public String hashing;
+
+  @Param({"100"})
+  public int signatureSize;
+
+  private List<CharSequence> shingles;
+
+  private KShinglesToSignatureConverter converter;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    String text = Corpus.text(7800, 42);
+    shingles = new KShingler(8).apply(text).call();
+    converter = hashing.equals("Permutation")
+        ? new KShinglesToSignatureConverter(signatureSize, 42)
+        : new KShinglesToSignatureConverter(HashMethod.valueOf(hashing), signatureSize);
+  }
+
+
+  @Benchmark
+  public int[] sign() throws Exception {
+    return converter.apply(shingles).call();
+  }
+}
@@ -0,0 +1,106 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.converter.CollectionToSignatureConverter;
+import com.edduarte.similarity.converter.ElementHasher;
+import com.edduarte.similarity.converter.KShingler;
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.SetToSignatureConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares signing into a new array per call with signing into a reused array, for the shingles
+ * of an article-sized string, for a set of 1000 numbers and for a set of 1000 string ids. Run it
+ * with the GC profiler to see the allocated bytes per operation (gc.alloc.rate.norm), which must
+ * be 0 for the reused arrays:
+ * <pre>
+ * ./gradlew jmh -PjmhInclude=SigningAllocationBenchmark -PjmhProfilers=gc
+ * </pre>
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SigningAllocationBenchmark {
+
+  private static final int SIGNATURE_SIZE = 100;
+
+  private List<CharSequence> shingles;
+
+  private List<Integer> set;
+
+  private List<String> stringSet;
+
+  private KShinglesToSignatureConverter shingleConverter;
+
+  private SetToSignatureConverter setConverter;
+
+  private CollectionToSignatureConverter<Object> objectConverter;
+
+  private int[] signature;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    shingles = new KShingler(8).apply(Corpus.text(7800, 42)).call();
+    set = new ArrayList<>();
+    stringSet = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      set.add(i * 7);
+      stringSet.add("id-" + i * 7);
+    }
+    shingleConverter = new KShinglesToSignatureConverter(SIGNATURE_SIZE, 42);
+    setConverter = new SetToSignatureConverter(7000, SIGNATURE_SIZE);
+    objectConverter = new CollectionToSignatureConverter<>(
+        ElementHasher::hash, SIGNATURE_SIZE, 42);
+    signature = new int[SIGNATURE_SIZE];
+  }
+
+
+  @Benchmark
+  public int[] shinglesToNewArray() throws Exception {
+    return shingleConverter.apply(shingles).call();
+  }
+
+
+  @Benchmark
+  public int[] shinglesToReusedArray() {
+    return shingleConverter.sign(shingles, signature);
+  }
+
+
+  @Benchmark
+  public int[] setToNewArray() throws Exception {
+    return setConverter.apply(set).call();
+  }
+
+
+  @Benchmark
+  public int[] setToReusedArray() {
+    return setConverter.sign(set, signature);
+  }
+
+
+  @Benchmark
+  public int[] stringSetToReusedArray() {
+    return objectConverter.sign(stringSet, signature);
+  }
+}
@@ -0,0 +1,121 @@
+package com.edduarte.similarity;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, in the style of HdrHistogram:
+ * values are grouped by their highest set bit, and every group is split in 64 linear buckets, so
+ * that every recorded value is reported with a relative error below 1/64 (about 1.6%) with a fixed
+ * number of buckets for the full range of a long. Values can be recorded by many threads at once.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+final class LatencyHistogram {
+
+  /**
+   * Number of bits of every value that select its linear bucket within its group
+   */
+  private static final int SUB_BUCKET_BITS = 6;
+
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * Values lower than twice the number of sub-buckets are counted exactly, and every higher
+   * power of two range is one group of sub-buckets
+   */
+  private static final int BUCKET_COUNT =
+      2 * SUB_BUCKET_COUNT + (Long.SIZE - SUB_BUCKET_BITS - 2) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts;
+
+  private final AtomicLong totalCount;
+
+  private final AtomicLong sum;
+
+  private final AtomicLong max;
+
+
+  LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKET_COUNT);
+    this.totalCount = new AtomicLong();
+    this.sum = new AtomicLong();
+    this.max = new AtomicLong();
+  }
+
+
+  /**
+   * Records the specified latency, where negative values are recorded as 0.
+   */
+  void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    counts.incrementAndGet(bucketOf(value));
+    totalCount.incrementAndGet();
+    sum.addAndGet(value);
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      // retry until this value was stored, or a higher one was
+    }
+  }
+
+
+  long getCount() {
+    return totalCount.get();
+  }
+
+
+  long getMax() {
+    return max.get();
+  }
+
+
+  double getMean() {
+    long count = totalCount.get();
+    return count == 0 ? 0 : (double) sum.get() / count;
+  }
+
+
+  /**
+   * Returns the highest value that is equivalent, within the precision of this histogram, to the
+   * value below which the specified percentage of the recorded values fall, or 0 if nothing was
+   * recorded.
+   */
+  long getValueAtPercentile(double percentile) {
+    long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueOf(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+
+  static int bucketOf(long value) {
+    if (value < 2 * SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // the shift that leaves the SUB_BUCKET_BITS + 1 highest bits of the value
+    int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+  }
+
+
+  static long highestValueOf(int bucket) {
+    if (bucket < 2 * SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKET_COUNT - 1;
+    long subBucket = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
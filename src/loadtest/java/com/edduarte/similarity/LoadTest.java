@@ -0,0 +1,530 @@
+package com.edduarte.similarity;
+
+import orestes.bloomfilter.HashProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Load test that replays a corpus through a factory, comparing every document of the corpus with
+ * the next one, in a loop, and reports the throughput and the latency percentiles of those
+ * comparisons. The corpus is a text file with one document per line, which is either a string
+ * or a set of numbers separated by spaces or commas.
+ * <p>
+ * Comparisons are made either with {@code of}, by as many threads as the concurrency, or with
+ * {@code ofAsync}, by a single thread that keeps as many comparisons in flight as the
+ * concurrency. When a target rate is set, comparisons are started at that rate and their latency
+ * is measured from the time they were meant to start, so that a stalled factory is reported in
+ * the latency of every comparison that waited for it, rather than only in the one that stalled.
+ * <p>
+ * Run with, for example:
+ * <pre>
+ * ./gradlew loadTest -PloadTestArgs="--corpus=docs.txt --factory=minhash --concurrency=4"
+ * </pre>
+ * where the options are:
+ * <pre>
+ * --corpus=PATH            corpus file (required)
+ * --type=strings|sets      type of the documents in the corpus (default: strings)
+ * --factory=NAME           jaccard, minhash, lsh, simhash or adaptive (default: jaccard)
+ * --mode=of|ofAsync        (default: of)
+ * --concurrency=N          (default: 1)
+ * --executor-threads=N     size of a fixed pool set with withExecutor (default: none)
+ * --warmup=SECONDS         (default: 5)
+ * --duration=SECONDS       (default: 30)
+ * --rate=OPS               target comparisons per second, or 0 for none (default: 0)
+ * --timeout=SECONDS        time to wait for a comparison before giving up (default: 10)
+ * --shingle-length=K       --word-shingle-length=N  --signature-size=N  --bands=N  --rows=N
+ * --threshold=T            --hash=NAME  --seed=S
+ * </pre>
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class LoadTest {
+
+  private final IntToDoubleFunction of;
+
+  private final IntFunction<CompletableFuture<Double>> ofAsync;
+
+  private Mode mode;
+
+  private int concurrency;
+
+  private long warmupNanos;
+
+  private long durationNanos;
+
+  private double rate;
+
+  private long timeoutNanos;
+
+
+  private LoadTest(
+      IntToDoubleFunction of,
+      IntFunction<CompletableFuture<Double>> ofAsync) {
+    this.of = of;
+    this.ofAsync = ofAsync;
+    this.mode = Mode.OF;
+    this.concurrency = 1;
+    this.warmupNanos = TimeUnit.SECONDS.toNanos(5);
+    this.durationNanos = TimeUnit.SECONDS.toNanos(30);
+    this.rate = 0;
+    this.timeoutNanos = TimeUnit.SECONDS.toNanos(10);
+  }
+
+
+  /**
+   * Instantiates a load test that compares every string with the next one with the specified
+   * factory, as configured by the caller.
+   */
+  static LoadTest ofStrings(Factory factory, List<String> corpus) {
+    checkCorpus(corpus);
+    int n = corpus.size();
+    return new LoadTest(
+        i -> factory.of(corpus.get(i % n), corpus.get((i + 1) % n)),
+        i -> factory.ofAsync(corpus.get(i % n), corpus.get((i + 1) % n)));
+  }
+
+
+  /**
+   * Instantiates a load test that compares every set with the next one with the specified
+   * factory, as configured by the caller.
+   */
+  static LoadTest ofSets(Factory factory, List<? extends List<? extends Number>> corpus) {
+    checkCorpus(corpus);
+    int n = corpus.size();
+    return new LoadTest(
+        i -> factory.of(corpus.get(i % n), corpus.get((i + 1) % n)),
+        i -> factory.ofAsync(corpus.get(i % n), corpus.get((i + 1) % n)));
+  }
+
+
+  private static void checkCorpus(List<?> corpus) {
+    if (corpus.size() < 2) {
+      throw new IllegalArgumentException("The corpus must have at least two documents.");
+    }
+  }
+
+
+  LoadTest withMode(Mode mode) {
+    this.mode = mode;
+    return this;
+  }
+
+
+  /**
+   * Number of threads that call {@code of}, or number of {@code ofAsync} comparisons in flight.
+   */
+  LoadTest withConcurrency(int concurrency) {
+    if (concurrency <= 0) {
+      throw new IllegalArgumentException("The concurrency must be positive.");
+    }
+    this.concurrency = concurrency;
+    return this;
+  }
+
+
+  LoadTest withWarmup(long time, TimeUnit unit) {
+    this.warmupNanos = unit.toNanos(time);
+    return this;
+  }
+
+
+  LoadTest withDuration(long time, TimeUnit unit) {
+    this.durationNanos = unit.toNanos(time);
+    return this;
+  }
+
+
+  /**
+   * Target number of comparisons started per second, or 0 to start every comparison as soon as
+   * a thread (or, with {@code ofAsync}, a slot) is free.
+   */
+  LoadTest withRate(double rate) {
+    this.rate = rate;
+    return this;
+  }
+
+
+  /**
+   * Time to wait for a comparison to complete before the run is aborted, which happens when the
+   * comparisons stall, for example when the executor of the factory has fewer threads than
+   * comparisons in flight, as every comparison waits for tasks that are queued behind others.
+   */
+  LoadTest withTimeout(long time, TimeUnit unit) {
+    this.timeoutNanos = unit.toNanos(time);
+    return this;
+  }
+
+
+  /**
+   * Runs the warmup, whose results are discarded, and then the measured run.
+   */
+  Report run() throws InterruptedException {
+    runFor(warmupNanos);
+    return runFor(durationNanos);
+  }
+
+
+  private Report runFor(long nanos) throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    AtomicLong errors = new AtomicLong();
+    long start = System.nanoTime();
+    if (mode == Mode.OF) {
+      runOf(start, start + nanos, histogram, errors);
+    } else {
+      runOfAsync(start, start + nanos, histogram, errors);
+    }
+    long elapsed = System.nanoTime() - start;
+    return new Report(histogram, errors.get(), elapsed);
+  }
+
+
+  private void runOf(
+      long start,
+      long end,
+      LatencyHistogram histogram,
+      AtomicLong errors) throws InterruptedException {
+    // every thread paces itself at its share of the rate, offset from the others
+    long interval = rate > 0 ? (long) (1e9 * concurrency / rate) : 0;
+    CountDownLatch done = new CountDownLatch(concurrency);
+    for (int t = 0; t < concurrency; t++) {
+      int thread = t;
+      Thread worker = new Thread(() -> {
+        long intended = start + interval * thread / concurrency;
+        for (int i = thread; System.nanoTime() < end; i += concurrency) {
+          long begin = interval > 0 ? waitUntil(intended) : System.nanoTime();
+          try {
+            of.applyAsDouble(i & Integer.MAX_VALUE);
+          } catch (RuntimeException ex) {
+            errors.incrementAndGet();
+          }
+          histogram.record(System.nanoTime() - begin);
+          intended += interval;
+        }
+        done.countDown();
+      }, "load-test-" + t);
+      worker.setDaemon(true);
+      worker.start();
+    }
+    if (!done.await(end + timeoutNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+      throw stalled();
+    }
+  }
+
+
+  private void runOfAsync(
+      long start,
+      long end,
+      LatencyHistogram histogram,
+      AtomicLong errors) throws InterruptedException {
+    long interval = rate > 0 ? (long) (1e9 / rate) : 0;
+    Semaphore slots = new Semaphore(concurrency);
+    long intended = start;
+    for (int i = 0; System.nanoTime() < end; i++) {
+      // at a fixed rate, the time waiting for a slot is part of the latency, while without a
+      // rate the comparison only begins once a slot is free
+      if (interval > 0) {
+        waitUntil(intended);
+      }
+      if (!slots.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+        throw stalled();
+      }
+      long begin = interval > 0 ? intended : System.nanoTime();
+      CompletableFuture<Double> future;
+      try {
+        future = ofAsync.apply(i & Integer.MAX_VALUE);
+      } catch (RuntimeException ex) {
+        future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+      }
+      future.whenComplete((result, ex) -> {
+        if (ex != null) {
+          errors.incrementAndGet();
+        }
+        histogram.record(System.nanoTime() - begin);
+        slots.release();
+      });
+      intended += interval;
+    }
+    // waits for the comparisons in flight
+    if (!slots.tryAcquire(concurrency, timeoutNanos, TimeUnit.NANOSECONDS)) {
+      throw stalled();
+    }
+  }
+
+
+  private IllegalStateException stalled() {
+    return new IllegalStateException(String.format(Locale.ROOT,
+        "Comparisons did not complete within %d ms, check if the executor has fewer threads than"
+            + " the concurrency.", TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+  }
+
+
+  /**
+   * Waits until the specified time, if it was not reached yet, and returns it.
+   */
+  private static long waitUntil(long time) {
+    long remaining;
+    while ((remaining = time - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+    return time;
+  }
+
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Map<String, String> options = parseOptions(args);
+    String corpusPath = options.get("corpus");
+    if (corpusPath == null) {
+      System.err.println("Usage: LoadTest --corpus=PATH [--option=value ...]");
+      System.exit(2);
+    }
+
+    ExecutorService exec = null;
+    if (options.containsKey("executor-threads")) {
+      exec = Executors.newFixedThreadPool(intOption(options, "executor-threads", 1));
+    }
+    try {
+      Factory factory = newFactory(options, exec);
+      Path path = Paths.get(corpusPath);
+      LoadTest test = "sets".equals(options.getOrDefault("type", "strings"))
+          ? ofSets(factory, readSets(path))
+          : ofStrings(factory, Files.readAllLines(path, StandardCharsets.UTF_8));
+      test.withMode(Mode.of(options.getOrDefault("mode", "of")))
+          .withConcurrency(intOption(options, "concurrency", 1))
+          .withWarmup(intOption(options, "warmup", 5), TimeUnit.SECONDS)
+          .withDuration(intOption(options, "duration", 30), TimeUnit.SECONDS)
+          .withRate(Double.parseDouble(options.getOrDefault("rate", "0")))
+          .withTimeout(intOption(options, "timeout", 10), TimeUnit.SECONDS);
+      Report report = test.run();
+      System.out.println(options.entrySet().stream()
+          .map(e -> e.getKey() + "=" + e.getValue())
+          .sorted()
+          .collect(Collectors.joining(" ")));
+      System.out.println(report);
+    } finally {
+      if (exec != null) {
+        // comparisons that stalled are interrupted
+        exec.shutdownNow();
+      }
+    }
+  }
+
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (!arg.startsWith("--") || equals < 0) {
+        throw new IllegalArgumentException("Options must have the form --name=value: " + arg);
+      }
+      options.put(arg.substring(2, equals), arg.substring(equals + 1));
+    }
+    return options;
+  }
+
+
+  private static int intOption(Map<String, String> options, String name, int defaultValue) {
+    String value = options.get(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+
+  private static Factory newFactory(Map<String, String> options, ExecutorService exec) {
+    String name = options.getOrDefault("factory", "jaccard");
+    int k = intOption(options, "shingle-length", 2);
+    int wordShingleLength = intOption(options, "word-shingle-length", 0);
+    switch (name) {
+      case "jaccard": {
+        JaccardFactory factory = Similarity.jaccard().withShingleLength(k);
+        if (wordShingleLength > 0) {
+          factory.withWordShingleLength(wordShingleLength);
+        }
+        return exec != null ? factory.withExecutor(exec) : factory;
+      }
+      case "minhash": {
+        MinHashFactory factory = Similarity.minhash()
+            .withShingleLength(k)
+            .withSignatureSize(intOption(options, "signature-size", 100));
+        if (wordShingleLength > 0) {
+          factory.withWordShingleLength(wordShingleLength);
+        }
+        if (options.containsKey("hash")) {
+          factory.withHashMethod(hashMethod(options.get("hash")));
+        }
+        if (options.containsKey("seed")) {
+          factory.withPermutationHashing(Long.parseLong(options.get("seed")));
+        }
+        return exec != null ? factory.withExecutor(exec) : factory;
+      }
+      case "lsh": {
+        LSHFactory factory = Similarity.lsh()
+            .withShingleLength(k)
+            .withNumberOfBands(intOption(options, "bands", 20))
+            .withNumberOfRows(intOption(options, "rows", 5));
+        if (wordShingleLength > 0) {
+          factory.withWordShingleLength(wordShingleLength);
+        }
+        if (options.containsKey("threshold")) {
+          factory.withThreshold(Double.parseDouble(options.get("threshold")));
+        }
+        if (options.containsKey("hash")) {
+          factory.withHashMethod(hashMethod(options.get("hash")));
+        }
+        if (options.containsKey("seed")) {
+          factory.withPermutationHashing(Long.parseLong(options.get("seed")));
+        }
+        return exec != null ? factory.withExecutor(exec) : factory;
+      }
+      case "simhash": {
+        SimHashFactory factory = Similarity.simhash().withShingleLength(k);
+        if (wordShingleLength > 0) {
+          factory.withWordShingleLength(wordShingleLength);
+        }
+        if (options.containsKey("seed")) {
+          factory.withSeed(Long.parseLong(options.get("seed")));
+        }
+        return exec != null ? factory.withExecutor(exec) : factory;
+      }
+      case "adaptive": {
+        AdaptiveFactory factory = Similarity.adaptive()
+            .withShingleLength(k)
+            .withSignatureSize(intOption(options, "signature-size", 100));
+        if (wordShingleLength > 0) {
+          factory.withWordShingleLength(wordShingleLength);
+        }
+        if (options.containsKey("seed")) {
+          factory.withPermutationHashing(Long.parseLong(options.get("seed")));
+        }
+        return exec != null ? factory.withExecutor(exec) : factory;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown factory: " + name);
+    }
+  }
+
+
+  private static HashProvider.HashMethod hashMethod(String name) {
+    for (HashProvider.HashMethod method : HashProvider.HashMethod.values()) {
+      if (method.name().equalsIgnoreCase(name)) {
+        return method;
+      }
+    }
+    throw new IllegalArgumentException("Unknown hash method: " + name);
+  }
+
+
+  private static List<List<Long>> readSets(Path path) throws IOException {
+    List<List<Long>> sets = new ArrayList<>();
+    for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+      List<Long> set = new ArrayList<>();
+      for (String number : line.trim().split("[\\s,]+")) {
+        if (!number.isEmpty()) {
+          set.add(Long.parseLong(number));
+        }
+      }
+      sets.add(set);
+    }
+    return sets;
+  }
+
+
+  /**
+   * Methods of a factory through which comparisons are made.
+   */
+  enum Mode {
+    OF, OF_ASYNC;
+
+
+    static Mode of(String name) {
+      switch (name) {
+        case "of":
+          return OF;
+        case "ofAsync":
+          return OF_ASYNC;
+        default:
+          throw new IllegalArgumentException("Unknown mode: " + name);
+      }
+    }
+  }
+
+
+  /**
+   * Throughput and latency of the comparisons made in a run.
+   */
+  static final class Report {
+
+    private final LatencyHistogram histogram;
+
+    private final long errors;
+
+    private final long elapsedNanos;
+
+
+    private Report(LatencyHistogram histogram, long errors, long elapsedNanos) {
+      this.histogram = histogram;
+      this.errors = errors;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+
+    long getOperations() {
+      return histogram.getCount();
+    }
+
+
+    long getErrors() {
+      return errors;
+    }
+
+
+    double getThroughput() {
+      return histogram.getCount() * 1e9 / elapsedNanos;
+    }
+
+
+    /**
+     * Returns the latency below which the specified percentage of comparisons completed, in
+     * nanoseconds.
+     */
+    long getLatency(double percentile) {
+      return histogram.getValueAtPercentile(percentile);
+    }
+
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT,
+          "operations  %d (%d errors)%n"
+              + "throughput  %.1f ops/s%n"
+              + "latency     mean %.1f us, p50 %.1f us, p99 %.1f us, p999 %.1f us, max %.1f us",
+          getOperations(), errors, getThroughput(),
+          histogram.getMean() / 1e3,
+          getLatency(50) / 1e3,
+          getLatency(99) / 1e3,
+          getLatency(99.9) / 1e3,
+          histogram.getMax() / 1e3);
+    }
+  }
+}
@@ -0,0 +1,568 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.Shingler;
+import com.edduarte.similarity.impl.JaccardSetSimilarity;
+import com.edduarte.similarity.impl.JaccardStringSimilarity;
+import com.edduarte.similarity.impl.MinHashSetSimilarity;
+import com.edduarte.similarity.impl.MinHashStringSimilarity;
+import com.edduarte.similarity.sketch.HyperLogLog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Factory that picks, for every comparison, the engine that is expected to be the fastest for
+ * the size of the inputs: the exact Jaccard similarity of the sets of shingles (or elements), or
+ * its MinHash estimate with permutation hashing. Both engines compare sets, so that the result
+ * does not depend on the engine that was picked, unlike {@link JaccardFactory#of(String, String)}
+ * which compares the number of occurrences of the shingles of both strings.
+ * <p>
+ * The choice is made with a cost model that is calibrated by a short self-benchmark, which times
+ * both engines on generated strings of 512 to 262144 characters, and on generated sets of 64 to
+ * 16384 elements. The cost of each engine is interpolated between the measured sizes, for the
+ * combined size of the inputs of every comparison, and extrapolated beyond them as a power of
+ * the size between 1 and 2. Calibration takes a few seconds, and starts in a background thread on
+ * first use, while comparisons use the exact engine until it completes, or runs right away when
+ * {@link #calibrate()} is called. The engine picked for a comparison is reported by
+ * {@link #compare(String, String)}.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class AdaptiveFactory extends Factory {
+
+  /**
+   * Combined lengths of the strings, and combined sizes of the sets, that are timed when the
+   * cost model is calibrated
+   */
+  private static final int[] STRING_SIZES = {512, 4096, 32768, 262144};
+
+  private static final int[] SET_SIZES = {64, 1024, 16384};
+
+  /**
+   * Minimum time spent timing each engine for each size, in nanoseconds
+   */
+  private static final long CALIBRATION_NANOS = 10_000_000;
+
+  private int k;
+
+  private int sigSize;
+
+  private long seed;
+
+  private volatile CostModel stringCosts;
+
+  private volatile CostModel setCosts;
+
+  /**
+   * Incremented whenever the settings that are calibrated for strings (or for sets) change, so
+   * that a calibration that started before is discarded
+   */
+  private int stringGeneration;
+
+  private int setGeneration;
+
+  private boolean calibrating;
+
+
+  AdaptiveFactory() {
+    super();
+    // the same defaults of the jaccard and minhash factories
+    this.k = 2;
+    this.sigSize = 100;
+    this.seed = 0;
+    this.stringCosts = null;
+    this.setCosts = null;
+    this.stringGeneration = 0;
+    this.setGeneration = 0;
+    this.calibrating = false;
+  }
+
+
+  /**
+   * Instantiates a factory with the specified cost models, which are not calibrated.
+   */
+  AdaptiveFactory(CostModel stringCosts, CostModel setCosts) {
+    this();
+    this.stringCosts = stringCosts;
+    this.setCosts = setCosts;
+  }
+
+
+  /**
+   * Length of n-gram shingles that are used for comparison (used for strings only).
+   */
+  public synchronized AdaptiveFactory withShingleLength(int shingleLength) {
+    this.k = shingleLength;
+    setWordShingleLength(0);
+    resetStringCosts();
+    return this;
+  }
+
+
+  /**
+   * Number of tokens in word shingles, where tokens are lowercased and normalized sequences of
+   * letters and digits (used for strings only). When set, word shingles are used instead of
+   * character shingles.
+   */
+  public synchronized AdaptiveFactory withWordShingleLength(int tokenCount) {
+    setWordShingleLength(tokenCount);
+    resetStringCosts();
+    return this;
+  }
+
+
+  /**
+   * A predicate that tests if a shingle (or, for word shingles, a token) is a stopword that should
+   * be skipped (used for strings only).
+   */
+  public synchronized AdaptiveFactory withStopwords(Predicate<CharSequence> stopper) {
+    setStopper(stopper);
+    resetStringCosts();
+    return this;
+  }
+
+
+  /**
+   * A custom shingler that splits strings into shingles, which overrides the shingle length and
+   * stopwords (used for strings only).
+   */
+  public synchronized AdaptiveFactory withShingler(Shingler shingler) {
+    setShingler(shingler);
+    resetStringCosts();
+    return this;
+  }
+
+
+  /**
+   * The size of the signatures generated when MinHash is picked.
+   */
+  public synchronized AdaptiveFactory withSignatureSize(int signatureSize) {
+    this.sigSize = signatureSize;
+    resetStringCosts();
+    this.setCosts = null;
+    this.setGeneration++;
+    return this;
+  }
+
+
+  /**
+   * The seed of the universal permutations used to generate signatures of strings when MinHash is
+   * picked (see {@link MinHashFactory#withPermutationHashing}).
+   */
+  public synchronized AdaptiveFactory withPermutationHashing(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+
+  /**
+   * An executor where the kshingling and signature processing tasks are spawned. If nothing is
+   * provided then it launches a new executor with the cached thread pool.
+   */
+  public synchronized AdaptiveFactory withExecutor(ExecutorService executor) {
+    setExec(executor);
+    return this;
+  }
+
+
+  /**
+   * Calibrates the cost model of this factory right away in the calling thread, instead of in the
+   * background on first use, for example at startup. This takes a few seconds, during which other
+   * threads can keep using this factory.
+   */
+  public AdaptiveFactory calibrate() {
+    int stringsCalibrated;
+    int setsCalibrated;
+    synchronized (this) {
+      stringsCalibrated = stringGeneration;
+      setsCalibrated = setGeneration;
+    }
+    CostModel strings = calibrateStrings();
+    CostModel sets = calibrateSets();
+    publish(stringsCalibrated, setsCalibrated, strings, sets);
+    return this;
+  }
+
+
+  /**
+   * Returns the engine that this factory picks to compare the specified strings, which is the
+   * exact engine until the cost model is calibrated.
+   */
+  public Engine engineFor(String s1, String s2) {
+    CostModel costs = stringCosts;
+    if (costs == null) {
+      calibrateInBackground();
+      return Engine.JACCARD;
+    }
+    return costs.cheapest((long) s1.length() + s2.length());
+  }
+
+
+  /**
+   * Returns the engine that this factory picks to compare the specified sets, which is the exact
+   * engine until the cost model is calibrated.
+   */
+  public Engine engineFor(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2) {
+    CostModel costs = setCosts;
+    if (costs == null) {
+      calibrateInBackground();
+      return Engine.JACCARD;
+    }
+    return costs.cheapest((long) c1.size() + c2.size());
+  }
+
+
+  /**
+   * Returns the similarity of the specified strings, along with the engine that computed it.
+   */
+  public synchronized Result compare(String s1, String s2) {
+    Engine engine = engineFor(s1, s2);
+    double similarity = newStringSimilarity(engine, s1, s2, getExec()).getAsDouble();
+    return new Result(similarity, engine);
+  }
+
+
+  /**
+   * Returns the similarity of the specified sets, along with the engine that computed it.
+   */
+  public synchronized Result compare(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2) {
+    List<? extends Number> l1 = new ArrayList<>(c1);
+    List<? extends Number> l2 = new ArrayList<>(c2);
+    Engine engine = engineFor(l1, l2);
+    double similarity = newSetSimilarity(engine, l1, l2, getExec()).getAsDouble();
+    return new Result(similarity, engine);
+  }
+
+
+  @Override
+  StringSimilarity initStringSimilarityTask(
+      String s1, String s2, ExecutorService exec) {
+    return newStringSimilarity(engineFor(s1, s2), s1, s2, exec);
+  }
+
+
+  @Override
+  SetSimilarity initSetSimilarityTask(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2,
+      ExecutorService exec) {
+    return newSetSimilarity(engineFor(c1, c2), c1, c2, exec);
+  }
+
+
+  private StringSimilarity newStringSimilarity(
+      Engine engine, String s1, String s2, ExecutorService exec) {
+    if (engine == Engine.JACCARD) {
+      return new ShingleSetSimilarity(s1, s2, newShingler(k), exec);
+    }
+    KShinglesToSignatureConverter converter = new KShinglesToSignatureConverter(sigSize, seed);
+    return new MinHashStringSimilarity(s1, s2, newShingler(k), converter, exec);
+  }
+
+
+  private SetSimilarity newSetSimilarity(
+      Engine engine,
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2,
+      ExecutorService exec) {
+    if (engine == Engine.JACCARD) {
+      return new JaccardSetSimilarity(c1, c2);
+    }
+    int n = (int) HyperLogLog.unionSize(c1, c2);
+    return new MinHashSetSimilarity(c1, c2, Math.max(n, 2), sigSize, exec);
+  }
+
+
+  private void resetStringCosts() {
+    this.stringCosts = null;
+    this.stringGeneration++;
+  }
+
+
+  /**
+   * Starts calibrating the cost model in a daemon thread, unless a calibration is already
+   * running, so that comparisons never wait for it.
+   */
+  private synchronized void calibrateInBackground() {
+    if (calibrating) {
+      return;
+    }
+    calibrating = true;
+    int stringsCalibrated = stringGeneration;
+    int setsCalibrated = setGeneration;
+    Thread thread = new Thread(() -> {
+      try {
+        CostModel strings = calibrateStrings();
+        CostModel sets = calibrateSets();
+        publish(stringsCalibrated, setsCalibrated, strings, sets);
+      } finally {
+        synchronized (this) {
+          calibrating = false;
+        }
+      }
+    }, "adaptive-factory-calibration");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+
+  /**
+   * Sets the specified cost models, unless the settings that were calibrated changed since the
+   * calibration started, in which case that model is discarded and calibrated again on next use.
+   */
+  private synchronized void publish(
+      int stringsCalibrated,
+      int setsCalibrated,
+      CostModel strings,
+      CostModel sets) {
+    if (stringsCalibrated == stringGeneration) {
+      this.stringCosts = strings;
+    }
+    if (setsCalibrated == setGeneration) {
+      this.setCosts = sets;
+    }
+  }
+
+
+  private CostModel calibrateStrings() {
+    ExecutorService exec = getExec();
+    SplittableRandom random = new SplittableRandom(42);
+    return calibrate(STRING_SIZES, size -> {
+      // words of lowercase letters, where half of the words of both strings are shared
+      String shared = randomText(random, size / 4);
+      String s1 = shared + randomText(random, size / 4);
+      String s2 = randomText(random, size / 4) + shared;
+      return engine -> newStringSimilarity(engine, s1, s2, exec).getAsDouble();
+    });
+  }
+
+
+  private CostModel calibrateSets() {
+    ExecutorService exec = getExec();
+    return calibrate(SET_SIZES, size -> {
+      List<Long> c1 = new ArrayList<>(size / 2);
+      List<Long> c2 = new ArrayList<>(size / 2);
+      for (long i = 0; i < size / 2; i++) {
+        c1.add(i * 31);
+        c2.add((i + size / 4) * 31);
+      }
+      return engine -> newSetSimilarity(engine, c1, c2, exec).getAsDouble();
+    });
+  }
+
+
+  /**
+   * Times both engines for every one of the specified sizes, keeping the fastest of several
+   * runs, after a warm-up of the same length.
+   */
+  private static CostModel calibrate(int[] sizes, IntFunction<Run> runs) {
+    Engine[] engines = Engine.values();
+    double[][] nanos = new double[engines.length][sizes.length];
+    for (int s = 0; s < sizes.length; s++) {
+      Run run = runs.apply(sizes[s]);
+      for (Engine engine : engines) {
+        time(run, engine);
+        nanos[engine.ordinal()][s] = time(run, engine);
+      }
+    }
+    return new CostModel(sizes, nanos);
+  }
+
+
+  private static double time(Run run, Engine engine) {
+    long best = Long.MAX_VALUE;
+    long end = System.nanoTime() + CALIBRATION_NANOS;
+    int runs = 0;
+    while (runs < 3 || System.nanoTime() < end) {
+      long start = System.nanoTime();
+      run.compare(engine);
+      best = Math.min(best, System.nanoTime() - start);
+      runs++;
+    }
+    return Math.max(best, 1);
+  }
+
+
+  private static String randomText(SplittableRandom random, int length) {
+    StringBuilder sb = new StringBuilder(length);
+    while (sb.length() < length) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      for (int i = 2 + random.nextInt(8); i > 0; i--) {
+        sb.append((char) ('a' + random.nextInt(26)));
+      }
+    }
+    sb.setLength(length);
+    return sb.toString();
+  }
+
+
+  /**
+   * Exact Jaccard similarity of the sets of shingles of both strings, which is the similarity
+   * that MinHash estimates.
+   */
+  private static final class ShingleSetSimilarity extends JaccardStringSimilarity {
+
+    private ShingleSetSimilarity(
+        String s1,
+        String s2,
+        Shingler shingler,
+        ExecutorService exec) {
+      super(s1, s2, shingler, exec);
+    }
+
+
+    @Override
+    public double getAsDouble() {
+      ShinglePair shingles = getShingles(getFirst(), getSecond());
+      return Similarity.jaccardIndexFromShingleSets(
+          shingles.getShingles1(),
+          shingles.getShingles2());
+    }
+  }
+
+
+  /**
+   * Engines that can be picked by an adaptive factory.
+   */
+  public enum Engine {
+
+    /**
+     * Exact Jaccard similarity of the sets of shingles (or elements), which is faster for small
+     * inputs.
+     */
+    JACCARD,
+
+    /**
+     * MinHash estimate of the Jaccard similarity, which can be faster for large inputs.
+     */
+    MINHASH
+  }
+
+
+  /**
+   * Similarity of a comparison, and the engine that computed it.
+   */
+  public static final class Result {
+
+    private final double similarity;
+
+    private final Engine engine;
+
+
+    private Result(double similarity, Engine engine) {
+      this.similarity = similarity;
+      this.engine = engine;
+    }
+
+
+    public double getSimilarity() {
+      return similarity;
+    }
+
+
+    public Engine getEngine() {
+      return engine;
+    }
+  }
+
+
+  @FunctionalInterface
+  private interface Run {
+
+    void compare(Engine engine);
+  }
+
+
+  /**
+   * Cost of every engine as a function of the combined size of the inputs, interpolated between
+   * the times measured for increasing sizes as a power of the size, c * size^e, with an exponent
+   * fitted to every pair of consecutive sizes. Exponents are clamped, as the times are noisy: the
+   * cost never decreases with the size, and beyond the largest size, where it is extrapolated, it
+   * grows at least linearly and at most quadratically.
+   */
+  static final class CostModel {
+
+    private static final double MAX_EXPONENT = 3;
+
+    private static final double MIN_EXTRAPOLATED_EXPONENT = 1;
+
+    private static final double MAX_EXTRAPOLATED_EXPONENT = 2;
+
+    private final int[] sizes;
+
+    private final double[][] nanos;
+
+    /**
+     * Exponent of every engine (by ordinal) between every size and the next one
+     */
+    private final double[][] exponents;
+
+
+    /**
+     * @param sizes the sizes that were timed, in ascending order
+     * @param nanos the time of every engine (by ordinal) for every size
+     */
+    CostModel(int[] sizes, double[][] nanos) {
+      int engineCount = Engine.values().length;
+      this.sizes = sizes.clone();
+      this.nanos = new double[engineCount][];
+      this.exponents = new double[engineCount][sizes.length - 1];
+      for (int e = 0; e < engineCount; e++) {
+        this.nanos[e] = nanos[e].clone();
+        for (int s = 1; s < sizes.length; s++) {
+          // a time below the one of a smaller size is noise
+          this.nanos[e][s] = Math.max(this.nanos[e][s], this.nanos[e][s - 1]);
+        }
+        for (int s = 0; s < sizes.length - 1; s++) {
+          double exponent = Math.log(this.nanos[e][s + 1] / this.nanos[e][s])
+              / Math.log((double) sizes[s + 1] / sizes[s]);
+          exponents[e][s] = Math.min(exponent, MAX_EXPONENT);
+        }
+      }
+    }
+
+
+    double cost(Engine engine, long size) {
+      int e = engine.ordinal();
+      int last = sizes.length - 1;
+      if (size <= sizes[0]) {
+        // fixed costs dominate small inputs
+        return nanos[e][0];
+      } else if (size >= sizes[last]) {
+        double exponent = Math.max(MIN_EXTRAPOLATED_EXPONENT,
+            Math.min(exponents[e][last - 1], MAX_EXTRAPOLATED_EXPONENT));
+        return nanos[e][last] * Math.pow((double) size / sizes[last], exponent);
+      }
+      int s = 0;
+      while (size >= sizes[s + 1]) {
+        s++;
+      }
+      return nanos[e][s] * Math.pow((double) size / sizes[s], exponents[e][s]);
+    }
+
+
+    Engine cheapest(long size) {
+      Engine cheapest = Engine.JACCARD;
+      for (Engine engine : Engine.values()) {
+        if (cost(engine, size) < cost(cheapest, size)) {
+          cheapest = engine;
+        }
+      }
+      return cheapest;
+    }
+  }
+}
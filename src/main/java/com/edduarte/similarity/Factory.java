@@ -1,11 +1,18 @@
 package com.edduarte.similarity;
 
+import com.edduarte.similarity.converter.KShingler;
+import com.edduarte.similarity.converter.Shingler;
+import com.edduarte.similarity.converter.WordShingler;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 
 /**
  * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
@@ -16,9 +23,21 @@ abstract class Factory {
 
   private ExecutorService exec;
 
+  /**
+   * Number of tokens in word shingles, or 0 if character shingles are used
+   */
+  private int wordShingleLength;
+
+  private Predicate<CharSequence> stopper;
+
+  private Shingler shingler;
+
 
   Factory() {
     this.exec = null;
+    this.wordShingleLength = 0;
+    this.stopper = null;
+    this.shingler = null;
   }
 
 
@@ -27,6 +46,65 @@ abstract class Factory {
   }
 
 
+  final void setWordShingleLength(int wordShingleLength) {
+    this.wordShingleLength = wordShingleLength;
+    this.shingler = null;
+  }
+
+
+  final void setStopper(Predicate<CharSequence> stopper) {
+    this.stopper = stopper;
+  }
+
+
+  final void setShingler(Shingler shingler) {
+    this.shingler = shingler;
+  }
+
+
+  /**
+   * Returns the shingler set in this factory or, if none was set, a word shingler if a word
+   * shingle length was set, or a character shingler with length k otherwise.
+   */
+  final Shingler newShingler(int k) {
+    if (shingler != null) {
+      return shingler;
+    } else if (wordShingleLength > 0) {
+      return new WordShingler(wordShingleLength, stopper);
+    } else {
+      return new KShingler(k, stopper);
+    }
+  }
+
+
+  /**
+   * Returns the executor set in this factory, or the common pool if none was set or if it was
+   * shut down.
+   */
+  final ExecutorService getExec() {
+    if (exec != null && !exec.isShutdown()) {
+      return exec;
+    } else {
+      return ForkJoinPool.commonPool();
+    }
+  }
+
+
+  /**
+   * Runs the specified action for every index from 0 to count on a work-stealing pool, which is
+   * the executor set in this factory if it is a fork/join pool, or the common pool otherwise.
+   * Indexes are split in ranges that idle workers steal from busy ones, so that no task is
+   * submitted per index.
+   */
+  final void forEachParallel(int count, IntConsumer action) {
+    ForkJoinPool pool = exec instanceof ForkJoinPool && !exec.isShutdown()
+        ? (ForkJoinPool) exec
+        : ForkJoinPool.commonPool();
+    int leafSize = Math.max(1, count / (pool.getParallelism() * 16));
+    pool.invoke(new RangeAction(0, count, leafSize, action));
+  }
+
+
   abstract StringSimilarity initStringSimilarityTask(
       String s1,
       String s2,
@@ -93,4 +171,41 @@ abstract class Factory {
       return CompletableFuture.supplyAsync(task);
     }
   }
+
+
+  private static class RangeAction extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+
+    private final int to;
+
+    private final int leafSize;
+
+    private final IntConsumer action;
+
+
+    private RangeAction(int from, int to, int leafSize, IntConsumer action) {
+      this.from = from;
+      this.to = to;
+      this.leafSize = leafSize;
+      this.action = action;
+    }
+
+
+    @Override
+    protected void compute() {
+      if (to - from <= leafSize) {
+        for (int i = from; i < to; i++) {
+          action.accept(i);
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(
+            new RangeAction(from, middle, leafSize, action),
+            new RangeAction(middle, to, leafSize, action));
+      }
+    }
+  }
 }
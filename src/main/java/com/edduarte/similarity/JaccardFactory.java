@@ -1,10 +1,20 @@
 package com.edduarte.similarity;
 
+import com.edduarte.similarity.converter.Shingler;
+import com.edduarte.similarity.impl.ContainmentSetSimilarity;
 import com.edduarte.similarity.impl.JaccardSetSimilarity;
 import com.edduarte.similarity.impl.JaccardStringSimilarity;
+import com.edduarte.similarity.join.ExactJaccardJoin;
+import com.edduarte.similarity.join.JoinPair;
+import com.edduarte.similarity.sketch.PreparedDocument;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
@@ -29,6 +39,38 @@ public final class JaccardFactory extends Factory {
    */
   public synchronized JaccardFactory withShingleLength(int shingleLength) {
     this.k = shingleLength;
+    setWordShingleLength(0);
+    return this;
+  }
+
+
+  /**
+   * Number of tokens in word shingles, where tokens are lowercased and normalized sequences of
+   * letters and digits (used for strings only). When set, word shingles are used instead of
+   * character shingles, which on prose reduces the number of shingles several times.
+   */
+  public synchronized JaccardFactory withWordShingleLength(int tokenCount) {
+    setWordShingleLength(tokenCount);
+    return this;
+  }
+
+
+  /**
+   * A predicate that tests if a shingle (or, for word shingles, a token) is a stopword that should
+   * be skipped (used for strings only).
+   */
+  public synchronized JaccardFactory withStopwords(Predicate<CharSequence> stopper) {
+    setStopper(stopper);
+    return this;
+  }
+
+
+  /**
+   * A custom shingler that splits strings into shingles, which overrides the shingle length and
+   * stopwords (used for strings only).
+   */
+  public synchronized JaccardFactory withShingler(Shingler shingler) {
+    setShingler(shingler);
     return this;
   }
 
@@ -43,10 +85,87 @@ public final class JaccardFactory extends Factory {
   }
 
 
+  /**
+   * Returns the prepared document of the specified string, which holds the hashes of its distinct
+   * shingles, so that it can be compared with other prepared documents by exact Jaccard
+   * similarity many times without shingling it again (see {@link PreparedDocument}). Unlike
+   * {@link #of(String, String)}, which compares the number of occurrences of the shingles of both
+   * strings, prepared documents compare their sets of shingles.
+   */
+  public synchronized PreparedDocument prepare(String s) {
+    try {
+      return PreparedDocument.of(newShingler(k).apply(s).call());
+    } catch (Exception ex) {
+      String m = "There was a problem processing shingles.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+
+
+  /**
+   * Returns the exact fraction of the elements of the query set that are contained in the
+   * specified set, |query intersect set| / |query|, which unlike the Jaccard index does not
+   * penalize sets that are much larger than the query.
+   */
+  public synchronized double containmentOf(
+      Collection<? extends Number> query,
+      Collection<? extends Number> set) {
+    List<? extends Number> l1 = new ArrayList<>(query);
+    List<? extends Number> l2 = new ArrayList<>(set);
+    return new ContainmentSetSimilarity(l1, l2).getAsDouble();
+  }
+
+
+  /**
+   * Returns every pair of sets in the specified list with a Jaccard similarity equal or above the
+   * specified threshold. The result is exact, but only a fraction of all pairs is compared (see
+   * {@link ExactJaccardJoin}), especially for thresholds of 0.7 and above.
+   */
+  public synchronized List<JoinPair> join(
+      List<? extends Collection<? extends Number>> sets,
+      double threshold) {
+    try {
+      return new ExactJaccardJoin(threshold).apply(sets).call();
+    } catch (Exception ex) {
+      String m = "There was a problem joining sets.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+
+
+  /**
+   * Returns every pair of strings in the specified list whose sets of shingles have a Jaccard
+   * similarity equal or above the specified threshold. Strings are shingled in parallel on the
+   * executor of this factory, and then joined as sets (see {@link ExactJaccardJoin}).
+   */
+  public synchronized List<JoinPair> joinStrings(List<String> strings, double threshold) {
+    ExecutorService exec = getExec();
+    Shingler shingler = newShingler(k);
+    List<Future<List<CharSequence>>> futures = new ArrayList<>(strings.size());
+    for (String s : strings) {
+      futures.add(exec.submit(shingler.apply(s)));
+    }
+
+    try {
+      List<List<CharSequence>> sets = new ArrayList<>(strings.size());
+      for (Future<List<CharSequence>> future : futures) {
+        sets.add(future.get());
+      }
+      return new ExactJaccardJoin(threshold).apply(sets).call();
+    } catch (ExecutionException | InterruptedException ex) {
+      String m = "There was a problem processing shingles.";
+      throw new RuntimeException(m, ex);
+    } catch (Exception ex) {
+      String m = "There was a problem joining strings.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+
+
   @Override
   StringSimilarity initStringSimilarityTask(
       String s1, String s2, ExecutorService exec) {
-    return new JaccardStringSimilarity(s1, s2, k, exec);
+    return new JaccardStringSimilarity(s1, s2, newShingler(k), exec);
   }
 
 
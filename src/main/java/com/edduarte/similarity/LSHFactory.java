@@ -1,13 +1,20 @@
 package com.edduarte.similarity;
 
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.Shingler;
 import com.edduarte.similarity.impl.LSHSetSimilarity;
 import com.edduarte.similarity.impl.LSHStringSimilarity;
+import com.edduarte.similarity.index.ConcurrentLSHIndex;
+import com.edduarte.similarity.index.DedupFilter;
+import com.edduarte.similarity.index.LSHIndex;
+import com.edduarte.similarity.index.NearDuplicateClusters;
+import com.edduarte.similarity.index.ShardedLSHIndex;
+import com.edduarte.similarity.sketch.HyperLogLog;
 import orestes.bloomfilter.HashProvider;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
 
 /**
  * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
@@ -28,6 +35,8 @@ public final class LSHFactory extends Factory {
 
   private HashProvider.HashMethod h;
 
+  private long seed;
+
 
   LSHFactory() {
     super();
@@ -39,6 +48,7 @@ public final class LSHFactory extends Factory {
     this.r = 5;
     this.s = Similarity.DEFAULT_CONFIDENCE_THRESHOLD;
     this.h = HashProvider.HashMethod.Murmur3;
+    this.seed = 0;
   }
 
 
@@ -47,6 +57,38 @@ public final class LSHFactory extends Factory {
    */
   public synchronized LSHFactory withShingleLength(int shingleLength) {
     this.k = shingleLength;
+    setWordShingleLength(0);
+    return this;
+  }
+
+
+  /**
+   * Number of tokens in word shingles, where tokens are lowercased and normalized sequences of
+   * letters and digits (used for strings only). When set, word shingles are used instead of
+   * character shingles, which on prose reduces the number of shingles several times.
+   */
+  public synchronized LSHFactory withWordShingleLength(int tokenCount) {
+    setWordShingleLength(tokenCount);
+    return this;
+  }
+
+
+  /**
+   * A predicate that tests if a shingle (or, for word shingles, a token) is a stopword that should
+   * be skipped (used for strings only).
+   */
+  public synchronized LSHFactory withStopwords(Predicate<CharSequence> stopper) {
+    setStopper(stopper);
+    return this;
+  }
+
+
+  /**
+   * A custom shingler that splits strings into shingles, which overrides the shingle length and
+   * stopwords (used for strings only).
+   */
+  public synchronized LSHFactory withShingler(Shingler shingler) {
+    setShingler(shingler);
     return this;
   }
 
@@ -54,7 +96,7 @@ public final class LSHFactory extends Factory {
   /**
    * Number of unique elements in both sets (used for sets only). For example, if set1=[4, 5, 6, 7,
    * 8] and set2=[7, 8, 9, 10], this value should be 7. If nothing is provided, this value is
-   * determined in pre-processing.
+   * estimated in pre-processing with a {@link HyperLogLog} sketch.
    */
   public synchronized LSHFactory withNumberOfElements(int elementCount) {
     this.n = elementCount;
@@ -98,6 +140,19 @@ public final class LSHFactory extends Factory {
   }
 
 
+  /**
+   * Hashes every shingle only once, and derives the signature slots with universal permutations
+   * drawn from the specified seed instead of computing a hash with the hash method for every slot
+   * (used for strings only). Signatures are only comparable to signatures generated with the same
+   * seed.
+   */
+  public synchronized LSHFactory withPermutationHashing(long seed) {
+    this.h = null;
+    this.seed = seed;
+    return this;
+  }
+
+
   /**
    * An executor where the kshingling and signature processing tasks are spawned. If nothing is
    * provided then it launches a new executor with the cached thread pool.
@@ -108,10 +163,96 @@ public final class LSHFactory extends Factory {
   }
 
 
+  /**
+   * Returns the converter that signs shingles for the indexes of this factory, with the signature
+   * size determined by its bands and threshold, and with its hash method or permutation seed.
+   */
+  public synchronized KShinglesToSignatureConverter signer() {
+    return newSignatureConverter(LSHStringSimilarity.signatureSize(b, s));
+  }
+
+
+  /**
+   * Returns the signature of the specified string, to be stored in or queried against the indexes
+   * of this factory ({@link #index}, {@link #concurrentIndex} and {@link #shardedIndex}).
+   */
+  public synchronized int[] sign(String str) {
+    try {
+      return signer().apply(newShingler(k).apply(str).call()).call();
+    } catch (Exception ex) {
+      String m = "There was a problem processing shingle signatures.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+
+
+  /**
+   * Returns a stateful predicate that keeps the first string of every cluster of near-duplicates
+   * and rejects the others, to be used with {@link java.util.stream.Stream#filter}. Strings are
+   * signed with the shingle length, bands and hash method of this factory, and two strings are
+   * near-duplicates when their estimated similarity is equal or above the specified threshold.
+   * The returned predicate is safe for parallel streams.
+   */
+  public synchronized DedupFilter dedupFilter(double threshold) {
+    int sigSize = LSHStringSimilarity.signatureSize(b, threshold);
+    return new DedupFilter(
+        newShingler(k),
+        newSignatureConverter(sigSize),
+        new LSHIndex(b, sigSize),
+        threshold);
+  }
+
+
+  /**
+   * Returns an empty clustering of near-duplicates for signatures with the bands of this factory,
+   * where documents that share a band bucket are merged if their estimated similarity is equal
+   * or above the specified threshold, which also determines the signature size. Cluster
+   * assignments are streamed to the specified listener, which can be null.
+   */
+  public synchronized NearDuplicateClusters clusters(
+      double threshold,
+      NearDuplicateClusters.Listener listener) {
+    int sigSize = LSHStringSimilarity.signatureSize(b, threshold);
+    return new NearDuplicateClusters(b, sigSize, threshold, listener);
+  }
+
+
+  /**
+   * Returns an empty LSH index for signatures with the bands of this factory, and with the
+   * signature size determined by its threshold. Documents are signed with {@link #sign}.
+   */
+  public synchronized LSHIndex index() {
+    return new LSHIndex(b, LSHStringSimilarity.signatureSize(b, s));
+  }
+
+
+  /**
+   * Returns an empty LSH index for many concurrent writers, where insertions from different
+   * threads run in parallel and queries never block, for signatures with the bands of this
+   * factory and with the signature size determined by its threshold.
+   */
+  public synchronized ConcurrentLSHIndex concurrentIndex() {
+    return new ConcurrentLSHIndex(b, LSHStringSimilarity.signatureSize(b, s));
+  }
+
+
+  /**
+   * Returns an empty LSH index partitioned into the specified number of shards, for signatures
+   * with the bands of this factory and with the signature size determined by its threshold.
+   * Queries are fanned out to all shards on the executor of this factory.
+   */
+  public synchronized ShardedLSHIndex shardedIndex(int shardCount) {
+    int sigSize = LSHStringSimilarity.signatureSize(b, s);
+    return new ShardedLSHIndex(shardCount, b, sigSize, getExec());
+  }
+
+
   @Override
   StringSimilarity initStringSimilarityTask(
       String s1, String s2, ExecutorService exec) {
-    return new LSHStringSimilarity(s1, s2, k, b, r, s, h, exec);
+    int sigSize = LSHStringSimilarity.signatureSize(b, s);
+    return new LSHStringSimilarity(
+        s1, s2, newShingler(k), b, r, s, newSignatureConverter(sigSize), exec);
   }
 
 
@@ -122,10 +263,15 @@ public final class LSHFactory extends Factory {
       ExecutorService exec) {
     int nAux = n;
     if (nAux < 0) {
-      Set<Number> unionSet = new HashSet<>(c1);
-      unionSet.addAll(c2);
-      nAux = (int) unionSet.stream().distinct().count();
+      nAux = (int) HyperLogLog.unionSize(c1, c2);
     }
     return new LSHSetSimilarity(c1, c2, nAux, b, r, s, exec);
   }
+
+
+  private KShinglesToSignatureConverter newSignatureConverter(int sigSize) {
+    return h != null
+        ? new KShinglesToSignatureConverter(h, sigSize)
+        : new KShinglesToSignatureConverter(sigSize, seed);
+  }
 }
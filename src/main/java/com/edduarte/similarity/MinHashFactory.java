@@ -1,13 +1,25 @@
 package com.edduarte.similarity;
 
+import com.edduarte.similarity.converter.CollectionToSignatureConverter;
+import com.edduarte.similarity.converter.ElementHasher;
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.SetToSignatureConverter;
+import com.edduarte.similarity.converter.Shingler;
+import com.edduarte.similarity.impl.MinHashObjectSetSimilarity;
 import com.edduarte.similarity.impl.MinHashSetSimilarity;
 import com.edduarte.similarity.impl.MinHashStringSimilarity;
+import com.edduarte.similarity.signature.HeapSignatureMatrix;
+import com.edduarte.similarity.sketch.BottomKSketch;
+import com.edduarte.similarity.sketch.HyperLogLog;
 import orestes.bloomfilter.HashProvider;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
@@ -24,6 +36,8 @@ public final class MinHashFactory extends Factory {
 
   private HashProvider.HashMethod h;
 
+  private long seed;
+
 
   MinHashFactory() {
     super();
@@ -33,6 +47,7 @@ public final class MinHashFactory extends Factory {
     this.n = -1;
     this.sigSize = 100;
     this.h = HashProvider.HashMethod.Murmur3;
+    this.seed = 0;
   }
 
 
@@ -41,6 +56,38 @@ public final class MinHashFactory extends Factory {
    */
   public synchronized MinHashFactory withShingleLength(int shingleLength) {
     this.k = shingleLength;
+    setWordShingleLength(0);
+    return this;
+  }
+
+
+  /**
+   * Number of tokens in word shingles, where tokens are lowercased and normalized sequences of
+   * letters and digits (used for strings only). When set, word shingles are used instead of
+   * character shingles, which on prose reduces the number of shingles several times.
+   */
+  public synchronized MinHashFactory withWordShingleLength(int tokenCount) {
+    setWordShingleLength(tokenCount);
+    return this;
+  }
+
+
+  /**
+   * A predicate that tests if a shingle (or, for word shingles, a token) is a stopword that should
+   * be skipped (used for strings only).
+   */
+  public synchronized MinHashFactory withStopwords(Predicate<CharSequence> stopper) {
+    setStopper(stopper);
+    return this;
+  }
+
+
+  /**
+   * A custom shingler that splits strings into shingles, which overrides the shingle length and
+   * stopwords (used for strings only).
+   */
+  public synchronized MinHashFactory withShingler(Shingler shingler) {
+    setShingler(shingler);
     return this;
   }
 
@@ -48,7 +95,7 @@ public final class MinHashFactory extends Factory {
   /**
    * Number of unique elements in both sets (used for sets only). For example, if set1=[4, 5, 6, 7,
    * 8] and set2=[7, 8, 9, 10], this value should be 7. If nothing is provided, this value is
-   * determined in pre-processing.
+   * estimated in pre-processing with a {@link HyperLogLog} sketch.
    */
   public synchronized MinHashFactory withNumberOfElements(int elementCount) {
     this.n = elementCount;
@@ -75,6 +122,19 @@ public final class MinHashFactory extends Factory {
   }
 
 
+  /**
+   * Hashes every shingle only once, and derives the signature slots with universal permutations
+   * drawn from the specified seed instead of computing a hash with the hash method for every slot
+   * (used for strings only). Signatures are only comparable to signatures generated with the same
+   * seed.
+   */
+  public synchronized MinHashFactory withPermutationHashing(long seed) {
+    this.h = null;
+    this.seed = seed;
+    return this;
+  }
+
+
   /**
    * An executor where the kshingling and signature processing tasks are spawned. If nothing is
    * provided then it launches a new executor with the cached thread pool.
@@ -85,10 +145,108 @@ public final class MinHashFactory extends Factory {
   }
 
 
+  /**
+   * Returns the estimated Jaccard similarity of two sets of arbitrary elements, such as string or
+   * UUID ids, which are hashed with {@link ElementHasher#hash(Object)}.
+   */
+  public synchronized double ofObjects(Collection<?> c1, Collection<?> c2) {
+    return ofObjects(c1, c2, ElementHasher::hash);
+  }
+
+
+  /**
+   * Returns the estimated Jaccard similarity of two sets of arbitrary elements, which are hashed
+   * to 64 bits with the specified hasher. Elements are not copied or converted, and their
+   * signatures are derived with universal permutations drawn from the seed of this factory (see
+   * {@link #withPermutationHashing}), or from 0 if none was set.
+   */
+  public synchronized <T> double ofObjects(
+      Collection<? extends T> c1,
+      Collection<? extends T> c2,
+      ToLongFunction<? super T> hasher) {
+    CollectionToSignatureConverter<T> converter =
+        new CollectionToSignatureConverter<>(hasher, sigSize, seed);
+    return new MinHashObjectSetSimilarity<>(c1, c2, converter, getExec()).getAsDouble();
+  }
+
+
+  /**
+   * Returns the bottom-k sketch of the shingles of the specified string, which keeps the
+   * signature size smallest hashes of its shingles (see {@link BottomKSketch}). Every shingle is
+   * hashed only once, regardless of the hash method of this factory.
+   */
+  public synchronized BottomKSketch sketch(String s) {
+    try {
+      List<CharSequence> shingles = newShingler(k).apply(s).call();
+      return BottomKSketch.of(shingles, sigSize);
+    } catch (Exception ex) {
+      String m = "There was a problem processing shingles.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+
+
+  /**
+   * Returns the bottom-k sketch of the specified set, which keeps the signature size smallest
+   * hashes of its elements (see {@link BottomKSketch}).
+   */
+  public synchronized BottomKSketch sketch(Collection<?> set) {
+    return BottomKSketch.of(set, sigSize);
+  }
+
+
+  /**
+   * Returns the signatures of all the specified strings, where the signature of the string at
+   * position i is in row i of the returned matrix. Strings are shingled and signed in parallel on
+   * a work-stealing pool (see {@link #withExecutor}), straight into a single packed array.
+   */
+  public synchronized HeapSignatureMatrix signAll(List<String> strings) {
+    Shingler shingler = newShingler(k);
+    KShinglesToSignatureConverter converter = newSignatureConverter(sigSize);
+    int[] data = new int[Math.multiplyExact(strings.size(), sigSize)];
+    forEachParallel(strings.size(), row -> {
+      try {
+        List<CharSequence> shingles = shingler.apply(strings.get(row)).call();
+        converter.sign(shingles, data, row * sigSize);
+      } catch (Exception ex) {
+        String m = "There was a problem processing shingle signatures.";
+        throw new RuntimeException(m, ex);
+      }
+    });
+    return new HeapSignatureMatrix(sigSize, data, strings.size());
+  }
+
+
+  /**
+   * Returns the signatures of all the specified sets, where the signature of the i-th set of the
+   * stream is in row i of the returned matrix. Sets are signed in parallel on a work-stealing pool
+   * (see {@link #withExecutor}), straight into a single packed array. If the number of elements
+   * was not set, it is estimated for the union of all sets with a {@link HyperLogLog} sketch.
+   */
+  public synchronized HeapSignatureMatrix signAll(
+      Stream<? extends Collection<? extends Number>> sets) {
+    List<? extends Collection<? extends Number>> list = sets.collect(Collectors.toList());
+    if (list.isEmpty()) {
+      return new HeapSignatureMatrix(sigSize);
+    }
+    int nAux = n;
+    if (nAux < 0) {
+      HyperLogLog sketch = new HyperLogLog();
+      list.forEach(sketch::addAll);
+      nAux = (int) sketch.cardinality();
+    }
+    SetToSignatureConverter converter = new SetToSignatureConverter(nAux, sigSize);
+    int[] data = new int[Math.multiplyExact(list.size(), sigSize)];
+    forEachParallel(list.size(), row -> converter.sign(list.get(row), data, row * sigSize));
+    return new HeapSignatureMatrix(sigSize, data, list.size());
+  }
+
+
   @Override
   StringSimilarity initStringSimilarityTask(
       String s1, String s2, ExecutorService exec) {
-    return new MinHashStringSimilarity(s1, s2, k, sigSize, h, exec);
+    return new MinHashStringSimilarity(
+        s1, s2, newShingler(k), newSignatureConverter(sigSize), exec);
   }
 
 
@@ -99,10 +257,15 @@ public final class MinHashFactory extends Factory {
       ExecutorService exec) {
     int nAux = n;
     if (nAux < 0) {
-      Set<Number> unionSet = new HashSet<>(c1);
-      unionSet.addAll(c2);
-      nAux = (int) unionSet.stream().distinct().count();
+      nAux = (int) HyperLogLog.unionSize(c1, c2);
     }
     return new MinHashSetSimilarity(c1, c2, nAux, sigSize, exec);
   }
+
+
+  private KShinglesToSignatureConverter newSignatureConverter(int sigSize) {
+    return h != null
+        ? new KShinglesToSignatureConverter(h, sigSize)
+        : new KShinglesToSignatureConverter(sigSize, seed);
+  }
 }
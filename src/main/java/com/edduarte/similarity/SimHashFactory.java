@@ -0,0 +1,133 @@
+package com.edduarte.similarity;
+
+import com.edduarte.similarity.converter.KShinglesToSimHashConverter;
+import com.edduarte.similarity.converter.SetToSimHashConverter;
+import com.edduarte.similarity.converter.Shingler;
+import com.edduarte.similarity.impl.SimHashSetSimilarity;
+import com.edduarte.similarity.impl.SimHashStringSimilarity;
+import com.edduarte.similarity.index.SimHashIndex;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class SimHashFactory extends Factory {
+
+  private int k;
+
+  private long seed;
+
+
+  SimHashFactory() {
+    super();
+    // sensible defaults for common small strings (smaller than an email)
+    this.k = 2;
+    this.seed = 0;
+  }
+
+
+  /**
+   * Length of n-gram shingles that are used when generating fingerprints (used for strings only).
+   */
+  public synchronized SimHashFactory withShingleLength(int shingleLength) {
+    this.k = shingleLength;
+    setWordShingleLength(0);
+    return this;
+  }
+
+
+  /**
+   * Number of tokens in word shingles, where tokens are lowercased and normalized sequences of
+   * letters and digits (used for strings only). When set, word shingles are used instead of
+   * character shingles, which on prose reduces the number of shingles several times.
+   */
+  public synchronized SimHashFactory withWordShingleLength(int tokenCount) {
+    setWordShingleLength(tokenCount);
+    return this;
+  }
+
+
+  /**
+   * A predicate that tests if a shingle (or, for word shingles, a token) is a stopword that should
+   * be skipped (used for strings only).
+   */
+  public synchronized SimHashFactory withStopwords(Predicate<CharSequence> stopper) {
+    setStopper(stopper);
+    return this;
+  }
+
+
+  /**
+   * A custom shingler that splits strings into shingles, which overrides the shingle length and
+   * stopwords (used for strings only).
+   */
+  public synchronized SimHashFactory withShingler(Shingler shingler) {
+    setShingler(shingler);
+    return this;
+  }
+
+
+  /**
+   * The seed used to hash shingles and set elements. Fingerprints are only comparable to
+   * fingerprints generated with the same seed.
+   */
+  public synchronized SimHashFactory withSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+
+  /**
+   * An executor where the kshingling and fingerprint processing tasks are spawned. If nothing is
+   * provided then it launches a new executor with the cached thread pool.
+   */
+  public synchronized SimHashFactory withExecutor(ExecutorService executor) {
+    setExec(executor);
+    return this;
+  }
+
+
+  /**
+   * Returns the 64-bit fingerprint of the specified string, to be stored in a
+   * {@link SimHashIndex}.
+   */
+  public synchronized long fingerprint(String s) {
+    try {
+      return new KShinglesToSimHashConverter(seed).apply(newShingler(k).apply(s).call()).call();
+    } catch (Exception ex) {
+      String m = "There was a problem processing shingle fingerprints.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+
+
+  /**
+   * Returns an empty index that finds every fingerprint within the specified Hamming distance of
+   * a query fingerprint.
+   */
+  public synchronized SimHashIndex index(int maxDistance) {
+    return new SimHashIndex(maxDistance);
+  }
+
+
+  @Override
+  StringSimilarity initStringSimilarityTask(
+      String s1, String s2, ExecutorService exec) {
+    return new SimHashStringSimilarity(
+        s1, s2, newShingler(k), new KShinglesToSimHashConverter(seed), exec);
+  }
+
+
+  @Override
+  SetSimilarity initSetSimilarityTask(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2,
+      ExecutorService exec) {
+    return new SimHashSetSimilarity(c1, c2, new SetToSimHashConverter(seed), exec);
+  }
+}
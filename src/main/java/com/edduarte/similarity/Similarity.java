@@ -1,9 +1,13 @@
 package com.edduarte.similarity;
 
+import com.edduarte.similarity.signature.SignatureMatrix;
+
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
@@ -29,16 +33,43 @@ public interface Similarity<T> extends DoubleSupplier, BooleanSupplier, Supplier
     return new LSHFactory();
   }
 
+  static SimHashFactory simhash() {
+    return new SimHashFactory();
+  }
+
+  static AdaptiveFactory adaptive() {
+    return new AdaptiveFactory();
+  }
+
   static double jaccardIndex(int intersectionCount, int unionCount) {
     return (double) intersectionCount / (double) unionCount;
   }
 
+  static double containmentIndex(int intersectionCount, int queryCount) {
+    return (double) intersectionCount / (double) queryCount;
+  }
+
   static double jaccardIndexFromShingles(
       List<CharSequence> shingles1,
       List<CharSequence> shingles2) {
     return jaccardIndexFromR(shinglesToR(shingles1), shinglesToR(shingles2));
   }
 
+  static double jaccardIndexFromShingleSets(
+      List<CharSequence> shingles1,
+      List<CharSequence> shingles2) {
+    Set<CharSequence> set1 = new HashSet<>(shingles1);
+    Set<CharSequence> set2 = new HashSet<>(shingles2);
+    int intersection = 0;
+    for (CharSequence shingle : set2) {
+      if (set1.contains(shingle)) {
+        intersection++;
+      }
+    }
+    int union = set1.size() + set2.size() - intersection;
+    return union == 0 ? 1 : jaccardIndex(intersection, union);
+  }
+
   static double jaccardIndexFromR(List<Integer> r1, List<Integer> r2) {
     int maxLength = Math.max(r1.size(), r2.size());
 
@@ -60,6 +91,98 @@ public interface Similarity<T> extends DoubleSupplier, BooleanSupplier, Supplier
     return jaccardIndex(intersection, union);
   }
 
+  static boolean jaccardIndexFromShinglesAtLeast(
+      List<CharSequence> shingles1,
+      List<CharSequence> shingles2,
+      double threshold) {
+    if (shingles1.isEmpty()) {
+      return threshold <= 0 && !shingles2.isEmpty();
+    }
+
+    // the positions of shinglesToR are compared index by index, so the index is the ratio
+    // between the smaller and the larger number of distinct shingles, and it reaches the
+    // threshold for every number of distinct shingles of the second list within these bounds
+    Map<CharSequence, Integer> positions = new HashMap<>();
+    shingles1.forEach(s -> positions.putIfAbsent(s, positions.size()));
+    int distinct1 = positions.size();
+    int minDistinct = SignatureMatrix.minMatches(threshold, distinct1);
+    if (minDistinct > distinct1 || shingles2.size() < minDistinct) {
+      return false;
+    }
+    int maxDistinct = threshold <= 0
+        ? Integer.MAX_VALUE
+        : (int) Math.min(Math.floor(distinct1 / threshold), Integer.MAX_VALUE);
+    // correct the rounding errors of the division, so that the bound is consistent with
+    // jaccardIndexFromShingles
+    while (maxDistinct > distinct1 && jaccardIndex(distinct1, maxDistinct) < threshold) {
+      maxDistinct--;
+    }
+    while (maxDistinct < Integer.MAX_VALUE
+        && jaccardIndex(distinct1, maxDistinct + 1) >= threshold) {
+      maxDistinct++;
+    }
+
+    // count the distinct shingles of the second list while reading it, using the positions of
+    // the first list for the shared ones, and stop when the remaining shingles can no longer
+    // change the outcome, where each of them adds at most one distinct shingle
+    boolean[] shared = new boolean[distinct1];
+    Set<CharSequence> others = new HashSet<>();
+    int distinct2 = 0;
+    int remaining = shingles2.size();
+    for (CharSequence s : shingles2) {
+      remaining--;
+      Integer position = positions.get(s);
+      if (position != null) {
+        if (!shared[position]) {
+          shared[position] = true;
+          distinct2++;
+        }
+      } else if (others.add(s)) {
+        distinct2++;
+      }
+
+      if (distinct2 > maxDistinct || distinct2 + remaining < minDistinct) {
+        return false;
+      } else if (distinct2 >= minDistinct && distinct2 + remaining <= maxDistinct) {
+        return true;
+      }
+    }
+    return distinct2 >= minDistinct;
+  }
+
+  static boolean jaccardIndexFromRAtLeast(
+      List<Integer> r1,
+      List<Integer> r2,
+      double threshold) {
+    int maxLength = Math.max(r1.size(), r2.size());
+
+    int intersection = 0;
+    int union = 0;
+
+    for (int i = 0; i < maxLength; i++) {
+      int value1 = i < r1.size() ? r1.get(i) : 0;
+      int value2 = i < r2.size() ? r2.get(i) : 0;
+      if (value1 > 0 || value2 > 0) {
+        union++;
+
+        if (value1 > 0 && value2 > 0) {
+          intersection++;
+        }
+      }
+
+      // stop when the remaining positions can no longer change the outcome, where each of them
+      // adds at most one to the union and one to the intersection
+      int remaining = maxLength - i - 1;
+      if (jaccardIndex(intersection + remaining, union + remaining) < threshold) {
+        return false;
+      } else if (jaccardIndex(intersection, union + remaining) >= threshold) {
+        return true;
+      }
+    }
+
+    return jaccardIndex(intersection, union) >= threshold;
+  }
+
   static ArrayList<Integer> shinglesToR(List<CharSequence> shingles) {
     Map<CharSequence, Integer> occurrences = new HashMap<>();
     ArrayList<Integer> r = new ArrayList<>();
@@ -87,6 +210,20 @@ public interface Similarity<T> extends DoubleSupplier, BooleanSupplier, Supplier
     return similarity / signatureSize;
   }
 
+  static boolean signatureIndexAtLeast(
+      int[] signature1,
+      int[] signature2,
+      double threshold) {
+    // stop as soon as enough slots are equal, or too many are different for the remaining slots
+    // to reach the threshold
+    int minMatches = SignatureMatrix.minMatches(threshold, signature1.length);
+    return SignatureMatrix.matchesAtLeast(signature1, signature2, 0, minMatches);
+  }
+
+  static double hammingIndex(long fingerprint1, long fingerprint2) {
+    return 1 - Long.bitCount(fingerprint1 ^ fingerprint2) / 64.0;
+  }
+
   static boolean isCandidatePair(int[] bands1, int[] bands2) {
     int bandCount = bands1.length;
     for (int b = 0; b < bandCount; b++) {
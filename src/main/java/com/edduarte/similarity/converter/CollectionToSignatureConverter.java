@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.converter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Processor class to convert sets of arbitrary elements to hash signatures.
+ * <p>
+ * Every element is hashed only once to 64 bits with a pluggable element hasher, by default
+ * {@link ElementHasher#hash(Object)}, and the sigSize min-wise values are derived with universal
+ * permutations of that hash, drawn from a seed (see {@link KShinglesToSignatureConverter}).
+ * Elements are neither copied, sorted nor converted, and unlike {@link SetToSignatureConverter},
+ * the number of unique elements does not need to be known in advance.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class CollectionToSignatureConverter<T>
+    implements Function<Collection<? extends T>, Callable<int[]>> {
+
+  private final ToLongFunction<? super T> hasher;
+
+  private final int sigSize;
+
+  private final long seed;
+
+  /**
+   * Coefficient "a" for the universal permutations
+   */
+  private final long[] a;
+
+  /**
+   * Coefficient "b" for the universal permutations
+   */
+  private final long[] b;
+
+
+  /**
+   * Initializes a converter that hashes elements with the specified hasher, and derives the
+   * signature slots with universal permutations drawn from the specified seed. Signatures are
+   * only comparable to signatures generated with the same hasher and seed.
+   */
+  public CollectionToSignatureConverter(
+      ToLongFunction<? super T> hasher,
+      int sigSize,
+      long seed) {
+    this.hasher = hasher;
+    this.sigSize = sigSize;
+    this.seed = seed;
+    this.a = new long[sigSize];
+    this.b = new long[sigSize];
+    SplittableRandom r = new SplittableRandom(seed);
+    for (int i = 0; i < sigSize; i++) {
+      a[i] = 1 + r.nextLong(KShinglesToSignatureConverter.MERSENNE_PRIME - 1);
+      b[i] = r.nextLong(KShinglesToSignatureConverter.MERSENNE_PRIME);
+    }
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  public long getSeed() {
+    return seed;
+  }
+
+
+  @Override
+  public Callable<int[]> apply(Collection<? extends T> c) {
+    return () -> sign(c, new int[sigSize]);
+  }
+
+
+  /**
+   * Writes the signature of the specified set into the first sigSize slots of the specified
+   * array, which can be reused across calls. With elements in a random access list, and with a
+   * hasher that does not allocate, this allocates no memory.
+   *
+   * @return the specified array
+   */
+  public int[] sign(Collection<? extends T> c, int[] dst) {
+    return sign(c, dst, 0);
+  }
+
+
+  /**
+   * Writes the signature of the specified set into the sigSize slots of the specified array that
+   * start at the specified offset, for example to write signatures of many sets into a single
+   * packed array.
+   *
+   * @return the specified array
+   */
+  public int[] sign(Collection<? extends T> c, int[] dst, int offset) {
+    if (offset < 0 || dst.length - offset < sigSize) {
+      throw new IllegalArgumentException(
+          "Signature array must have at least " + sigSize + " slots after the offset");
+    }
+    Arrays.fill(dst, offset, offset + sigSize, Integer.MAX_VALUE);
+    if (c instanceof List && c instanceof RandomAccess) {
+      List<? extends T> list = (List<? extends T>) c;
+      for (int i = 0, size = list.size(); i < size; i++) {
+        long h = hasher.applyAsLong(list.get(i));
+        KShinglesToSignatureConverter.signHash(h, a, b, dst, offset);
+      }
+    } else {
+      for (T x : c) {
+        KShinglesToSignatureConverter.signHash(hasher.applyAsLong(x), a, b, dst, offset);
+      }
+    }
+    return dst;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.converter;
+
+import java.util.UUID;
+
+/**
+ * Default hash function of set elements to 64 bits, used to sign sets of arbitrary objects
+ * without converting their elements to numbers first.
+ * <p>
+ * Integral numbers are hashed by their value, and floating-point numbers by their value too, so
+ * that 2, 2L and 2.0 have the same hash while 2.5 keeps its fractional part. Character sequences
+ * are hashed by their characters, so that a String and a StringBuilder with the same characters
+ * have the same hash, and UUIDs by their 128 bits. Any other object is hashed by its
+ * {@link Object#hashCode()}, which is only 32 bits wide.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class ElementHasher {
+
+  private ElementHasher() {
+  }
+
+
+  /**
+   * Returns the 64-bit hash of the specified element.
+   */
+  public static long hash(Object element) {
+    if (element instanceof Long || element instanceof Integer
+        || element instanceof Short || element instanceof Byte) {
+      return mix(((Number) element).longValue());
+    } else if (element instanceof Double || element instanceof Float) {
+      double value = ((Number) element).doubleValue();
+      long integral = (long) value;
+      return integral == value
+          ? mix(integral)
+          : mix(Double.doubleToLongBits(value));
+    } else if (element instanceof CharSequence) {
+      return KShinglesToSignatureConverter.hash64((CharSequence) element, 0);
+    } else if (element instanceof UUID) {
+      UUID uuid = (UUID) element;
+      return mix(uuid.getMostSignificantBits() * 0x9E3779B97F4A7C15L
+          + uuid.getLeastSignificantBits());
+    }
+    return mix(element.hashCode());
+  }
+
+
+  /**
+   * Returns the specified value with its bits mixed by the finalizer of MurmurHash3, so that
+   * every bit of the input affects every bit of the output. This is the final step of every
+   * 64-bit hash in this library.
+   */
+  public static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
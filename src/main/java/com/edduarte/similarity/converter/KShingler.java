@@ -19,7 +19,6 @@ package com.edduarte.similarity.converter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
@@ -29,7 +28,7 @@ import java.util.function.Predicate;
  * @version 0.0.1
  * @since 0.0.1
  */
-public final class KShingler implements Function<CharSequence, Callable<List<CharSequence>>> {
+public final class KShingler implements Shingler {
 
   /**
    * K value, generating shingles with length k
@@ -18,15 +18,26 @@ package com.edduarte.similarity.converter;
 
 import orestes.bloomfilter.HashProvider.HashMethod;
 
-import java.nio.charset.Charset;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.SplittableRandom;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * Processor class to convert shingles to hash signatures.
+ * <p>
+ * Signatures can be generated in two ways: by computing sigSize hashes with a {@link HashMethod}
+ * for every shingle, or by hashing every shingle only once to 64 bits and deriving the sigSize
+ * min-wise values with universal permutations of that hash, (a * x + b) mod p, where the random
+ * coefficients a and b are drawn from a seed. The latter replaces one full hash computation per
+ * signature slot with a few multiplications.
  *
  * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
  * @version 0.0.1
@@ -35,62 +46,284 @@ import java.util.stream.Collectors;
 public final class KShinglesToSignatureConverter
     implements Function<List<CharSequence>, Callable<int[]>> {
 
+  /**
+   * Mersenne prime 2^61 - 1, the modulus of the universal permutations
+   */
+  static final long MERSENNE_PRIME = (1L << 61) - 1;
+
+  /**
+   * Number of shingles below which parallel signing tasks are not split any further
+   */
+  private static final int PARALLEL_CHUNK_SIZE = 2048;
+
+  /**
+   * Number of shingles from which {@link #apply(List, ExecutorService)} signs in parallel
+   */
+  public static final int PARALLEL_THRESHOLD = 4 * PARALLEL_CHUNK_SIZE;
+
   private final HashMethod hash;
 
   private final int sigSize;
 
+  private final long seed;
+
+  /**
+   * Coefficient "a" for the universal permutations, or null if the hash method is used
+   */
+  private final long[] a;
+
+  /**
+   * Coefficient "b" for the universal permutations, or null if the hash method is used
+   */
+  private final long[] b;
 
+
+  /**
+   * Initializes a converter that computes sigSize hashes with the specified hash method for every
+   * shingle.
+   */
   public KShinglesToSignatureConverter(HashMethod hash, int sigSize) {
     this.hash = hash;
     this.sigSize = sigSize;
+    this.seed = 0;
+    this.a = null;
+    this.b = null;
+  }
+
+
+  /**
+   * Initializes a converter that hashes every shingle once, and derives the sigSize min-wise
+   * values with universal permutations drawn from the specified seed. Signatures are only
+   * comparable to signatures generated with the same seed.
+   */
+  public KShinglesToSignatureConverter(int sigSize, long seed) {
+    this.hash = null;
+    this.sigSize = sigSize;
+    this.seed = seed;
+    this.a = new long[sigSize];
+    this.b = new long[sigSize];
+    SplittableRandom r = new SplittableRandom(seed);
+    for (int i = 0; i < sigSize; i++) {
+      a[i] = 1 + r.nextLong(MERSENNE_PRIME - 1);
+      b[i] = r.nextLong(MERSENNE_PRIME);
+    }
+  }
+
+
+  /**
+   * Returns the hash method used to hash shingles, or null if this converter uses universal
+   * permutations.
+   */
+  public HashMethod getHashMethod() {
+    return hash;
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  /**
+   * Returns the seed of the universal permutations, or 0 if this converter uses a hash method.
+   */
+  public long getSeed() {
+    return seed;
   }
 
 
   @Override
   public Callable<int[]> apply(List<CharSequence> shingles) {
-    return new SignatureCallable(shingles, hash, sigSize);
+    return () -> sign(shingles, new int[sigSize]);
   }
 
 
-  private class SignatureCallable implements Callable<int[]> {
-
-    private final List<CharSequence> shingles;
+  /**
+   * Returns a task that computes the signature of the specified shingles, which signs them in
+   * parallel (see {@link #signParallel}) if there are at least {@link #PARALLEL_THRESHOLD}
+   * shingles and the specified executor is a fork/join pool with more than one worker, or in the
+   * calling thread otherwise.
+   */
+  public Callable<int[]> apply(List<CharSequence> shingles, ExecutorService exec) {
+    if (shingles.size() >= PARALLEL_THRESHOLD
+        && exec instanceof ForkJoinPool
+        && ((ForkJoinPool) exec).getParallelism() > 1) {
+      return () -> signParallel(shingles, (ForkJoinPool) exec);
+    }
+    return apply(shingles);
+  }
 
-    private final HashMethod hash;
 
-    private final int sigSize;
+  /**
+   * Writes the signature of the specified shingles into the first sigSize slots of the specified
+   * array, which can be reused across calls. With universal permutations, and with shingles in a
+   * random access list, this allocates no memory. With a hash method, the hash function still
+   * allocates its input bytes and output hashes for every shingle.
+   *
+   * @return the specified array
+   */
+  public int[] sign(List<CharSequence> shingles, int[] dst) {
+    return sign(shingles, dst, 0);
+  }
 
 
-    private SignatureCallable(List<CharSequence> shingles, HashMethod hash, int sigSize) {
-      this.shingles = shingles;
-      this.hash = hash;
-      this.sigSize = sigSize;
+  /**
+   * Writes the signature of the specified shingles into the sigSize slots of the specified array
+   * that start at the specified offset, for example to write signatures of many documents into a
+   * single packed array.
+   *
+   * @return the specified array
+   */
+  public int[] sign(List<CharSequence> shingles, int[] dst, int offset) {
+    if (offset < 0 || dst.length - offset < sigSize) {
+      throw new IllegalArgumentException(
+          "Signature array must have at least " + sigSize + " slots after the offset");
     }
+    Arrays.fill(dst, offset, offset + sigSize, Integer.MAX_VALUE);
+    if (shingles instanceof RandomAccess) {
+      signRange(shingles, 0, shingles.size(), dst, offset);
+    } else {
+      for (CharSequence s : shingles) {
+        signShingle(s, dst, offset);
+      }
+    }
+    return dst;
+  }
 
 
-    @Override
-    public int[] call() {
-      int[] sig = new int[sigSize];
+  /**
+   * Returns the signature of the specified shingles, computed by the specified pool in chunks of
+   * shingles whose partial signatures are merged by their element-wise minimum. This uses all
+   * the workers of the pool to sign a single very large document.
+   */
+  public int[] signParallel(List<CharSequence> shingles, ForkJoinPool pool) {
+    List<CharSequence> list = shingles instanceof RandomAccess
+        ? shingles
+        : new ArrayList<>(shingles);
+    return pool.invoke(new SignTask(list, 0, list.size()));
+  }
+
+
+  private void signRange(
+      List<CharSequence> shingles,
+      int from,
+      int to,
+      int[] sig,
+      int offset) {
+    for (int i = from; i < to; i++) {
+      signShingle(shingles.get(i), sig, offset);
+    }
+  }
+
 
+  private void signShingle(CharSequence s, int[] sig, int offset) {
+    if (hash == null) {
+      signHash(hash64(s, seed), a, b, sig, offset);
+    } else {
+      byte[] bytes = s.toString().getBytes(StandardCharsets.UTF_8);
+      int[] hashes = hash.getHashFunction().hash(bytes, Integer.MAX_VALUE, sigSize);
       for (int i = 0; i < sigSize; i++) {
-        sig[i] = Integer.MAX_VALUE;
+        sig[offset + i] = Math.min(sig[offset + i], hashes[i]);
       }
+    }
+  }
 
-      List<String> aux = shingles.stream()
-          .map(CharSequence::toString)
-          .collect(Collectors.toList());
 
-      Collections.sort(aux);
+  /**
+   * Merges the universal permutations of the specified 64-bit hash with coefficients a and b into
+   * the signature that starts at the specified offset, keeping the minimum of every slot.
+   */
+  static void signHash(long hash, long[] a, long[] b, int[] sig, int offset) {
+    long x = mod(hash);
+    long xHi = x >>> 31;
+    long xLo = x & 0x7FFFFFFFL;
+    for (int i = 0; i < a.length; i++) {
+      long h = permute(a[i], b[i], xHi, xLo);
+      // keep the 31 most significant bits of the 61-bit permutation
+      sig[offset + i] = Math.min(sig[offset + i], (int) (h >>> 30));
+    }
+  }
 
-      for (final String s : aux) {
-        byte[] bytes = s.getBytes(Charset.forName("UTF-8"));
-        int[] hash = this.hash.getHashFunction()
-            .hash(bytes, Integer.MAX_VALUE, sigSize);
-        for (int i = 0; i < sigSize; i++) {
-          sig[i] = Math.min(sig[i], hash[i]);
-        }
-      }
 
+  /**
+   * Hashes the specified characters to 64 bits, without encoding them to bytes.
+   */
+  static long hash64(CharSequence s, long seed) {
+    long h = seed ^ 0xcbf29ce484222325L;
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      h ^= s.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return ElementHasher.mix(h ^ length);
+  }
+
+
+  /**
+   * Returns (a * x + b) mod (2^61 - 1), for a, x and b lower than 2^61, where x is given split in
+   * its 30 most significant bits and its 31 least significant bits.
+   */
+  static long permute(long a, long b, long xHi, long xLo) {
+    long aHi = a >>> 31;
+    long aLo = a & 0x7FFFFFFFL;
+    // a * x = aHi*xHi * 2^62 + (aHi*xLo + aLo*xHi) * 2^31 + aLo*xLo, where 2^61 = 1 (mod p), and
+    // the unsigned sum below is lower than 2^64
+    long mid = aHi * xLo + aLo * xHi;
+    return mod(((aHi * xHi) << 1) + (mid >>> 30) + ((mid & 0x3FFFFFFFL) << 31) + aLo * xLo + b);
+  }
+
+
+  /**
+   * Merges the partial signature src into dst, keeping the minimum of every slot.
+   */
+  static void mergeMin(int[] dst, int[] src) {
+    for (int i = 0; i < dst.length; i++) {
+      dst[i] = Math.min(dst[i], src[i]);
+    }
+  }
+
+
+  /**
+   * Reduces an unsigned 64-bit value modulo 2^61 - 1.
+   */
+  static long mod(long r) {
+    r = (r & MERSENNE_PRIME) + (r >>> 61);
+    r = (r & MERSENNE_PRIME) + (r >>> 61);
+    return r >= MERSENNE_PRIME ? r - MERSENNE_PRIME : r;
+  }
+
+
+  private class SignTask extends RecursiveTask<int[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<CharSequence> shingles;
+
+    private final int from;
+
+    private final int to;
+
+
+    private SignTask(List<CharSequence> shingles, int from, int to) {
+      this.shingles = shingles;
+      this.from = from;
+      this.to = to;
+    }
+
+
+    @Override
+    protected int[] compute() {
+      if (to - from <= PARALLEL_CHUNK_SIZE) {
+        int[] sig = new int[sigSize];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+        signRange(shingles, from, to, sig, 0);
+        return sig;
+      }
+      int middle = (from + to) >>> 1;
+      SignTask left = new SignTask(shingles, from, middle);
+      left.fork();
+      int[] sig = new SignTask(shingles, middle, to).compute();
+      mergeMin(sig, left.join());
       return sig;
     }
   }
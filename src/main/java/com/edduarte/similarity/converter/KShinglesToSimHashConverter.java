@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.converter;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * Processor class to compute 64-bit SimHash fingerprints (Charikar, "Similarity Estimation
+ * Techniques from Rounding Algorithms") of shingles, where similar shingle lists have
+ * fingerprints that differ in few bits. Every shingle is hashed to 64 bits once, and every bit of
+ * the fingerprint is set if the shingles with that bit set outweigh the shingles without it.
+ * Shingles are weighted by their number of occurrences in the list.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class KShinglesToSimHashConverter
+    implements Function<List<CharSequence>, Callable<Long>> {
+
+  private final long seed;
+
+
+  /**
+   * Initializes a converter that hashes shingles with the specified seed. Fingerprints are only
+   * comparable to fingerprints generated with the same seed.
+   */
+  public KShinglesToSimHashConverter(long seed) {
+    this.seed = seed;
+  }
+
+
+  public long getSeed() {
+    return seed;
+  }
+
+
+  @Override
+  public Callable<Long> apply(List<CharSequence> shingles) {
+    return () -> {
+      int[] weights = new int[64];
+      for (CharSequence shingle : shingles) {
+        accumulate(weights, KShinglesToSignatureConverter.hash64(shingle, seed));
+      }
+      return fingerprint(weights);
+    };
+  }
+
+
+  /**
+   * Adds the specified hash to the bit weights of a fingerprint, adding 1 to the weight of every
+   * bit set in the hash and subtracting 1 from the others.
+   */
+  static void accumulate(int[] weights, long hash) {
+    for (int i = 0; i < 64; i++) {
+      weights[i] += (int) ((hash >>> i) & 1) * 2 - 1;
+    }
+  }
+
+
+  /**
+   * Returns the fingerprint with every bit with a positive weight set.
+   */
+  static long fingerprint(int[] weights) {
+    long fingerprint = 0;
+    for (int i = 0; i < 64; i++) {
+      if (weights[i] > 0) {
+        fingerprint |= 1L << i;
+      }
+    }
+    return fingerprint;
+  }
+}
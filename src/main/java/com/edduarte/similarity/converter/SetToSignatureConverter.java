@@ -16,13 +16,16 @@
 
 package com.edduarte.similarity.converter;
 
-import java.math.BigDecimal;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Function;
 
 /**
@@ -35,6 +38,18 @@ import java.util.function.Function;
 public final class SetToSignatureConverter
     implements Function<Collection<? extends Number>, Callable<int[]>> {
 
+  private static final int LARGE_PRIME = 433494437;
+
+  /**
+   * Number of elements below which parallel signing tasks are not split any further
+   */
+  private static final int PARALLEL_CHUNK_SIZE = 8192;
+
+  /**
+   * Number of elements from which {@link #apply(Collection, ExecutorService)} signs in parallel
+   */
+  public static final int PARALLEL_THRESHOLD = 4 * PARALLEL_CHUNK_SIZE;
+
   /**
    * Random coefficient "a" for the random hash functions
    */
@@ -78,68 +93,128 @@ public final class SetToSignatureConverter
 
   @Override
   public Callable<int[]> apply(Collection<? extends Number> c) {
-    List<BigDecimal> list = new ArrayList<>();
-    for (Number number : c) {
-      if (number instanceof Double) {
-        list.add(BigDecimal.valueOf(number.doubleValue()));
-      } else {
-        list.add(BigDecimal.valueOf(number.longValue()));
-      }
+    return () -> sign(c, new int[sigSize]);
+  }
+
+
+  /**
+   * Returns a task that computes the signature of the specified set, which signs it in parallel
+   * (see {@link #signParallel}) if it has at least {@link #PARALLEL_THRESHOLD} elements and the
+   * specified executor is a fork/join pool with more than one worker, or in the calling thread
+   * otherwise.
+   */
+  public Callable<int[]> apply(Collection<? extends Number> c, ExecutorService exec) {
+    if (c.size() >= PARALLEL_THRESHOLD
+        && exec instanceof ForkJoinPool
+        && ((ForkJoinPool) exec).getParallelism() > 1) {
+      return () -> signParallel(c, (ForkJoinPool) exec);
     }
-    list.sort(Comparator.naturalOrder());
-    return new HashCallable(n, sigSize, a, b, list);
+    return apply(c);
   }
 
 
-  private static class HashCallable implements Callable<int[]> {
+  /**
+   * Writes the signature of the specified set into the first sigSize slots of the specified
+   * array, which can be reused across calls. With elements in a random access list, this
+   * allocates no memory.
+   *
+   * @return the specified array
+   */
+  public int[] sign(Collection<? extends Number> c, int[] dst) {
+    return sign(c, dst, 0);
+  }
 
-    private static final int LARGE_PRIME = 433494437;
 
-    private final int n;
+  /**
+   * Writes the signature of the specified set into the sigSize slots of the specified array that
+   * start at the specified offset, for example to write signatures of many sets into a single
+   * packed array.
+   *
+   * @return the specified array
+   */
+  public int[] sign(Collection<? extends Number> c, int[] dst, int offset) {
+    if (offset < 0 || dst.length - offset < sigSize) {
+      throw new IllegalArgumentException(
+          "Signature array must have at least " + sigSize + " slots after the offset");
+    }
+    Arrays.fill(dst, offset, offset + sigSize, Integer.MAX_VALUE);
+    if (c instanceof List && c instanceof RandomAccess) {
+      List<? extends Number> list = (List<? extends Number>) c;
+      signRange(list, 0, list.size(), dst, offset);
+    } else {
+      for (Number x : c) {
+        signElement(x.longValue(), dst, offset);
+      }
+    }
+    return dst;
+  }
 
-    private final int sigSize;
 
-    private final int[] a;
+  /**
+   * Returns the signature of the specified set, computed by the specified pool in chunks of
+   * elements whose partial signatures are merged by their element-wise minimum. This uses all the
+   * workers of the pool to sign a single very large set.
+   */
+  public int[] signParallel(Collection<? extends Number> c, ForkJoinPool pool) {
+    List<? extends Number> list = c instanceof List && c instanceof RandomAccess
+        ? (List<? extends Number>) c
+        : new ArrayList<>(c);
+    return pool.invoke(new SignTask(list, 0, list.size()));
+  }
 
-    private final int[] b;
 
-    private final List<? extends Number> sortedList;
+  private void signRange(
+      List<? extends Number> list,
+      int from,
+      int to,
+      int[] sig,
+      int offset) {
+    for (int i = from; i < to; i++) {
+      signElement(list.get(i).longValue(), sig, offset);
+    }
+  }
 
 
-    private HashCallable(
-        int n,
-        int sigSize,
-        int[] a,
-        int[] b,
-        List<? extends Number> sortedList) {
-      this.n = n;
-      this.sigSize = sigSize;
-      this.a = a;
-      this.b = b;
-      this.sortedList = sortedList;
+  private void signElement(long x, int[] sig, int offset) {
+    for (int i = 0; i < sigSize; i++) {
+      int h = (int) ((a[i] * x + b[i]) % LARGE_PRIME) % n;
+      sig[offset + i] = Math.min(sig[offset + i], h);
     }
+  }
 
 
-    @Override
-    public int[] call() {
-      int[] signature = new int[sigSize];
+  private class SignTask extends RecursiveTask<int[]> {
 
-      for (int i = 0; i < sigSize; i++) {
-        signature[i] = Integer.MAX_VALUE;
-      }
+    private static final long serialVersionUID = 1L;
 
-      for (final Number x : sortedList) {
-        for (int i = 0; i < sigSize; i++) {
-          signature[i] = Math.min(signature[i], universalHashing(i, x));
-        }
-      }
+    private final List<? extends Number> list;
+
+    private final int from;
 
-      return signature;
+    private final int to;
+
+
+    private SignTask(List<? extends Number> list, int from, int to) {
+      this.list = list;
+      this.from = from;
+      this.to = to;
     }
 
 
-    private int universalHashing(int i, Number x) {
-      return (int) ((a[i] * x.longValue() + b[i]) % LARGE_PRIME) % n;
+    @Override
+    protected int[] compute() {
+      if (to - from <= PARALLEL_CHUNK_SIZE) {
+        int[] sig = new int[sigSize];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+        signRange(list, from, to, sig, 0);
+        return sig;
+      }
+      int middle = (from + to) >>> 1;
+      SignTask left = new SignTask(list, from, middle);
+      left.fork();
+      int[] sig = new SignTask(list, middle, to).compute();
+      KShinglesToSignatureConverter.mergeMin(sig, left.join());
+      return sig;
     }
   }
 }
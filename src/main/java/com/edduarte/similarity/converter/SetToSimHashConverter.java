@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.converter;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * Processor class to compute 64-bit SimHash fingerprints of number sets (see
+ * {@link KShinglesToSimHashConverter}), where numbers are hashed with {@link ElementHasher#hash}
+ * like the elements of minhash signatures of object sets, so that 2, 2L and 2.0 are the same
+ * element.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class SetToSimHashConverter
+    implements Function<Collection<? extends Number>, Callable<Long>> {
+
+  private final long seed;
+
+
+  /**
+   * Initializes a converter that hashes elements with the specified seed. Fingerprints are only
+   * comparable to fingerprints generated with the same seed.
+   */
+  public SetToSimHashConverter(long seed) {
+    this.seed = seed;
+  }
+
+
+  public long getSeed() {
+    return seed;
+  }
+
+
+  @Override
+  public Callable<Long> apply(Collection<? extends Number> c) {
+    return () -> {
+      int[] weights = new int[64];
+      for (Number number : c) {
+        long hash = ElementHasher.mix(ElementHasher.hash(number) ^ seed);
+        KShinglesToSimHashConverter.accumulate(weights, hash);
+      }
+      return KShinglesToSimHashConverter.fingerprint(weights);
+    };
+  }
+}
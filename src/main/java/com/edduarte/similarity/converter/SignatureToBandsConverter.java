@@ -50,6 +50,32 @@ public final class SignatureToBandsConverter implements Function<int[], Callable
   }
 
 
+  /**
+   * Hashes every band of the specified signature into a 64-bit bucket key. Unlike the bands
+   * returned by {@link #apply(int[])}, which are reduced modulo r and are only meant for pairwise
+   * comparison, these keys keep their full width so that they can address the buckets of a band
+   * table.
+   */
+  public long[] toBandKeys(int[] sig) {
+    int sigSize = sig.length;
+    long[] keys = new long[b];
+    int buckets = Math.max(sigSize / b, 1);
+
+    for (int band = 0; band < b; band++) {
+      keys[band] = band;
+    }
+    for (int i = 0; i < sigSize; i++) {
+      int band = Math.min(i / buckets, b - 1);
+      keys[band] = keys[band] * 0x9E3779B97F4A7C15L + sig[i];
+    }
+    for (int band = 0; band < b; band++) {
+      keys[band] = ElementHasher.mix(keys[band]);
+    }
+
+    return keys;
+  }
+
+
   private static class BandsCallable implements Callable<int[]> {
 
     private static final int LARGE_PRIME = 433494437;
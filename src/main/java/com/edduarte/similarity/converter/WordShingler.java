@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.converter;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Processor class to retrieve word shingles, i.e. sequences of n consecutive tokens joined by a
+ * single space. Tokenization, lowercasing, Unicode normalization and stopword filtering are all
+ * performed in a single pass over the text, and only tokens with non-ASCII characters are
+ * normalized.
+ * <p>
+ * On prose, word shingles are several times fewer than character shingles of a comparable
+ * selectivity, which reduces the cost of signing by the same factor.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class WordShingler implements Shingler {
+
+  /**
+   * N value, generating shingles with n tokens
+   */
+  private final int n;
+
+  /**
+   * Predicate that tests if a code point belongs to a token, where every other code point is a
+   * separator between tokens
+   */
+  private final IntPredicate tokenChars;
+
+  private final boolean lowercase;
+
+  private final Normalizer.Form form;
+
+  private final Predicate<CharSequence> stopper;
+
+
+  /**
+   * Instantiates a shingler that splits tokens on every code point that is not a
+   * {@link #isTokenChar token character}, lowercases them and normalizes them with the NFKC form.
+   */
+  public WordShingler(int n) {
+    this(n, null);
+  }
+
+
+  /**
+   * Instantiates a shingler that splits tokens on every code point that is not a
+   * {@link #isTokenChar token character}, lowercases them, normalizes them with the NFKC form and
+   * skips the ones that match the specified stopper.
+   */
+  public WordShingler(int n, Predicate<CharSequence> stopper) {
+    this(n, WordShingler::isTokenChar, true, Normalizer.Form.NFKC, stopper);
+  }
+
+
+  /**
+   * Instantiates a word shingler.
+   *
+   * @param n the number of tokens in every shingle
+   * @param tokenChars the predicate that tests if a code point belongs to a token, where every
+   * other code point separates tokens
+   * @param lowercase whether tokens are converted to lower case
+   * @param form the Unicode normalization form applied to tokens, or null to not normalize them
+   * @param stopper the predicate that tests if a normalized token is a stopword that should be
+   * skipped, or null to keep all tokens
+   */
+  public WordShingler(
+      int n,
+      IntPredicate tokenChars,
+      boolean lowercase,
+      Normalizer.Form form,
+      Predicate<CharSequence> stopper) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("Number of tokens per shingle must be positive");
+    }
+    Objects.requireNonNull(tokenChars, "Token predicate must not be null");
+    this.n = n;
+    this.tokenChars = tokenChars;
+    this.lowercase = lowercase;
+    this.form = form;
+    this.stopper = stopper;
+  }
+
+
+  /**
+   * Returns true if the specified code point is a letter, a number or a combining mark. Marks and
+   * numbers other than digits are part of tokens because tokens are only normalized after the text
+   * is split: otherwise, the decomposed "cafe\u0301" would lose its accent while the composed
+   * "caf\u00e9" keeps it, and the compatibility form of "x\u00b2" would not become "x2".
+   */
+  public static boolean isTokenChar(int codePoint) {
+    switch (Character.getType(codePoint)) {
+      case Character.UPPERCASE_LETTER:
+      case Character.LOWERCASE_LETTER:
+      case Character.TITLECASE_LETTER:
+      case Character.MODIFIER_LETTER:
+      case Character.OTHER_LETTER:
+      case Character.DECIMAL_DIGIT_NUMBER:
+      case Character.LETTER_NUMBER:
+      case Character.OTHER_NUMBER:
+      case Character.NON_SPACING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+
+  @Override
+  public Callable<List<CharSequence>> apply(CharSequence s) {
+    return new ShingleCallable(s);
+  }
+
+
+  private class ShingleCallable implements Callable<List<CharSequence>> {
+
+    private final CharSequence text;
+
+    private final List<CharSequence> shingles;
+
+    /**
+     * Ring buffer with the last n tokens
+     */
+    private final String[] window;
+
+    private int tokenCount;
+
+
+    private ShingleCallable(CharSequence text) {
+      this.text = text;
+      this.shingles = new ArrayList<>();
+      this.window = new String[n];
+      this.tokenCount = 0;
+    }
+
+
+    @Override
+    public List<CharSequence> call() {
+      StringBuilder token = new StringBuilder();
+      boolean ascii = true;
+      int length = text.length();
+      int i = 0;
+
+      while (i < length) {
+        int cp = Character.codePointAt(text, i);
+        i += Character.charCount(cp);
+
+        if (tokenChars.test(cp)) {
+          if (cp < 0x80) {
+            token.append((char) (lowercase ? Character.toLowerCase(cp) : cp));
+          } else {
+            ascii = false;
+            token.appendCodePoint(cp);
+          }
+        } else if (token.length() > 0) {
+          addToken(token, ascii);
+          token.setLength(0);
+          ascii = true;
+        }
+      }
+      if (token.length() > 0) {
+        addToken(token, ascii);
+      }
+
+      if (tokenCount > 0 && tokenCount < n) {
+        // text is shorter than a shingle, so all of its tokens form a single shingle
+        shingles.add(join(tokenCount));
+      }
+      return shingles;
+    }
+
+
+    private void addToken(StringBuilder token, boolean ascii) {
+      String t = token.toString();
+      if (!ascii) {
+        if (form != null) {
+          t = Normalizer.normalize(t, form);
+        }
+        if (lowercase) {
+          t = t.toLowerCase(Locale.ROOT);
+        }
+      }
+
+      if (stopper != null && stopper.test(t)) {
+        // token matches a stopword, so skip it
+        return;
+      }
+
+      window[tokenCount % n] = t;
+      tokenCount++;
+      if (tokenCount >= n) {
+        shingles.add(join(n));
+      }
+    }
+
+
+    /**
+     * Joins the last count tokens, from the oldest to the newest.
+     */
+    private String join(int count) {
+      if (count == 1) {
+        return window[(tokenCount - 1) % n];
+      }
+      StringBuilder sb = new StringBuilder();
+      for (int j = tokenCount - count; j < tokenCount; j++) {
+        if (sb.length() > 0) {
+          sb.append(' ');
+        }
+        sb.append(window[j % n]);
+      }
+      return sb.toString();
+    }
+  }
+}
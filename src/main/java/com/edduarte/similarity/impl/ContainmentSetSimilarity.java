@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.impl;
+
+import com.edduarte.similarity.SetSimilarity;
+import com.edduarte.similarity.Similarity;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class ContainmentSetSimilarity extends SetSimilarity {
+
+  /**
+   * Instantiates a Similarity class for number sets that measures how much of the first set (the
+   * query) is contained in the second set, |c1 intersect c2| / |c1|. Unlike the Jaccard index,
+   * this does not penalize a second set that is much larger than the first one.
+   */
+  public ContainmentSetSimilarity(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2) {
+    super(c1, c2);
+  }
+
+
+  @Override
+  public double getAsDouble() {
+    Set<Number> query = new HashSet<>(getFirst());
+    Set<Number> set = new HashSet<>(getSecond());
+    int intersection = 0;
+    for (Number number : query) {
+      if (set.contains(number)) {
+        intersection++;
+      }
+    }
+    return Similarity.containmentIndex(intersection, query.size());
+  }
+}
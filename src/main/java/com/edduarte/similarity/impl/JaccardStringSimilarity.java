@@ -19,6 +19,7 @@ package com.edduarte.similarity.impl;
 import com.edduarte.similarity.Similarity;
 import com.edduarte.similarity.StringSimilarity;
 import com.edduarte.similarity.converter.KShingler;
+import com.edduarte.similarity.converter.Shingler;
 
 import java.util.List;
 import java.util.Objects;
@@ -33,7 +34,7 @@ import java.util.concurrent.Future;
  */
 public class JaccardStringSimilarity extends StringSimilarity {
 
-  protected final KShingler kShingler;
+  protected final Shingler kShingler;
 
   protected final ExecutorService exec;
 
@@ -49,9 +50,27 @@ public class JaccardStringSimilarity extends StringSimilarity {
       String s2,
       int k,
       ExecutorService exec) {
+    this(s1, s2, new KShingler(k), exec);
+  }
+
+
+  /**
+   * Instantiates a Similarity class for strings using the Jaccard algorithm, with shingles
+   * generated by the specified shingler.
+   *
+   * @param shingler the shingler that splits strings into shingles, such as a {@link KShingler}
+   * or a {@link com.edduarte.similarity.converter.WordShingler}
+   * @param exec the executor that will receive the concurrent shingle processing tasks
+   */
+  public JaccardStringSimilarity(
+      String s1,
+      String s2,
+      Shingler shingler,
+      ExecutorService exec) {
     super(s1, s2);
+    Objects.requireNonNull(shingler, "Shingler must not be null");
     Objects.requireNonNull(exec, "Executor must not be null");
-    this.kShingler = new KShingler(k);
+    this.kShingler = shingler;
     this.exec = exec;
   }
 
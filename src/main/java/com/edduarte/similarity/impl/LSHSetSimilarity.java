@@ -87,8 +87,8 @@ public class LSHSetSimilarity extends SetSimilarity {
       Collection<? extends Number> c1,
       Collection<? extends Number> c2) {
     try {
-      Future<int[]> signatureFuture1 = exec.submit(sigConverter.apply(c1));
-      Future<int[]> signatureFuture2 = exec.submit(sigConverter.apply(c2));
+      Future<int[]> signatureFuture1 = exec.submit(sigConverter.apply(c1, exec));
+      Future<int[]> signatureFuture2 = exec.submit(sigConverter.apply(c2, exec));
       int[] signature1 = signatureFuture1.get();
       int[] signature2 = signatureFuture2.get();
       signatureFuture1 = null;
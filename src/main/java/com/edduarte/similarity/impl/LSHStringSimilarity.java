@@ -18,7 +18,9 @@ package com.edduarte.similarity.impl;
 
 import com.edduarte.similarity.Similarity;
 import com.edduarte.similarity.StringSimilarity;
+import com.edduarte.similarity.converter.KShingler;
 import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.Shingler;
 import com.edduarte.similarity.converter.SignatureToBandsConverter;
 import orestes.bloomfilter.HashProvider.HashMethod;
 
@@ -66,38 +68,108 @@ public class LSHStringSimilarity extends StringSimilarity {
       double s,
       HashMethod hash,
       ExecutorService exec) {
+    this(s1, s2, k, b, r, s, new KShinglesToSignatureConverter(
+        Objects.requireNonNull(hash, "Hash method must not be null"), signatureSize(b, s)), exec);
+  }
+
+
+  /**
+   * Instantiates a Similarity class for strings using the LSH algorithm, with signatures generated
+   * by the specified converter.
+   *
+   * @param k the length k of the shingles to generate
+   * @param b the number of bands
+   * @param r the number of rows
+   * @param s the threshold (value between 0.0 and 1.0) that balances the trade-off between the
+   * number of false positives and false negatives. A sensible threshold is 0.5, so we have a equal
+   * number of false positives and false negatives.
+   * @param sigConverter the converter that generates the signatures of shingles, which should
+   * generate signatures with the size determined by the threshold (see {@link #signatureSize})
+   * @param exec the executor that will receive the concurrent signature and band processing tasks
+   */
+  public LSHStringSimilarity(
+      String s1,
+      String s2,
+      int k,
+      int b,
+      int r,
+      double s,
+      KShinglesToSignatureConverter sigConverter,
+      ExecutorService exec) {
+    this(s1, s2, new KShingler(k), b, r, s, sigConverter, exec);
+  }
+
+
+  /**
+   * Instantiates a Similarity class for strings using the LSH algorithm, with shingles generated
+   * by the specified shingler and signatures generated by the specified converter.
+   *
+   * @param shingler the shingler that splits strings into shingles
+   * @param b the number of bands
+   * @param r the number of rows
+   * @param s the threshold (value between 0.0 and 1.0) that balances the trade-off between the
+   * number of false positives and false negatives.
+   * @param sigConverter the converter that generates the signatures of shingles, which should
+   * generate signatures with the size determined by the threshold (see {@link #signatureSize})
+   * @param exec the executor that will receive the concurrent signature and band processing tasks
+   */
+  public LSHStringSimilarity(
+      String s1,
+      String s2,
+      Shingler shingler,
+      int b,
+      int r,
+      double s,
+      KShinglesToSignatureConverter sigConverter,
+      ExecutorService exec) {
     super(s1, s2);
-    Objects.requireNonNull(hash, "Hash method must not be null");
+    Objects.requireNonNull(sigConverter, "Signature converter must not be null");
     Objects.requireNonNull(exec, "Executor must not be null");
-    // signature size is determined by a threshold S
     this.confidenceThreshold = s;
-    int R = (int) Math.ceil(Math.log(1.0 / b) / Math.log(s)) + 1;
-    int signatureSize = R * b;
-
-    this.jaccard = new JaccardStringSimilarity(s1, s2, k, exec);
-    this.sigConverter = new KShinglesToSignatureConverter(hash, signatureSize);
+    this.jaccard = new JaccardStringSimilarity(s1, s2, shingler, exec);
+    this.sigConverter = sigConverter;
     this.bandConverter = new SignatureToBandsConverter(b, r);
     this.exec = exec;
   }
 
 
+  /**
+   * Returns the signature size for b bands, which is determined by a threshold S.
+   */
+  public static int signatureSize(int b, double s) {
+    int R = (int) Math.ceil(Math.log(1.0 / b) / Math.log(s)) + 1;
+    return R * b;
+  }
+
+
   @Override
   public double getAsDouble() {
-    String s1 = getFirst();
-    String s2 = getSecond();
-    return isCandidatePair(s1, s2) ? jaccard.getAsDouble() : 0;
+    JaccardStringSimilarity.ShinglePair pair = jaccard.getShingles(getFirst(), getSecond());
+    return isCandidatePair(pair)
+        ? Similarity.jaccardIndexFromShingles(pair.getShingles1(), pair.getShingles2())
+        : 0;
   }
 
+  /**
+   * Returns true if both strings are a candidate pair with a Jaccard index equal or above the
+   * threshold, where the Jaccard index is only computed up to the point where the outcome is
+   * decided.
+   */
   @Override
   public boolean getAsBoolean() {
-    return getAsDouble() >= confidenceThreshold;
+    JaccardStringSimilarity.ShinglePair pair = jaccard.getShingles(getFirst(), getSecond());
+    return isCandidatePair(pair) && Similarity.jaccardIndexFromShinglesAtLeast(
+        pair.getShingles1(), pair.getShingles2(), confidenceThreshold);
   }
 
   public boolean isCandidatePair(String s1, String s2) {
-    JaccardStringSimilarity.ShinglePair pair = jaccard.getShingles(s1, s2);
+    return isCandidatePair(jaccard.getShingles(s1, s2));
+  }
+
+  private boolean isCandidatePair(JaccardStringSimilarity.ShinglePair pair) {
     try {
-      Future<int[]> signatureFuture1 = exec.submit(sigConverter.apply(pair.getShingles1()));
-      Future<int[]> signatureFuture2 = exec.submit(sigConverter.apply(pair.getShingles2()));
+      Future<int[]> signatureFuture1 = exec.submit(sigConverter.apply(pair.getShingles1(), exec));
+      Future<int[]> signatureFuture2 = exec.submit(sigConverter.apply(pair.getShingles2(), exec));
       int[] signature1 = signatureFuture1.get();
       int[] signature2 = signatureFuture2.get();
       signatureFuture1 = null;
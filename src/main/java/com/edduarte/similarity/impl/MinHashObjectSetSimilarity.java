@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.impl;
+
+import com.edduarte.similarity.Similarity;
+import com.edduarte.similarity.converter.CollectionToSignatureConverter;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class MinHashObjectSetSimilarity<T> implements Similarity<Collection<? extends T>> {
+
+  private final Collection<? extends T> c1;
+
+  private final Collection<? extends T> c2;
+
+  protected final CollectionToSignatureConverter<T> p;
+
+  protected final ExecutorService exec;
+
+
+  /**
+   * Instantiates a Similarity class for sets of arbitrary elements using the MinHashing
+   * algorithm.
+   *
+   * @param converter the converter that hashes elements and generates the signatures of sets
+   * @param exec the executor that will receive the concurrent signature processing tasks
+   */
+  public MinHashObjectSetSimilarity(
+      Collection<? extends T> c1,
+      Collection<? extends T> c2,
+      CollectionToSignatureConverter<T> converter,
+      ExecutorService exec) {
+    Objects.requireNonNull(c1, "Sets to compare must not be null");
+    Objects.requireNonNull(c2, "Sets to compare must not be null");
+    Objects.requireNonNull(converter, "Signature converter must not be null");
+    Objects.requireNonNull(exec, "Executor must not be null");
+    this.c1 = c1;
+    this.c2 = c2;
+    this.p = converter;
+    this.exec = exec;
+  }
+
+
+  @Override
+  public Collection<? extends T> getFirst() {
+    return c1;
+  }
+
+
+  @Override
+  public Collection<? extends T> getSecond() {
+    return c2;
+  }
+
+
+  @Override
+  public double getAsDouble() {
+    int[][] signatures = getSignatures();
+    return Similarity.signatureIndex(signatures[0], signatures[1]);
+  }
+
+
+  /**
+   * Returns true if the estimated similarity is equal or above the default threshold, where the
+   * signatures are only compared up to the point where the outcome is decided.
+   */
+  @Override
+  public boolean getAsBoolean() {
+    int[][] signatures = getSignatures();
+    return Similarity.signatureIndexAtLeast(
+        signatures[0], signatures[1], DEFAULT_CONFIDENCE_THRESHOLD);
+  }
+
+
+  protected int[][] getSignatures() {
+    Future<int[]> signatureFuture1 = exec.submit(p.apply(c1));
+    Future<int[]> signatureFuture2 = exec.submit(p.apply(c2));
+
+    try {
+      return new int[][] {signatureFuture1.get(), signatureFuture2.get()};
+
+    } catch (ExecutionException | InterruptedException ex) {
+      String m = "There was a problem processing set signatures.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+}
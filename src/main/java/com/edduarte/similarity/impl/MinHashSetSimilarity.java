@@ -60,16 +60,31 @@ public class MinHashSetSimilarity extends SetSimilarity {
 
   @Override
   public double getAsDouble() {
-    Collection<? extends Number> c1 = getFirst();
-    Collection<? extends Number> c2 = getSecond();
-    Future<int[]> signatureFuture1 = exec.submit(p.apply(c1));
-    Future<int[]> signatureFuture2 = exec.submit(p.apply(c2));
+    int[][] signatures = getSignatures(getFirst(), getSecond());
+    return Similarity.signatureIndex(signatures[0], signatures[1]);
+  }
 
-    try {
-      int[] signature1 = signatureFuture1.get();
-      int[] signature2 = signatureFuture2.get();
 
-      return Similarity.signatureIndex(signature1, signature2);
+  /**
+   * Returns true if the estimated similarity is equal or above the default threshold, where the
+   * signatures are only compared up to the point where the outcome is decided.
+   */
+  @Override
+  public boolean getAsBoolean() {
+    int[][] signatures = getSignatures(getFirst(), getSecond());
+    return Similarity.signatureIndexAtLeast(
+        signatures[0], signatures[1], DEFAULT_CONFIDENCE_THRESHOLD);
+  }
+
+
+  protected int[][] getSignatures(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2) {
+    Future<int[]> signatureFuture1 = exec.submit(p.apply(c1, exec));
+    Future<int[]> signatureFuture2 = exec.submit(p.apply(c2, exec));
+
+    try {
+      return new int[][] {signatureFuture1.get(), signatureFuture2.get()};
 
     } catch (ExecutionException | InterruptedException ex) {
       String m = "There was a problem processing set signatures.";
@@ -19,7 +19,9 @@ package com.edduarte.similarity.impl;
 
 import com.edduarte.similarity.Similarity;
 import com.edduarte.similarity.StringSimilarity;
+import com.edduarte.similarity.converter.KShingler;
 import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.Shingler;
 import orestes.bloomfilter.HashProvider.HashMethod;
 
 import java.util.List;
@@ -57,11 +59,48 @@ public class MinHashStringSimilarity extends StringSimilarity {
       int sigSize,
       HashMethod hash,
       ExecutorService exec) {
+    this(s1, s2, k, new KShinglesToSignatureConverter(
+        Objects.requireNonNull(hash, "Hash method must not be null"), sigSize), exec);
+  }
+
+
+  /**
+   * Instantiates a Similarity class for strings using the MinHashing algorithm, with signatures
+   * generated by the specified converter.
+   *
+   * @param k the length k of the shingles to generate
+   * @param sigConverter the converter that generates the signatures of shingles
+   * @param exec the executor that will receive the concurrent shingle processing tasks
+   */
+  public MinHashStringSimilarity(
+      String s1,
+      String s2,
+      int k,
+      KShinglesToSignatureConverter sigConverter,
+      ExecutorService exec) {
+    this(s1, s2, new KShingler(k), sigConverter, exec);
+  }
+
+
+  /**
+   * Instantiates a Similarity class for strings using the MinHashing algorithm, with shingles
+   * generated by the specified shingler and signatures generated by the specified converter.
+   *
+   * @param shingler the shingler that splits strings into shingles
+   * @param sigConverter the converter that generates the signatures of shingles
+   * @param exec the executor that will receive the concurrent shingle processing tasks
+   */
+  public MinHashStringSimilarity(
+      String s1,
+      String s2,
+      Shingler shingler,
+      KShinglesToSignatureConverter sigConverter,
+      ExecutorService exec) {
     super(s1, s2);
-    Objects.requireNonNull(hash, "Hash method must not be null");
+    Objects.requireNonNull(sigConverter, "Signature converter must not be null");
     Objects.requireNonNull(exec, "Executor must not be null");
-    this.jaccard = new JaccardStringSimilarity(s1, s2, k, exec);
-    this.p = new KShinglesToSignatureConverter(hash, sigSize);
+    this.jaccard = new JaccardStringSimilarity(s1, s2, shingler, exec);
+    this.p = sigConverter;
     this.exec = exec;
   }
 
@@ -76,9 +115,22 @@ public class MinHashStringSimilarity extends StringSimilarity {
   }
 
 
+  /**
+   * Returns true if the estimated similarity is equal or above the default threshold, where the
+   * signatures are only compared up to the point where the outcome is decided.
+   */
+  @Override
+  public boolean getAsBoolean() {
+    JaccardStringSimilarity.ShinglePair p = jaccard.getShingles(getFirst(), getSecond());
+    int[][] signatures = getSignatures(p.getShingles1(), p.getShingles2());
+    return Similarity.signatureIndexAtLeast(
+        signatures[0], signatures[1], DEFAULT_CONFIDENCE_THRESHOLD);
+  }
+
+
   protected int[][] getSignatures(List<CharSequence> shingles1, List<CharSequence> shingles2) {
-    Future<int[]> signatureFuture1 = exec.submit(p.apply(shingles1));
-    Future<int[]> signatureFuture2 = exec.submit(p.apply(shingles2));
+    Future<int[]> signatureFuture1 = exec.submit(p.apply(shingles1, exec));
+    Future<int[]> signatureFuture2 = exec.submit(p.apply(shingles2, exec));
 
     try {
       int[] signature1 = signatureFuture1.get();
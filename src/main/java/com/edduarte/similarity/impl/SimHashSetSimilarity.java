@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.impl;
+
+import com.edduarte.similarity.SetSimilarity;
+import com.edduarte.similarity.Similarity;
+import com.edduarte.similarity.converter.SetToSimHashConverter;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class SimHashSetSimilarity extends SetSimilarity {
+
+  protected final SetToSimHashConverter p;
+
+  protected final ExecutorService exec;
+
+
+  /**
+   * Instantiates a Similarity class for number sets using 64-bit SimHash fingerprints, where the
+   * similarity is the fraction of equal bits in both fingerprints.
+   *
+   * @param converter the converter that generates the fingerprints of sets
+   * @param exec the executor that will receive the concurrent fingerprint processing tasks
+   */
+  public SimHashSetSimilarity(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2,
+      SetToSimHashConverter converter,
+      ExecutorService exec) {
+    super(c1, c2);
+    Objects.requireNonNull(converter, "Fingerprint converter must not be null");
+    Objects.requireNonNull(exec, "Executor must not be null");
+    this.p = converter;
+    this.exec = exec;
+  }
+
+
+  @Override
+  public double getAsDouble() {
+    Future<Long> fingerprintFuture1 = exec.submit(p.apply(getFirst()));
+    Future<Long> fingerprintFuture2 = exec.submit(p.apply(getSecond()));
+
+    try {
+      return Similarity.hammingIndex(fingerprintFuture1.get(), fingerprintFuture2.get());
+
+    } catch (ExecutionException | InterruptedException ex) {
+      String m = "There was a problem processing set fingerprints.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.impl;
+
+import com.edduarte.similarity.Similarity;
+import com.edduarte.similarity.StringSimilarity;
+import com.edduarte.similarity.converter.KShinglesToSimHashConverter;
+import com.edduarte.similarity.converter.Shingler;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class SimHashStringSimilarity extends StringSimilarity {
+
+  protected final ExecutorService exec;
+
+  protected final JaccardStringSimilarity jaccard;
+
+  protected final KShinglesToSimHashConverter p;
+
+
+  /**
+   * Instantiates a Similarity class for strings using 64-bit SimHash fingerprints, where the
+   * similarity is the fraction of equal bits in both fingerprints.
+   *
+   * @param shingler the shingler that splits strings into shingles
+   * @param converter the converter that generates the fingerprints of shingles
+   * @param exec the executor that will receive the concurrent shingle processing tasks
+   */
+  public SimHashStringSimilarity(
+      String s1,
+      String s2,
+      Shingler shingler,
+      KShinglesToSimHashConverter converter,
+      ExecutorService exec) {
+    super(s1, s2);
+    Objects.requireNonNull(converter, "Fingerprint converter must not be null");
+    Objects.requireNonNull(exec, "Executor must not be null");
+    this.jaccard = new JaccardStringSimilarity(s1, s2, shingler, exec);
+    this.p = converter;
+    this.exec = exec;
+  }
+
+
+  @Override
+  public double getAsDouble() {
+    JaccardStringSimilarity.ShinglePair shingles = jaccard.getShingles(getFirst(), getSecond());
+    Future<Long> fingerprintFuture1 = exec.submit(p.apply(shingles.getShingles1()));
+    Future<Long> fingerprintFuture2 = exec.submit(p.apply(shingles.getShingles2()));
+
+    try {
+      return Similarity.hammingIndex(fingerprintFuture1.get(), fingerprintFuture2.get());
+
+    } catch (ExecutionException | InterruptedException ex) {
+      String m = "There was a problem processing shingle fingerprints.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Bucket table for a single LSH band, mapping band keys to the rows of the documents that were
+ * hashed into each bucket.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+final class BandTable {
+
+  private final Map<Long, Postings> buckets;
+
+
+  BandTable() {
+    this.buckets = new HashMap<>();
+  }
+
+
+  void put(long key, int row) {
+    buckets.computeIfAbsent(key, k -> new Postings()).add(row);
+  }
+
+
+  /**
+   * Removes the specified row from the bucket of the specified key, and removes the bucket if it
+   * becomes empty.
+   */
+  void remove(long key, int row) {
+    Postings postings = buckets.get(key);
+    if (postings != null && postings.remove(row) && postings.size == 0) {
+      buckets.remove(key);
+    }
+  }
+
+
+  void forEach(long key, IntConsumer consumer) {
+    Postings postings = buckets.get(key);
+    if (postings != null) {
+      postings.forEach(consumer);
+    }
+  }
+
+
+  /**
+   * Writes this table to a snapshot in the layout read by {@link MappedLSHIndex}, with its keys in
+   * ascending order and every row replaced by its new row in the specified array.
+   */
+  void writeTo(MappedLSHIndex.Writer out, int[] newRows) throws IOException {
+    long[] keys = new long[buckets.size()];
+    int i = 0;
+    int rowCount = 0;
+    for (Map.Entry<Long, Postings> e : buckets.entrySet()) {
+      keys[i++] = e.getKey();
+      rowCount += e.getValue().size;
+    }
+    Arrays.sort(keys);
+
+    out.putInt(keys.length);
+    out.putInt(rowCount);
+    for (long key : keys) {
+      out.putLong(key);
+    }
+    int offset = 0;
+    out.putInt(offset);
+    for (long key : keys) {
+      offset += buckets.get(key).size;
+      out.putInt(offset);
+    }
+    for (long key : keys) {
+      Postings postings = buckets.get(key);
+      for (int j = 0; j < postings.size; j++) {
+        out.putInt(newRows[postings.rows[j]]);
+      }
+    }
+    out.align();
+  }
+
+
+  private static class Postings {
+
+    private int[] rows;
+
+    private int size;
+
+
+    private Postings() {
+      this.rows = new int[2];
+      this.size = 0;
+    }
+
+
+    private void add(int row) {
+      if (size == rows.length) {
+        rows = Arrays.copyOf(rows, size * 2);
+      }
+      rows[size++] = row;
+    }
+
+
+    /**
+     * Removes the specified row, replacing it with the last row since the order of rows in a
+     * bucket does not matter.
+     */
+    private boolean remove(int row) {
+      for (int i = 0; i < size; i++) {
+        if (rows[i] == row) {
+          rows[i] = rows[--size];
+          return true;
+        }
+      }
+      return false;
+    }
+
+
+    private void forEach(IntConsumer consumer) {
+      for (int i = 0; i < size; i++) {
+        consumer.accept(rows[i]);
+      }
+    }
+  }
+}
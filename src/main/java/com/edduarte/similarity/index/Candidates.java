@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import com.edduarte.similarity.signature.SignatureMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Collector of the rows of the documents that share at least one bucket with a query, which are
+ * then ranked or checked against a threshold in the same way by every LSH index.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+final class Candidates implements IntConsumer {
+
+  private int[] rows;
+
+  private int count;
+
+
+  Candidates() {
+    this.rows = new int[16];
+    this.count = 0;
+  }
+
+
+  @Override
+  public void accept(int row) {
+    if (count == rows.length) {
+      rows = Arrays.copyOf(rows, count * 2);
+    }
+    rows[count++] = row;
+  }
+
+
+  /**
+   * Returns the collected rows in ascending order and without duplicates, since a document is
+   * collected once for every band it shares with the query.
+   */
+  int[] toSortedRows() {
+    Arrays.sort(rows, 0, count);
+    int unique = 0;
+    for (int i = 0; i < count; i++) {
+      if (unique == 0 || rows[unique - 1] != rows[i]) {
+        rows[unique++] = rows[i];
+      }
+    }
+    return Arrays.copyOf(rows, unique);
+  }
+
+
+  /**
+   * Returns the documents in the specified rows ranked from the most to the least similar to the
+   * specified signature, up to a maximum of limit results.
+   */
+  static List<Match> rank(
+      int[] rows,
+      int[] signature,
+      SignatureMatrix signatures,
+      IntToLongFunction ids,
+      int limit) {
+    List<Match> result = new ArrayList<>(rows.length);
+    for (int row : rows) {
+      double similarity = (double) signatures.matches(signature, row) / signature.length;
+      result.add(new Match(ids.applyAsLong(row), similarity));
+    }
+    Collections.sort(result);
+    return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+  }
+
+
+  /**
+   * Returns true if the signature in any of the specified rows is equal to the specified
+   * signature in at least minMatches slots.
+   */
+  static boolean anyMatchesAtLeast(
+      int[] rows,
+      int[] signature,
+      SignatureMatrix signatures,
+      int minMatches) {
+    for (int row : rows) {
+      if (signatures.matchesAtLeast(signature, row, minMatches)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
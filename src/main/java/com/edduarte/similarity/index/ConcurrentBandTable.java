@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Bucket table for a single LSH band that supports concurrent insertions and wait-free lookups,
+ * mapping primitive band keys to the rows of the documents that were hashed into each bucket.
+ * <p>
+ * Keys are split by their most significant bits into independent stripes, each one an
+ * open-addressing hash table with linear probing that is locked only by insertions into that
+ * stripe, so that insertions of different keys rarely contend. Lookups take no locks and never
+ * retry: every stripe publishes a new table when it grows, and a bucket publishes its rows in a
+ * new array when it grows, so a lookup always reads a consistent snapshot of the rows that were
+ * inserted before it started. Band keys are mixed by {@link
+ * com.edduarte.similarity.converter.SignatureToBandsConverter}, so their bits are used as is.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+final class ConcurrentBandTable {
+
+  private static final int STRIPE_BITS = 6;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Stripe[] stripes;
+
+
+  ConcurrentBandTable() {
+    this.stripes = new Stripe[1 << STRIPE_BITS];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+
+  void put(long key, int row) {
+    stripes[(int) (key >>> (64 - STRIPE_BITS))].put(key, row);
+  }
+
+
+  void forEach(long key, IntConsumer consumer) {
+    Postings postings = stripes[(int) (key >>> (64 - STRIPE_BITS))].get(key);
+    if (postings != null) {
+      postings.forEach(consumer);
+    }
+  }
+
+
+  /**
+   * Open-addressing table of a range of keys. A slot is in use once its postings are set, and its
+   * key is always written before its postings, so a lookup that finds the postings of a slot also
+   * finds its key.
+   */
+  private static final class Stripe {
+
+    private volatile Table table;
+
+    private int size;
+
+
+    private Stripe() {
+      this.table = new Table(INITIAL_CAPACITY);
+      this.size = 0;
+    }
+
+
+    private Postings get(long key) {
+      Table t = table;
+      int mask = t.keys.length - 1;
+      for (int i = (int) key & mask; ; i = (i + 1) & mask) {
+        Postings postings = t.postings.get(i);
+        if (postings == null) {
+          return null;
+        } else if (t.keys[i] == key) {
+          return postings;
+        }
+      }
+    }
+
+
+    private synchronized void put(long key, int row) {
+      Table t = table;
+      int mask = t.keys.length - 1;
+      int i = (int) key & mask;
+      Postings postings;
+      while ((postings = t.postings.get(i)) != null) {
+        if (t.keys[i] == key) {
+          postings.add(row);
+          return;
+        }
+        i = (i + 1) & mask;
+      }
+
+      postings = new Postings(row);
+      if ((size + 1) * 4 > t.keys.length * 3) {
+        // keep the load below 3/4, so that probe sequences stay short and always end
+        t = t.resize(t.keys.length * 2);
+        t.insert(key, postings);
+        table = t;
+      } else {
+        t.keys[i] = key;
+        t.postings.set(i, postings);
+      }
+      size++;
+    }
+  }
+
+
+  private static final class Table {
+
+    private final long[] keys;
+
+    private final AtomicReferenceArray<Postings> postings;
+
+
+    private Table(int capacity) {
+      this.keys = new long[capacity];
+      this.postings = new AtomicReferenceArray<>(capacity);
+    }
+
+
+    /**
+     * Returns a new table with the specified capacity and with the same buckets, which are shared
+     * with this table.
+     */
+    private Table resize(int capacity) {
+      Table resized = new Table(capacity);
+      for (int i = 0; i < keys.length; i++) {
+        Postings p = postings.get(i);
+        if (p != null) {
+          resized.insert(keys[i], p);
+        }
+      }
+      return resized;
+    }
+
+
+    private void insert(long key, Postings p) {
+      int mask = keys.length - 1;
+      int i = (int) key & mask;
+      while (postings.get(i) != null) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      postings.set(i, p);
+    }
+  }
+
+
+  /**
+   * Rows of a bucket, which are appended while holding the lock of the stripe of the bucket. The
+   * array of rows is published before the size, so a lookup that reads the size also reads an
+   * array with at least that many rows.
+   */
+  private static final class Postings {
+
+    private volatile int[] rows;
+
+    private volatile int size;
+
+
+    private Postings(int row) {
+      this.rows = new int[] {row, 0};
+      this.size = 1;
+    }
+
+
+    private void add(int row) {
+      int[] r = rows;
+      int s = size;
+      if (s == r.length) {
+        r = Arrays.copyOf(r, s * 2);
+      }
+      r[s] = row;
+      rows = r;
+      size = s + 1;
+    }
+
+
+    private void forEach(IntConsumer consumer) {
+      int s = size;
+      int[] r = rows;
+      for (int i = 0; i < s; i++) {
+        consumer.accept(r[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import com.edduarte.similarity.converter.SignatureToBandsConverter;
+import com.edduarte.similarity.signature.SignatureMatrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * LSH index of minhash signatures for many concurrent writers, where insertions from different
+ * threads run in parallel and queries never block. Like {@link LSHIndex}, every added signature
+ * is split into b bands, and each band is hashed into the bucket table of that band, but bucket
+ * tables are {@link ConcurrentBandTable}s with striped locks and wait-free lookups, instead of
+ * maps guarded by a single lock.
+ * <p>
+ * A document is visible to queries as soon as it was added to any of its buckets, and to all
+ * queries that start after its insertion returned. Documents cannot be removed.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class ConcurrentLSHIndex {
+
+  /**
+   * Number of rows in each chunk of documents, which is allocated on demand
+   */
+  private static final int CHUNK_BITS = 16;
+
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  private final int b;
+
+  private final int sigSize;
+
+  private final SignatureToBandsConverter bandConverter;
+
+  private final ConcurrentBandTable[] tables;
+
+  private final ConcurrentMap<Long, Integer> rowsById;
+
+  private final AtomicInteger rowCount;
+
+  /**
+   * Documents by row, in chunks of consecutive rows
+   */
+  private final AtomicReferenceArray<Document[]> chunks;
+
+
+  /**
+   * Instantiates an empty index for signatures with the specified size.
+   *
+   * @param b the number of bands in which signatures are split
+   * @param sigSize the length of the signatures that will be indexed
+   */
+  public ConcurrentLSHIndex(int b, int sigSize) {
+    if (b <= 0 || sigSize < b) {
+      throw new IllegalArgumentException(
+          "Signature size must be at least the number of bands, and bands must be positive");
+    }
+    this.b = b;
+    this.sigSize = sigSize;
+    this.bandConverter = new SignatureToBandsConverter(b, sigSize / b);
+    this.tables = new ConcurrentBandTable[b];
+    for (int i = 0; i < b; i++) {
+      tables[i] = new ConcurrentBandTable();
+    }
+    this.rowsById = new ConcurrentHashMap<>();
+    this.rowCount = new AtomicInteger();
+    this.chunks = new AtomicReferenceArray<>((Integer.MAX_VALUE >> CHUNK_BITS) + 1);
+  }
+
+
+  public int getBandCount() {
+    return b;
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  /**
+   * Returns the number of documents in this index.
+   */
+  public int size() {
+    return rowsById.size();
+  }
+
+
+  /**
+   * Adds the signature of the document with the specified id to this index. The signature is
+   * copied.
+   *
+   * @throws IllegalArgumentException if a document with the same id was already added
+   */
+  public void add(long id, int[] signature) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+    int row = rowCount.getAndIncrement();
+    if (rowsById.putIfAbsent(id, row) != null) {
+      // the reserved row stays empty, and is skipped by queries
+      throw new IllegalArgumentException("Document " + id + " was already indexed");
+    }
+
+    int chunk = row >>> CHUNK_BITS;
+    Document[] documents = chunks.get(chunk);
+    if (documents == null) {
+      chunks.compareAndSet(chunk, null, new Document[CHUNK_SIZE]);
+      documents = chunks.get(chunk);
+    }
+    // the document is published to queries by the band tables, which are written after it
+    documents[row & (CHUNK_SIZE - 1)] = new Document(id, signature.clone());
+    for (int band = 0; band < b; band++) {
+      tables[band].put(keys[band], row);
+    }
+  }
+
+
+  /**
+   * Returns the indexed documents that share at least one band with the specified signature,
+   * ranked from the most to the least similar, up to a maximum of limit results.
+   */
+  public List<Match> query(int[] signature, int limit) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+    List<Match> result = new ArrayList<>();
+    for (int row : candidates(keys)) {
+      Document document = document(row);
+      result.add(new Match(document.id, similarity(signature, document.signature)));
+    }
+    Collections.sort(result);
+    return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+  }
+
+
+  /**
+   * Returns true if any indexed document has an estimated similarity to the specified signature
+   * equal or above the specified threshold.
+   */
+  public boolean containsSimilar(int[] signature, double threshold) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+    int minMatches = SignatureMatrix.minMatches(threshold, sigSize);
+    for (int row : candidates(keys)) {
+      if (SignatureMatrix.matchesAtLeast(signature, document(row).signature, 0, minMatches)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  private Document document(int row) {
+    return chunks.get(row >>> CHUNK_BITS)[row & (CHUNK_SIZE - 1)];
+  }
+
+
+  private int[] candidates(long[] keys) {
+    Candidates candidates = new Candidates();
+    for (int band = 0; band < b; band++) {
+      tables[band].forEach(keys[band], candidates);
+    }
+    return candidates.toSortedRows();
+  }
+
+
+  private double similarity(int[] signature, int[] stored) {
+    int matches = 0;
+    for (int i = 0; i < sigSize; i++) {
+      if (stored[i] == signature[i]) {
+        matches++;
+      }
+    }
+    return (double) matches / sigSize;
+  }
+
+
+  private void checkSignature(int[] signature) {
+    if (signature.length != sigSize) {
+      throw new IllegalArgumentException("Signature must have " + sigSize + " slots");
+    }
+  }
+
+
+  private static final class Document {
+
+    private final long id;
+
+    private final int[] signature;
+
+
+    private Document(long id, int[] signature) {
+      this.id = id;
+      this.signature = signature;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.Shingler;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Stream stage that keeps the first string of every cluster of near-duplicates and rejects the
+ * others, which makes it usable with {@link java.util.stream.Stream#filter(Predicate)}. Every
+ * tested string is signed and checked against an incrementally growing {@link LSHIndex}, and is
+ * only added to it if no near-duplicate was indexed before.
+ * <p>
+ * Shingling and signing run on the calling thread, and only the check-and-insert step is
+ * serialized, so this filter is safe for parallel streams. Do note that on an unordered or
+ * parallel stream, which string of a cluster is kept depends on the order in which the strings
+ * reach this filter.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class DedupFilter implements Predicate<String> {
+
+  private final Shingler shingler;
+
+  private final KShinglesToSignatureConverter sigConverter;
+
+  private final LSHIndex index;
+
+  private final double threshold;
+
+  private final AtomicLong nextId;
+
+
+  /**
+   * Instantiates a near-duplicate filter.
+   *
+   * @param shingler the shingler used to split the tested strings
+   * @param sigConverter the converter used to sign the shingles, which must produce signatures
+   * with the same size as the ones stored in the index
+   * @param index the index where the kept strings are stored
+   * @param threshold the estimated similarity (value between 0.0 and 1.0) above which two strings
+   * are considered to be near-duplicates
+   */
+  public DedupFilter(
+      Shingler shingler,
+      KShinglesToSignatureConverter sigConverter,
+      LSHIndex index,
+      double threshold) {
+    Objects.requireNonNull(shingler, "Shingler must not be null");
+    Objects.requireNonNull(sigConverter, "Signature converter must not be null");
+    Objects.requireNonNull(index, "Index must not be null");
+    this.shingler = shingler;
+    this.sigConverter = sigConverter;
+    this.index = index;
+    this.threshold = threshold;
+    this.nextId = new AtomicLong();
+  }
+
+
+  /**
+   * Returns true if the specified string is not a near-duplicate of any string that was kept
+   * before, in which case it is kept as well.
+   */
+  @Override
+  public boolean test(String s) {
+    Objects.requireNonNull(s, "Strings to filter must not be null");
+    int[] signature;
+    try {
+      List<CharSequence> shingles = shingler.apply(s).call();
+      signature = sigConverter.apply(shingles).call();
+    } catch (Exception ex) {
+      String m = "There was a problem processing shingle signatures.";
+      throw new RuntimeException(m, ex);
+    }
+    return index.addIfAbsent(nextId.getAndIncrement(), signature, threshold);
+  }
+
+
+  /**
+   * Returns the index that holds the signatures of all strings that were kept so far.
+   */
+  public LSHIndex getIndex() {
+    return index;
+  }
+}
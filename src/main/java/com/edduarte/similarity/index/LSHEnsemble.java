@@ -0,0 +1,331 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import com.edduarte.similarity.converter.ElementHasher;
+import com.edduarte.similarity.signature.HeapSignatureMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of minhash signatures of sets for containment queries ("which stored sets contain most
+ * of this query set"), following the LSH Ensemble (Zhu et al., "LSH Ensemble: Internet-Scale
+ * Domain Search").
+ * <p>
+ * The containment of a query Q in a set X, |Q intersect X| / |Q|, can be converted to a Jaccard
+ * threshold, but that threshold depends on the size of X, so a single LSH index would be tuned
+ * for the wrong threshold on most sets. Instead, stored sets are partitioned by cardinality (in
+ * powers of two), and at query time every partition converts the containment threshold to a
+ * Jaccard threshold using its own largest set size, and probes its bands with the number of bands
+ * and rows that minimize the false positives and false negatives for that threshold. To allow
+ * this, signatures are indexed once for every number of rows r that is a power of two (including
+ * 1) or the maximum number of rows, split in bands of r rows up to the most bands that any
+ * threshold probes with r rows. Numbers of rows in between would lower the error of the tuning
+ * only slightly, but every one of them adds sigSize / r band tables to update on every insertion.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class LSHEnsemble {
+
+  private static final double FALSE_NEGATIVE_WEIGHT = 0.8;
+
+  private final int sigSize;
+
+  private final int maxRows;
+
+  /**
+   * Best number of bands and rows for every Jaccard threshold, in steps of 0.01
+   */
+  private final int[][] parameters;
+
+  /**
+   * Number of bands indexed for every number of rows r at bandCounts[r - 1], which is the largest
+   * number of bands of the parameters with r rows, or 0 if no threshold uses r rows
+   */
+  private final int[] bandCounts;
+
+  /**
+   * Partitions of stored sets, where partition i holds sets with sizes in [2^i, 2^(i+1))
+   */
+  private final Partition[] partitions;
+
+  private final Set<Long> ids;
+
+  private final ReadWriteLock lock;
+
+
+  /**
+   * Instantiates an empty index for signatures with the specified size.
+   *
+   * @param sigSize the length of the signatures that will be indexed
+   * @param maxRows the maximum number of rows per band
+   */
+  public LSHEnsemble(int sigSize, int maxRows) {
+    if (maxRows <= 0 || sigSize < maxRows) {
+      throw new IllegalArgumentException(
+          "Signature size must be at least the maximum number of rows, which must be positive");
+    }
+    this.sigSize = sigSize;
+    this.maxRows = maxRows;
+    this.parameters = optimalParameters(sigSize, maxRows);
+    this.bandCounts = new int[maxRows];
+    for (int[] best : parameters) {
+      bandCounts[best[1] - 1] = Math.max(bandCounts[best[1] - 1], best[0]);
+    }
+    this.partitions = new Partition[Integer.SIZE];
+    this.ids = new HashSet<>();
+    this.lock = new ReentrantReadWriteLock();
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  /**
+   * Returns the number of sets in this index.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return ids.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Adds the signature of the set with the specified id and number of distinct elements.
+   *
+   * @throws IllegalArgumentException if a set with the same id was already added
+   */
+  public void add(long id, int[] signature, int setSize) {
+    checkSignature(signature);
+    if (setSize <= 0) {
+      throw new IllegalArgumentException("Set size must be positive");
+    }
+    long[][] keys = bandKeys(signature);
+
+    lock.writeLock().lock();
+    try {
+      if (!ids.add(id)) {
+        throw new IllegalArgumentException("Set " + id + " was already indexed");
+      }
+      int p = 31 - Integer.numberOfLeadingZeros(setSize);
+      if (partitions[p] == null) {
+        partitions[p] = new Partition();
+      }
+      partitions[p].add(id, signature, setSize, keys);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Returns the candidate sets for containing the query set above the specified threshold,
+   * ranked from the highest to the lowest estimated containment. Estimates from minhash
+   * signatures are too coarse at the low Jaccard indexes of large sets to filter candidates out,
+   * so callers that need exact results should verify them against the actual sets (for example,
+   * with {@link com.edduarte.similarity.JaccardFactory#containmentOf}).
+   *
+   * @param signature the signature of the query set
+   * @param querySize the number of distinct elements in the query set
+   * @param threshold the minimum containment (value between 0.0 and 1.0) of the query set
+   */
+  public List<Match> query(int[] signature, int querySize, double threshold) {
+    checkSignature(signature);
+    if (querySize <= 0) {
+      return new ArrayList<>();
+    }
+    long[][] keys = bandKeys(signature);
+    List<Match> result = new ArrayList<>();
+
+    lock.readLock().lock();
+    try {
+      for (Partition partition : partitions) {
+        if (partition != null) {
+          partition.query(signature, querySize, threshold, keys, result);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    Collections.sort(result);
+    return result;
+  }
+
+
+  /**
+   * Estimates the containment of a query set in another set from their estimated Jaccard index
+   * and their sizes, since |Q intersect X| = J * (|Q| + |X|) / (1 + J).
+   */
+  static double containment(double jaccard, int querySize, int setSize) {
+    double intersection = jaccard * (querySize + setSize) / (1 + jaccard);
+    return Math.min(intersection / querySize, 1);
+  }
+
+
+  /**
+   * Computes band keys for every number of rows r, where keys[r - 1][band] hashes the r rows of
+   * that band, for the number of bands that are indexed with r rows.
+   */
+  private long[][] bandKeys(int[] signature) {
+    long[][] keys = new long[maxRows][];
+    for (int r = 1; r <= maxRows; r++) {
+      int bands = bandCounts[r - 1];
+      keys[r - 1] = new long[bands];
+      for (int band = 0; band < bands; band++) {
+        long h = band;
+        for (int row = band * r; row < (band + 1) * r; row++) {
+          h = h * 0x9E3779B97F4A7C15L + signature[row];
+        }
+        keys[r - 1][band] = ElementHasher.mix(h);
+      }
+    }
+    return keys;
+  }
+
+
+  /**
+   * For every Jaccard threshold in steps of 0.01, finds the number of bands b and rows r, where r
+   * is a power of two or maxRows, that minimize the weighted sum of the probabilities of false
+   * positives and false negatives, i.e. the area under the candidate probability curve
+   * 1 - (1 - s^r)^b below the threshold, plus the area above it for the sets that would not be
+   * candidates. False negatives are weighted more,
+   * since they cannot be recovered by verifying the candidates afterwards.
+   */
+  private static int[][] optimalParameters(int sigSize, int maxRows) {
+    int steps = 100;
+    int[][] parameters = new int[steps + 1][];
+    for (int t = 0; t <= steps; t++) {
+      double threshold = (double) t / steps;
+      double best = Double.MAX_VALUE;
+      for (int r = 1; r <= maxRows; r++) {
+        if (Integer.bitCount(r) != 1 && r != maxRows) {
+          continue;
+        }
+        for (int b = 1; b <= sigSize / r; b++) {
+          double error = 0;
+          for (int i = 0; i < steps; i++) {
+            double s = (i + 0.5) / steps;
+            double p = 1 - Math.pow(1 - Math.pow(s, r), b);
+            error += s < threshold
+                ? (1 - FALSE_NEGATIVE_WEIGHT) * p
+                : FALSE_NEGATIVE_WEIGHT * (1 - p);
+          }
+          if (error < best) {
+            best = error;
+            parameters[t] = new int[]{b, r};
+          }
+        }
+      }
+    }
+    return parameters;
+  }
+
+
+  private void checkSignature(int[] signature) {
+    if (signature.length != sigSize) {
+      throw new IllegalArgumentException("Signature must have " + sigSize + " slots");
+    }
+  }
+
+
+  private class Partition {
+
+    private final BandTable[][] tables;
+
+    private final HeapSignatureMatrix signatures;
+
+    private long[] ids;
+
+    private int[] sizes;
+
+    private int maxSize;
+
+
+    private Partition() {
+      this.tables = new BandTable[maxRows][];
+      for (int r = 1; r <= maxRows; r++) {
+        tables[r - 1] = new BandTable[bandCounts[r - 1]];
+        for (int band = 0; band < tables[r - 1].length; band++) {
+          tables[r - 1][band] = new BandTable();
+        }
+      }
+      this.signatures = new HeapSignatureMatrix(sigSize);
+      this.ids = new long[16];
+      this.sizes = new int[16];
+      this.maxSize = 0;
+    }
+
+
+    private void add(long id, int[] signature, int setSize, long[][] keys) {
+      int row = signatures.append(signature);
+      if (row == ids.length) {
+        ids = Arrays.copyOf(ids, row * 2);
+        sizes = Arrays.copyOf(sizes, row * 2);
+      }
+      ids[row] = id;
+      sizes[row] = setSize;
+      maxSize = Math.max(maxSize, setSize);
+      for (int r = 0; r < maxRows; r++) {
+        for (int band = 0; band < tables[r].length; band++) {
+          tables[r][band].put(keys[r][band], row);
+        }
+      }
+    }
+
+
+    private void query(
+        int[] signature,
+        int querySize,
+        double threshold,
+        long[][] keys,
+        List<Match> result) {
+      // the Jaccard threshold is converted with the largest set in this partition, which gives
+      // the lowest Jaccard index for the same containment, so that no set is missed
+      double t = threshold * querySize;
+      double jaccardThreshold = Math.max(t / (maxSize + querySize - t), 0);
+      int[] best = parameters[(int) Math.floor(Math.min(jaccardThreshold, 1) * 100)];
+      int b = best[0];
+      int r = best[1];
+
+      Candidates candidates = new Candidates();
+      for (int band = 0; band < b; band++) {
+        tables[r - 1][band].forEach(keys[r - 1][band], candidates);
+      }
+
+      for (int row : candidates.toSortedRows()) {
+        double jaccard = (double) signatures.matches(signature, row) / sigSize;
+        result.add(new Match(ids[row], containment(jaccard, querySize, sizes[row])));
+      }
+    }
+  }
+}
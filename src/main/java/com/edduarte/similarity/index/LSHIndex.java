@@ -0,0 +1,696 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.SignatureToBandsConverter;
+import com.edduarte.similarity.signature.HeapSignatureMatrix;
+import com.edduarte.similarity.signature.SignatureCodec;
+import com.edduarte.similarity.signature.SignatureMatrix;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incrementally growing LSH index of minhash signatures. Every added signature is split into b
+ * bands, and each band is hashed into the bucket table of that band, so that a query only needs to
+ * be compared against the documents that share at least one bucket with it.
+ * <p>
+ * Documents can be removed or updated without rebuilding the index: a removed document is taken
+ * out of the buckets of its stored signature right away, so it is never returned again, and its
+ * row is marked with a tombstone. The rows of removed documents are reclaimed by
+ * {@link #compact()}, which can run in the background while queries are served.
+ * <p>
+ * The index is safe for use by multiple threads: queries run concurrently with each other, while
+ * insertions and removals are serialized.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class LSHIndex {
+
+  private static final int SNAPSHOT_MAGIC = 0x4C534849;
+
+  private static final int SNAPSHOT_VERSION = 1;
+
+  /**
+   * Number of rows that a compaction copies every time it holds the read lock
+   */
+  private static final int COMPACTION_BATCH_SIZE = 4096;
+
+  private final int b;
+
+  private final int sigSize;
+
+  private final SignatureToBandsConverter bandConverter;
+
+  private final ReadWriteLock lock;
+
+  /**
+   * Serializes compactions, since every compaction renumbers the rows that another one would copy
+   */
+  private final Object compactionLock;
+
+  private BandTable[] tables;
+
+  private Map<Long, Integer> rowsById;
+
+  /**
+   * Signatures of all indexed documents, where the row of each document is also its position in
+   * the band tables
+   */
+  private SignatureMatrix signatures;
+
+  private long[] ids;
+
+  private int rowCount;
+
+  /**
+   * Rows of removed documents, which are reclaimed by the next compaction
+   */
+  private BitSet removed;
+
+  private int removedCount;
+
+
+  /**
+   * Instantiates an empty index for signatures with the specified size.
+   *
+   * @param b the number of bands in which signatures are split
+   * @param sigSize the length of the signatures that will be indexed
+   */
+  public LSHIndex(int b, int sigSize) {
+    this(b, new HeapSignatureMatrix(sigSize));
+  }
+
+
+  /**
+   * Instantiates an empty index that stores signatures in the specified matrix, for example an
+   * {@link com.edduarte.similarity.signature.OffHeapSignatureMatrix} to keep them off the heap.
+   *
+   * @param b the number of bands in which signatures are split
+   * @param signatures an empty matrix with the length of the signatures that will be indexed
+   */
+  public LSHIndex(int b, SignatureMatrix signatures) {
+    int sigSize = signatures.getSignatureSize();
+    if (signatures.size() != 0) {
+      throw new IllegalArgumentException("Signature matrix must be empty");
+    }
+    if (b <= 0 || sigSize < b) {
+      throw new IllegalArgumentException(
+          "Signature size must be at least the number of bands, and bands must be positive");
+    }
+    this.b = b;
+    this.sigSize = sigSize;
+    this.bandConverter = new SignatureToBandsConverter(b, sigSize / b);
+    this.tables = new BandTable[b];
+    for (int i = 0; i < b; i++) {
+      tables[i] = new BandTable();
+    }
+    this.rowsById = new HashMap<>();
+    this.lock = new ReentrantReadWriteLock();
+    this.compactionLock = new Object();
+    this.signatures = signatures;
+    this.ids = new long[16];
+    this.rowCount = 0;
+    this.removed = new BitSet();
+    this.removedCount = 0;
+  }
+
+
+  public int getBandCount() {
+    return b;
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  /**
+   * Returns the number of documents in this index.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return rowCount - removedCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Returns the ids of all documents in this index.
+   */
+  long[] ids() {
+    lock.readLock().lock();
+    try {
+      long[] result = new long[rowCount - removedCount];
+      int count = 0;
+      for (int row = 0; row < rowCount; row++) {
+        if (!removed.get(row)) {
+          result[count++] = ids[row];
+        }
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Returns the number of rows of removed documents that were not reclaimed by a compaction yet.
+   */
+  public int getRemovedCount() {
+    lock.readLock().lock();
+    try {
+      return removedCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Adds the signature of the document with the specified id to this index.
+   *
+   * @throws IllegalArgumentException if a document with the same id was already added
+   */
+  public void add(long id, int[] signature) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+
+    lock.writeLock().lock();
+    try {
+      if (rowsById.containsKey(id)) {
+        throw new IllegalArgumentException("Document " + id + " was already indexed");
+      }
+      insert(id, signature, keys);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Adds the signature of the document with the specified id to this index, but only if no
+   * indexed document has an estimated similarity to it equal or above the specified threshold.
+   * The check and the insertion are performed atomically.
+   *
+   * @return true if the document was added, or false if a similar document was already indexed
+   */
+  public boolean addIfAbsent(long id, int[] signature, double threshold) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+
+    int minMatches = SignatureMatrix.minMatches(threshold, sigSize);
+
+    lock.writeLock().lock();
+    try {
+      if (Candidates.anyMatchesAtLeast(candidates(keys), signature, signatures, minMatches)) {
+        return false;
+      }
+      if (rowsById.containsKey(id)) {
+        throw new IllegalArgumentException("Document " + id + " was already indexed");
+      }
+      insert(id, signature, keys);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Removes the document with the specified id from this index. The document is removed from the
+   * buckets of its stored signature, and its row is reclaimed by the next compaction.
+   *
+   * @return true if the document was indexed
+   */
+  public boolean remove(long id) {
+    lock.writeLock().lock();
+    try {
+      Integer row = rowsById.remove(id);
+      if (row == null) {
+        return false;
+      }
+      long[] keys = bandConverter.toBandKeys(signatures.getRow(row));
+      for (int band = 0; band < b; band++) {
+        tables[band].remove(keys[band], row);
+      }
+      removed.set(row);
+      removedCount++;
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Replaces the signature of the document with the specified id, for example after the document
+   * was edited, or adds it if it was not indexed. The replacement is performed atomically.
+   */
+  public void update(long id, int[] signature) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+
+    lock.writeLock().lock();
+    try {
+      remove(id);
+      insert(id, signature, keys);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Reclaims the rows of removed documents, by copying the remaining documents to new band tables
+   * and to a new signature matrix of the same kind (see {@link SignatureMatrix#newEmpty()}), and
+   * then swapping them in. A matrix stored in a file is copied to a new file next to it (see
+   * {@link com.edduarte.similarity.signature.OffHeapSignatureMatrix#newEmpty()}).
+   * <p>
+   * Rows are copied in batches, each under a brief read lock, so neither queries nor insertions
+   * and removals wait for the whole copy. The documents added and removed while the copy was made
+   * are then replayed on it while holding the write lock, and it is swapped in. Documents removed
+   * during the copy are left as removed rows of the new matrix, to be reclaimed by the next
+   * compaction. The previous matrix is closed if it is {@link Closeable}.
+   */
+  public void compact() throws IOException {
+    synchronized (compactionLock) {
+      Compaction compaction;
+      lock.readLock().lock();
+      try {
+        if (removedCount == 0) {
+          return;
+        }
+        compaction = new Compaction();
+      } finally {
+        lock.readLock().unlock();
+      }
+
+      for (int from = 0; from < compaction.oldRows.length; from += COMPACTION_BATCH_SIZE) {
+        lock.readLock().lock();
+        try {
+          compaction.copy(from, Math.min(from + COMPACTION_BATCH_SIZE, compaction.oldRows.length));
+        } finally {
+          lock.readLock().unlock();
+        }
+      }
+
+      lock.writeLock().lock();
+      try {
+        compaction.replay();
+        compaction.swap();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+
+  /**
+   * Runs {@link #compact()} in the specified executor.
+   */
+  public CompletableFuture<Void> compactAsync(Executor executor) {
+    return CompletableFuture.runAsync(() -> {
+      try {
+        compact();
+      } catch (IOException ex) {
+        String m = "There was a problem compacting the index.";
+        throw new UncheckedIOException(m, ex);
+      }
+    }, executor);
+  }
+
+
+  /**
+   * Returns the indexed documents that share at least one band with the specified signature,
+   * ranked from the most to the least similar, up to a maximum of limit results.
+   */
+  public List<Match> query(int[] signature, int limit) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+
+    lock.readLock().lock();
+    try {
+      long[] ids = this.ids;
+      return Candidates.rank(candidates(keys), signature, signatures, row -> ids[row], limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Returns true if any indexed document has an estimated similarity to the specified signature
+   * equal or above the specified threshold.
+   */
+  public boolean containsSimilar(int[] signature, double threshold) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+    int minMatches = SignatureMatrix.minMatches(threshold, sigSize);
+
+    lock.readLock().lock();
+    try {
+      return Candidates.anyMatchesAtLeast(candidates(keys), signature, signatures, minMatches);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Writes a snapshot of this index to the specified stream, which can be restored with
+   * {@link #readFrom(InputStream)} in this or in another process. Only ids and signatures are
+   * written, since band tables are rebuilt from the signatures when the snapshot is read.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    lock.readLock().lock();
+    try {
+      data.writeInt(SNAPSHOT_MAGIC);
+      data.writeInt(SNAPSHOT_VERSION);
+      data.writeInt(b);
+      data.writeInt(sigSize);
+      data.writeInt(rowCount - removedCount);
+      for (int row = 0; row < rowCount; row++) {
+        if (removed.get(row)) {
+          continue;
+        }
+        data.writeLong(ids[row]);
+        for (int i = 0; i < sigSize; i++) {
+          data.writeInt(signatures.get(row, i));
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    data.flush();
+  }
+
+
+  /**
+   * Reads an index from a snapshot that was written with {@link #writeTo(OutputStream)}. The
+   * stream is read up to the end of the snapshot and no further, so it should be buffered by the
+   * caller.
+   */
+  public static LSHIndex readFrom(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != SNAPSHOT_MAGIC) {
+      throw new IOException("Stream does not contain an index snapshot");
+    }
+    int version = data.readInt();
+    if (version != SNAPSHOT_VERSION) {
+      throw new IOException("Unsupported index snapshot version " + version);
+    }
+    LSHIndex index = new LSHIndex(data.readInt(), data.readInt());
+    int rowCount = data.readInt();
+    int[] signature = new int[index.sigSize];
+    for (int row = 0; row < rowCount; row++) {
+      long id = data.readLong();
+      for (int i = 0; i < signature.length; i++) {
+        signature[i] = data.readInt();
+      }
+      index.add(id, signature);
+    }
+    return index;
+  }
+
+
+  /**
+   * Writes a snapshot of this index to the specified file, including its band tables, so that it
+   * can be opened with {@link MappedLSHIndex#open(Path, KShinglesToSignatureConverter)} and queried
+   * right away, without reading or rebuilding anything. The file is created if it does not exist
+   * or truncated if it does.
+   *
+   * @param file the snapshot file
+   * @param converter the converter that produced the indexed signatures, whose hash family is
+   * written to the snapshot so that queries with another family are rejected
+   * @throws IllegalArgumentException if the converter produces signatures of another size
+   */
+  public void writeSnapshot(Path file, KShinglesToSignatureConverter converter)
+      throws IOException {
+    if (converter.getSignatureSize() != sigSize) {
+      throw new IllegalArgumentException("Converter must produce signatures with " + sigSize
+          + " slots");
+    }
+    SignatureCodec family = SignatureCodec.of(converter, b, sigSize / b);
+    byte[] name = family.getHashMethod() != null
+        ? family.getHashMethod().name().getBytes(StandardCharsets.US_ASCII)
+        : new byte[0];
+    lock.readLock().lock();
+    try (MappedLSHIndex.Writer out = new MappedLSHIndex.Writer(file)) {
+      // rows of removed documents are left out, so the remaining rows are renumbered
+      int size = rowCount - removedCount;
+      int[] newRows = new int[rowCount];
+      long[] newIds = new long[size];
+      for (int row = 0, newRow = 0; row < rowCount; row++) {
+        if (removed.get(row)) {
+          newRows[row] = -1;
+        } else {
+          newRows[row] = newRow;
+          newIds[newRow++] = ids[row];
+        }
+      }
+
+      out.putInt(MappedLSHIndex.SNAPSHOT_MAGIC);
+      out.putInt(MappedLSHIndex.SNAPSHOT_VERSION);
+      out.putInt(b);
+      out.putInt(sigSize / b);
+      out.putInt(sigSize);
+      out.putInt(size);
+      out.putInt(family.getFamily().ordinal());
+      out.putInt(name.length);
+      out.putLong(family.getSeed());
+      out.putBytes(name);
+      out.align();
+      for (long id : newIds) {
+        out.putLong(id);
+      }
+      long[] sortedIds = newIds.clone();
+      Arrays.sort(sortedIds);
+      for (long id : sortedIds) {
+        out.putLong(id);
+      }
+      for (long id : sortedIds) {
+        out.putInt(newRows[rowsById.get(id)]);
+      }
+      out.align();
+
+      int[] signature = new int[sigSize];
+      for (int row = 0; row < rowCount; row++) {
+        if (!removed.get(row)) {
+          signatures.copy(row, signature);
+          for (int value : signature) {
+            out.putInt(value);
+          }
+        }
+      }
+      out.align();
+
+      for (BandTable table : tables) {
+        table.writeTo(out, newRows);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  private void insert(long id, int[] signature, long[] keys) {
+    int row = signatures.append(signature);
+    if (row == ids.length) {
+      ids = Arrays.copyOf(ids, row * 2);
+    }
+    ids[row] = id;
+    for (int band = 0; band < b; band++) {
+      tables[band].put(keys[band], row);
+    }
+    rowsById.put(id, row);
+    rowCount++;
+  }
+
+
+  /**
+   * Collects the sorted and deduplicated rows of all documents that share a bucket with the
+   * specified band keys. Must be called while holding the lock.
+   */
+  private int[] candidates(long[] keys) {
+    Candidates candidates = new Candidates();
+    for (int band = 0; band < b; band++) {
+      tables[band].forEach(keys[band], candidates);
+    }
+    return candidates.toSortedRows();
+  }
+
+
+  private void checkSignature(int[] signature) {
+    if (signature.length != sigSize) {
+      throw new IllegalArgumentException("Signature must have " + sigSize + " slots");
+    }
+  }
+
+
+  /**
+   * Copy of the remaining documents of this index, which is made in batches of rows and then
+   * brought up to date with the changes made while it was copied.
+   */
+  private class Compaction {
+
+    private final BandTable[] tables;
+
+    private final Map<Long, Integer> rowsById;
+
+    private final SignatureMatrix signatures;
+
+    private long[] ids;
+
+    private final BitSet removed;
+
+    private int removedCount;
+
+    /**
+     * Row in this copy of every row of the index when the compaction started, or -1 if it was not
+     * copied because it was removed
+     */
+    private final int[] oldRows;
+
+    private final int[] signature;
+
+
+    /**
+     * Must be called while holding the read lock.
+     */
+    private Compaction() {
+      int size = rowCount - LSHIndex.this.removedCount;
+      this.tables = new BandTable[b];
+      for (int i = 0; i < b; i++) {
+        tables[i] = new BandTable();
+      }
+      this.rowsById = new HashMap<>(size * 4 / 3 + 1);
+      this.signatures = LSHIndex.this.signatures.newEmpty();
+      this.ids = new long[Math.max(size, 16)];
+      this.removed = new BitSet();
+      this.removedCount = 0;
+      this.oldRows = new int[rowCount];
+      this.signature = new int[sigSize];
+    }
+
+
+    /**
+     * Copies the rows of the index from the specified row (inclusive) to the specified row
+     * (exclusive) that are not removed. Must be called while holding the read lock.
+     */
+    private void copy(int from, int to) {
+      for (int row = from; row < to; row++) {
+        oldRows[row] = LSHIndex.this.removed.get(row) ? -1 : append(row);
+      }
+    }
+
+
+    /**
+     * Applies the changes made to the index since the rows were copied: documents removed after
+     * their rows were copied are removed from this copy, and documents added after the
+     * compaction started are appended to it. Must be called while holding the write lock.
+     */
+    private void replay() {
+      BitSet indexRemoved = LSHIndex.this.removed;
+      for (int row = indexRemoved.nextSetBit(0);
+           row >= 0 && row < oldRows.length;
+           row = indexRemoved.nextSetBit(row + 1)) {
+        int newRow = oldRows[row];
+        if (newRow >= 0) {
+          signatures.copy(newRow, signature);
+          long[] keys = bandConverter.toBandKeys(signature);
+          for (int band = 0; band < b; band++) {
+            tables[band].remove(keys[band], newRow);
+          }
+          rowsById.remove(ids[newRow], newRow);
+          removed.set(newRow);
+          removedCount++;
+        }
+      }
+      for (int row = oldRows.length; row < rowCount; row++) {
+        if (!indexRemoved.get(row)) {
+          append(row);
+        }
+      }
+    }
+
+
+    /**
+     * Appends the document in the specified row of the index to this copy, and returns its row in
+     * this copy.
+     */
+    private int append(int row) {
+      LSHIndex.this.signatures.copy(row, signature);
+      int newRow = signatures.append(signature);
+      long[] keys = bandConverter.toBandKeys(signature);
+      for (int band = 0; band < b; band++) {
+        tables[band].put(keys[band], newRow);
+      }
+      if (newRow == ids.length) {
+        ids = Arrays.copyOf(ids, newRow * 2);
+      }
+      ids[newRow] = LSHIndex.this.ids[row];
+      rowsById.put(ids[newRow], newRow);
+      return newRow;
+    }
+
+
+    /**
+     * Replaces the state of the index with this copy. Must be called while holding the write
+     * lock.
+     */
+    private void swap() throws IOException {
+      SignatureMatrix previous = LSHIndex.this.signatures;
+      LSHIndex.this.tables = tables;
+      LSHIndex.this.rowsById = rowsById;
+      LSHIndex.this.signatures = signatures;
+      LSHIndex.this.ids = ids;
+      rowCount = signatures.size();
+      LSHIndex.this.removed = removed;
+      LSHIndex.this.removedCount = removedCount;
+      if (previous instanceof Closeable) {
+        ((Closeable) previous).close();
+      }
+    }
+  }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.SignatureToBandsConverter;
+import com.edduarte.similarity.signature.OffHeapSignatureMatrix;
+import com.edduarte.similarity.signature.SignatureCodec;
+import com.edduarte.similarity.signature.SignatureMatrix;
+import orestes.bloomfilter.HashProvider.HashMethod;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Read-only LSH index served straight from a snapshot file that was written with
+ * {@link LSHIndex#writeSnapshot(Path)}. The file is memory-mapped when it is opened, and its pages
+ * are only read when a query first touches them, so opening takes the same time regardless of
+ * the number of indexed documents, and queries can be served right away. Every section is mapped
+ * in chunks, so that no section is limited to the 2GB of a single mapped buffer.
+ * <p>
+ * The snapshot holds, in little-endian byte order and with every section aligned to 8 bytes:
+ * <ul>
+ * <li>a header with the number of bands, the number of rows per band and the signature size,
+ * which determine how band keys are hashed, the number of documents, and the hash family of the
+ * signatures (its {@link SignatureCodec.Family}, seed and hash method name);</li>
+ * <li>the id of the document in each row;</li>
+ * <li>the id map, with all ids in ascending order followed by the row of each of them;</li>
+ * <li>the signature matrix, with the signatures of all rows one after the other;</li>
+ * <li>the bucket table of each band, with its keys in ascending order, the offset of the rows of
+ * each key and the rows themselves.</li>
+ * </ul>
+ * <p>
+ * Queries must be signed with the same hash family as the indexed signatures, or they silently
+ * find no candidates, so a restarted service should open the snapshot with
+ * {@link #open(Path, KShinglesToSignatureConverter)}, which checks the family of its converter.
+ * <p>
+ * The index is safe for use by multiple threads.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class MappedLSHIndex {
+
+  static final int SNAPSHOT_MAGIC = 0x4C53484D;
+
+  static final int SNAPSHOT_VERSION = 2;
+
+  private static final int HEADER_BYTES = 40;
+
+  private final int b;
+
+  private final int sigSize;
+
+  private final SignatureCodec.Family family;
+
+  private final HashMethod hash;
+
+  private final long seed;
+
+  private final int size;
+
+  private final SignatureToBandsConverter bandConverter;
+
+  private final MappedSection ids;
+
+  private final MappedSection sortedIds;
+
+  private final MappedSection sortedRows;
+
+  private final SignatureMatrix signatures;
+
+  private final MappedSection[] keys;
+
+  private final MappedSection[] offsets;
+
+  private final MappedSection[] rows;
+
+
+  private MappedLSHIndex(FileChannel channel, int chunkBytes) throws IOException {
+    ByteBuffer header = read(channel, 0, HEADER_BYTES);
+    if (header.getInt() != SNAPSHOT_MAGIC) {
+      throw new IOException("File does not contain an index snapshot");
+    }
+    int version = header.getInt();
+    if (version != SNAPSHOT_VERSION) {
+      throw new IOException("Unsupported index snapshot version " + version);
+    }
+    this.b = header.getInt();
+    int r = header.getInt();
+    this.sigSize = header.getInt();
+    this.size = header.getInt();
+    int familyOrdinal = header.getInt();
+    int nameLength = header.getInt();
+    this.seed = header.getLong();
+    if (familyOrdinal < 0 || familyOrdinal >= SignatureCodec.Family.values().length
+        || nameLength < 0 || nameLength > Byte.MAX_VALUE) {
+      throw new IOException("Index snapshot has an unknown hash family");
+    }
+    this.family = SignatureCodec.Family.values()[familyOrdinal];
+    if (nameLength > 0) {
+      byte[] name = new byte[nameLength];
+      read(channel, HEADER_BYTES, nameLength).get(name);
+      this.hash = HashMethod.valueOf(new String(name, StandardCharsets.US_ASCII));
+    } else {
+      this.hash = null;
+    }
+    this.bandConverter = new SignatureToBandsConverter(b, r);
+
+    // find the position of every section before mapping them, so that a truncated file is
+    // reported instead of being mapped past its end
+    long idsPosition = align(HEADER_BYTES + nameLength);
+    long sortedIdsPosition = idsPosition + (long) size * Long.BYTES;
+    long sortedRowsPosition = sortedIdsPosition + (long) size * Long.BYTES;
+    long signaturesPosition = align(sortedRowsPosition + (long) size * Integer.BYTES);
+    long position = align(signaturesPosition + (long) size * sigSize * Integer.BYTES);
+    long[] bandPositions = new long[b];
+    int[] keyCounts = new int[b];
+    int[] rowCounts = new int[b];
+    for (int band = 0; band < b; band++) {
+      ByteBuffer bandHeader = read(channel, position, 8);
+      bandPositions[band] = position + 8;
+      keyCounts[band] = bandHeader.getInt();
+      rowCounts[band] = bandHeader.getInt();
+      position = align(bandPositions[band] + (long) keyCounts[band] * Long.BYTES
+          + (keyCounts[band] + 1L) * Integer.BYTES + (long) rowCounts[band] * Integer.BYTES);
+    }
+    if (position != channel.size()) {
+      throw new IOException("Index snapshot has an unexpected length");
+    }
+
+    this.ids = MappedSection.map(channel, idsPosition, size, Long.BYTES, chunkBytes);
+    this.sortedIds = MappedSection.map(channel, sortedIdsPosition, size, Long.BYTES, chunkBytes);
+    this.sortedRows =
+        MappedSection.map(channel, sortedRowsPosition, size, Integer.BYTES, chunkBytes);
+    this.signatures = OffHeapSignatureMatrix.map(channel, signaturesPosition, size, sigSize);
+    this.keys = new MappedSection[b];
+    this.offsets = new MappedSection[b];
+    this.rows = new MappedSection[b];
+    for (int band = 0; band < b; band++) {
+      long keysBytes = (long) keyCounts[band] * Long.BYTES;
+      long offsetsBytes = (keyCounts[band] + 1L) * Integer.BYTES;
+      keys[band] = MappedSection.map(
+          channel, bandPositions[band], keyCounts[band], Long.BYTES, chunkBytes);
+      offsets[band] = MappedSection.map(
+          channel, bandPositions[band] + keysBytes, keyCounts[band] + 1, Integer.BYTES,
+          chunkBytes);
+      rows[band] = MappedSection.map(
+          channel, bandPositions[band] + keysBytes + offsetsBytes, rowCounts[band], Integer.BYTES,
+          chunkBytes);
+    }
+  }
+
+
+  /**
+   * Opens the index snapshot in the specified file. The file is only mapped, and not read, so it
+   * must not be modified while the returned index is in use. Queries must be signed with the hash
+   * family of the snapshot (see {@link #isCompatible(KShinglesToSignatureConverter)}).
+   */
+  public static MappedLSHIndex open(Path file) throws IOException {
+    return open(file, MappedSection.CHUNK_BYTES);
+  }
+
+
+  /**
+   * Opens the index snapshot in the specified file, whose signatures must have been produced by
+   * the same hash family as the specified converter, which will sign the queries.
+   *
+   * @throws IOException if the snapshot signatures were produced by another hash family
+   */
+  public static MappedLSHIndex open(Path file, KShinglesToSignatureConverter converter)
+      throws IOException {
+    MappedLSHIndex index = open(file);
+    if (!index.isCompatible(converter)) {
+      throw new IOException("Index snapshot was signed with the " + index.family + " family "
+          + (index.hash != null ? index.hash + " " : "") + "with seed " + index.seed + " and "
+          + index.sigSize + " slots, which does not match the converter");
+    }
+    return index;
+  }
+
+
+  /**
+   * Opens the index snapshot in the specified file, mapping its sections in chunks of up to the
+   * specified number of bytes, which must be a power of two.
+   */
+  static MappedLSHIndex open(Path file, int chunkBytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // mapped buffers remain valid after the channel is closed
+      return new MappedLSHIndex(channel, chunkBytes);
+    }
+  }
+
+
+  public int getBandCount() {
+    return b;
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  public SignatureCodec.Family getHashFamily() {
+    return family;
+  }
+
+
+  /**
+   * Returns the hash method of the indexed signatures, or null if they were produced with
+   * universal permutations.
+   */
+  public HashMethod getHashMethod() {
+    return hash;
+  }
+
+
+  public long getSeed() {
+    return seed;
+  }
+
+
+  /**
+   * Returns true if the specified converter produces signatures with the same hash family and
+   * size as the indexed signatures, and can therefore sign queries for this index.
+   */
+  public boolean isCompatible(KShinglesToSignatureConverter converter) {
+    SignatureCodec codec = SignatureCodec.of(converter, 0, 0);
+    return codec.getFamily() == family
+        && codec.getHashMethod() == hash
+        && codec.getSeed() == seed
+        && codec.getSignatureSize() == sigSize;
+  }
+
+
+  /**
+   * Returns the number of documents in this index.
+   */
+  public int size() {
+    return size;
+  }
+
+
+  /**
+   * Returns true if a document with the specified id is in this index.
+   */
+  public boolean contains(long id) {
+    return rowOf(id) >= 0;
+  }
+
+
+  /**
+   * Returns the signature of the document with the specified id, or null if there is no such
+   * document in this index.
+   */
+  public int[] getSignature(long id) {
+    int row = rowOf(id);
+    return row >= 0 ? signatures.getRow(row) : null;
+  }
+
+
+  /**
+   * Returns the indexed documents that share at least one band with the specified signature,
+   * ranked from the most to the least similar, up to a maximum of limit results.
+   */
+  public List<Match> query(int[] signature, int limit) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+    return Candidates.rank(candidates(keys), signature, signatures, ids::getLong, limit);
+  }
+
+
+  /**
+   * Returns true if any indexed document has an estimated similarity to the specified signature
+   * equal or above the specified threshold.
+   */
+  public boolean containsSimilar(int[] signature, double threshold) {
+    checkSignature(signature);
+    long[] keys = bandConverter.toBandKeys(signature);
+    int minMatches = SignatureMatrix.minMatches(threshold, sigSize);
+    return Candidates.anyMatchesAtLeast(candidates(keys), signature, signatures, minMatches);
+  }
+
+
+  private int rowOf(long id) {
+    int i = sortedIds.binarySearch(id);
+    return i >= 0 ? sortedRows.getInt(i) : -1;
+  }
+
+
+  /**
+   * Returns the sorted and deduplicated rows of all documents that share a bucket with the
+   * specified band keys.
+   */
+  private int[] candidates(long[] keys) {
+    Candidates candidates = new Candidates();
+    for (int band = 0; band < b; band++) {
+      int i = this.keys[band].binarySearch(keys[band]);
+      if (i < 0) {
+        continue;
+      }
+      int to = offsets[band].getInt(i + 1);
+      for (int j = offsets[band].getInt(i); j < to; j++) {
+        candidates.accept(rows[band].getInt(j));
+      }
+    }
+    return candidates.toSortedRows();
+  }
+
+
+  private void checkSignature(int[] signature) {
+    if (signature.length != sigSize) {
+      throw new IllegalArgumentException("Signature must have " + sigSize + " slots");
+    }
+  }
+
+
+  private static long align(long position) {
+    return (position + 7) & ~7L;
+  }
+
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Index snapshot is truncated");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+
+  /**
+   * Sequential writer of a snapshot file, which buffers values in little-endian byte order.
+   */
+  static final class Writer implements Closeable {
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer;
+
+    private long position;
+
+
+    Writer(Path file) throws IOException {
+      this.channel = FileChannel.open(file,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING,
+          StandardOpenOption.WRITE);
+      this.buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+      this.position = 0;
+    }
+
+
+    void putInt(int value) throws IOException {
+      if (buffer.remaining() < Integer.BYTES) {
+        flush();
+      }
+      buffer.putInt(value);
+      position += Integer.BYTES;
+    }
+
+
+    void putLong(long value) throws IOException {
+      if (buffer.remaining() < Long.BYTES) {
+        flush();
+      }
+      buffer.putLong(value);
+      position += Long.BYTES;
+    }
+
+
+    void putBytes(byte[] bytes) throws IOException {
+      for (byte value : bytes) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        buffer.put(value);
+        position++;
+      }
+    }
+
+
+    /**
+     * Pads the file with zeros up to the next multiple of 8 bytes.
+     */
+    void align() throws IOException {
+      while (position != MappedLSHIndex.align(position)) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        buffer.put((byte) 0);
+        position++;
+      }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+        channel.force(true);
+      } finally {
+        channel.close();
+      }
+    }
+
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only section of a snapshot file with values of a fixed width, in little-endian byte order,
+ * which is memory-mapped in chunks so that it can be larger than the 2GB limit of a single mapped
+ * buffer.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+final class MappedSection {
+
+  /**
+   * Maximum size in bytes of each chunk, which must be a power of two
+   */
+  static final int CHUNK_BYTES = 1 << 26;
+
+  private final ByteBuffer[] chunks;
+
+  private final int length;
+
+  /**
+   * Base-2 logarithm of the number of values in every chunk
+   */
+  private final int chunkShift;
+
+  private final int widthShift;
+
+
+  private MappedSection(ByteBuffer[] chunks, int length, int chunkShift, int widthShift) {
+    this.chunks = chunks;
+    this.length = length;
+    this.chunkShift = chunkShift;
+    this.widthShift = widthShift;
+  }
+
+
+  /**
+   * Maps the specified number of values of the specified width in bytes (4 or 8), starting at the
+   * specified position of the file, in chunks of up to the specified number of bytes.
+   */
+  static MappedSection map(
+      FileChannel channel,
+      long position,
+      int length,
+      int width,
+      int chunkBytes) throws IOException {
+    int widthShift = Integer.numberOfTrailingZeros(width);
+    int chunkShift = Integer.numberOfTrailingZeros(chunkBytes) - widthShift;
+    int valuesPerChunk = 1 << chunkShift;
+    ByteBuffer[] chunks = new ByteBuffer[(length + valuesPerChunk - 1) >>> chunkShift];
+    for (int chunk = 0; chunk < chunks.length; chunk++) {
+      int values = Math.min(valuesPerChunk, length - (chunk << chunkShift));
+      long chunkPosition = position + ((long) chunk << chunkShift << widthShift);
+      chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, chunkPosition,
+          (long) values << widthShift).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return new MappedSection(chunks, length, chunkShift, widthShift);
+  }
+
+
+  int length() {
+    return length;
+  }
+
+
+  int getInt(int index) {
+    return chunks[index >>> chunkShift].getInt((index & ((1 << chunkShift) - 1)) << widthShift);
+  }
+
+
+  long getLong(int index) {
+    return chunks[index >>> chunkShift].getLong((index & ((1 << chunkShift) - 1)) << widthShift);
+  }
+
+
+  /**
+   * Returns the index of the specified key in this section of sorted longs, or -1 if it is not
+   * in this section.
+   */
+  int binarySearch(long key) {
+    int low = 0;
+    int high = length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long value = getLong(mid);
+      if (value < key) {
+        low = mid + 1;
+      } else if (value > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+/**
+ * A document returned by an index query, together with its estimated similarity to the query.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class Match implements Comparable<Match> {
+
+  private final long id;
+
+  private final double similarity;
+
+
+  public Match(long id, double similarity) {
+    this.id = id;
+    this.similarity = similarity;
+  }
+
+
+  public long getId() {
+    return id;
+  }
+
+
+  public double getSimilarity() {
+    return similarity;
+  }
+
+
+  /**
+   * Orders matches from the most to the least similar, breaking ties by id.
+   */
+  @Override
+  public int compareTo(Match o) {
+    int c = Double.compare(o.similarity, similarity);
+    return c != 0 ? c : Long.compare(id, o.id);
+  }
+
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Match)) {
+      return false;
+    }
+    Match match = (Match) o;
+    return id == match.id && Double.compare(match.similarity, similarity) == 0;
+  }
+
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(id) + Double.hashCode(similarity);
+  }
+
+
+  @Override
+  public String toString() {
+    return "Match{id=" + id + ", similarity=" + similarity + "}";
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import com.edduarte.similarity.converter.SignatureToBandsConverter;
+import com.edduarte.similarity.signature.HeapSignatureMatrix;
+import com.edduarte.similarity.signature.SignatureMatrix;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incremental clustering of near-duplicate documents over LSH bands. Every added document is
+ * merged into the clusters of the documents that share a band bucket with it, optionally only if
+ * their estimated similarity is equal or above a threshold, so that clusters are the connected
+ * components of the graph of similar pairs. Clusters are kept in a union-find structure, and every
+ * cluster is identified by the id of one of its documents, its representative.
+ * <p>
+ * Updates are streamed to a listener as documents are added: the listener is called with the
+ * cluster id of every added document, and with the new cluster id of every document whose
+ * cluster was merged into another. Smaller clusters are always merged into larger ones, so every
+ * document is reassigned at most a logarithmic number of times.
+ * <p>
+ * The clustering is safe for use by multiple threads: cluster lookups run concurrently with each
+ * other, compressing union-find paths with atomic updates, while insertions are serialized. The
+ * listener is called by the inserting thread, while insertions are blocked.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class NearDuplicateClusters {
+
+  private final int b;
+
+  private final int sigSize;
+
+  /**
+   * Minimum number of equal signature slots of documents in the same cluster
+   */
+  private final int minMatches;
+
+  private final Listener listener;
+
+  private final SignatureToBandsConverter bandConverter;
+
+  private final BandTable[] tables;
+
+  private final HeapSignatureMatrix signatures;
+
+  private final Map<Long, Integer> rowsById;
+
+  private final ReadWriteLock lock;
+
+  private long[] ids;
+
+  /**
+   * Union-find parent of every row, where roots are their own parents
+   */
+  private volatile AtomicIntegerArray parents;
+
+  /**
+   * Number of documents in the cluster of every root row
+   */
+  private int[] sizes;
+
+  /**
+   * Next row in the circular list of the rows of the same cluster
+   */
+  private int[] next;
+
+  private int rowCount;
+
+  private int clusterCount;
+
+
+  /**
+   * Instantiates an empty clustering without a listener.
+   *
+   * @param b the number of bands in which signatures are split
+   * @param sigSize the length of the signatures that will be added
+   * @param threshold the minimum estimated similarity of documents in the same bucket to be
+   * merged, or 0 to merge every pair of documents that share a bucket
+   */
+  public NearDuplicateClusters(int b, int sigSize, double threshold) {
+    this(b, sigSize, threshold, null);
+  }
+
+
+  /**
+   * Instantiates an empty clustering that streams cluster assignments to the specified listener.
+   *
+   * @param b the number of bands in which signatures are split
+   * @param sigSize the length of the signatures that will be added
+   * @param threshold the minimum estimated similarity of documents in the same bucket to be
+   * merged, or 0 to merge every pair of documents that share a bucket
+   * @param listener the listener of cluster assignments, or null
+   */
+  public NearDuplicateClusters(int b, int sigSize, double threshold, Listener listener) {
+    if (b <= 0 || sigSize < b) {
+      throw new IllegalArgumentException(
+          "Signature size must be at least the number of bands, and bands must be positive");
+    }
+    this.b = b;
+    this.sigSize = sigSize;
+    this.minMatches = SignatureMatrix.minMatches(threshold, sigSize);
+    this.listener = listener;
+    this.bandConverter = new SignatureToBandsConverter(b, sigSize / b);
+    this.tables = new BandTable[b];
+    for (int i = 0; i < b; i++) {
+      tables[i] = new BandTable();
+    }
+    this.signatures = new HeapSignatureMatrix(sigSize);
+    this.rowsById = new HashMap<>();
+    this.lock = new ReentrantReadWriteLock();
+    this.ids = new long[16];
+    this.parents = new AtomicIntegerArray(16);
+    this.sizes = new int[16];
+    this.next = new int[16];
+    this.rowCount = 0;
+    this.clusterCount = 0;
+  }
+
+
+  public int getBandCount() {
+    return b;
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  /**
+   * Returns the number of documents in this clustering.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return rowCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Returns the number of clusters in this clustering, counting documents without near-duplicates
+   * as clusters of their own.
+   */
+  public int clusterCount() {
+    lock.readLock().lock();
+    try {
+      return clusterCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Adds the signature of the document with the specified id, merging it with the clusters of
+   * its near-duplicates.
+   *
+   * @return the id of the cluster of the document after it was added
+   * @throws IllegalArgumentException if a document with the same id was already added
+   */
+  public long add(long id, int[] signature) {
+    if (signature.length != sigSize) {
+      throw new IllegalArgumentException("Signature must have " + sigSize + " slots");
+    }
+    long[] keys = bandConverter.toBandKeys(signature);
+
+    lock.writeLock().lock();
+    try {
+      if (rowsById.containsKey(id)) {
+        throw new IllegalArgumentException("Document " + id + " was already added");
+      }
+      int row = insert(id, signature);
+      if (listener != null) {
+        listener.onAssign(id, id);
+      }
+      for (int band = 0; band < b; band++) {
+        tables[band].forEach(keys[band], candidate -> {
+          if (find(candidate) != find(row) && isSimilar(signature, candidate)) {
+            union(candidate, row);
+          }
+        });
+        tables[band].put(keys[band], row);
+      }
+      return ids[find(row)];
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Returns the id of the cluster of the document with the specified id, which is the id of the
+   * representative document of that cluster.
+   *
+   * @throws IllegalArgumentException if no document with the specified id was added
+   */
+  public long clusterOf(long id) {
+    lock.readLock().lock();
+    try {
+      Integer row = rowsById.get(id);
+      if (row == null) {
+        throw new IllegalArgumentException("Document " + id + " was not added");
+      }
+      return ids[find(row)];
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Returns the cluster id of every document in this clustering, by document id.
+   */
+  public Map<Long, Long> clusters() {
+    lock.readLock().lock();
+    try {
+      Map<Long, Long> clusters = new HashMap<>();
+      for (int row = 0; row < rowCount; row++) {
+        clusters.put(ids[row], ids[find(row)]);
+      }
+      return clusters;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  private int insert(long id, int[] signature) {
+    int row = signatures.append(signature);
+    if (row == ids.length) {
+      int capacity = row * 2;
+      ids = Arrays.copyOf(ids, capacity);
+      sizes = Arrays.copyOf(sizes, capacity);
+      next = Arrays.copyOf(next, capacity);
+      AtomicIntegerArray grown = new AtomicIntegerArray(capacity);
+      for (int i = 0; i < row; i++) {
+        grown.set(i, parents.get(i));
+      }
+      parents = grown;
+    }
+    ids[row] = id;
+    parents.set(row, row);
+    sizes[row] = 1;
+    next[row] = row;
+    rowsById.put(id, row);
+    rowCount++;
+    clusterCount++;
+    return row;
+  }
+
+
+  private boolean isSimilar(int[] signature, int row) {
+    return signatures.matchesAtLeast(signature, row, minMatches);
+  }
+
+
+  /**
+   * Returns the root of the specified row, pointing every visited row to its grandparent on the
+   * way (path halving). Concurrent lookups can only replace a parent with one of its ancestors,
+   * so a failed update is simply skipped.
+   */
+  private int find(int row) {
+    AtomicIntegerArray p = parents;
+    int parent = p.get(row);
+    while (parent != row) {
+      int grandparent = p.get(parent);
+      p.compareAndSet(row, parent, grandparent);
+      row = grandparent;
+      parent = p.get(row);
+    }
+    return row;
+  }
+
+
+  /**
+   * Merges the clusters of the specified rows, merging the smaller cluster into the larger one
+   * and notifying the listener of the new cluster id of every row of the smaller cluster.
+   */
+  private void union(int row1, int row2) {
+    int root1 = find(row1);
+    int root2 = find(row2);
+    if (root1 == root2) {
+      return;
+    }
+    if (sizes[root1] < sizes[root2]) {
+      int root = root1;
+      root1 = root2;
+      root2 = root;
+    }
+    parents.set(root2, root1);
+    sizes[root1] += sizes[root2];
+    clusterCount--;
+
+    if (listener != null) {
+      long clusterId = ids[root1];
+      int row = root2;
+      do {
+        listener.onAssign(ids[row], clusterId);
+        row = next[row];
+      } while (row != root2);
+    }
+    // splice the circular lists of both clusters into one
+    int next1 = next[root1];
+    next[root1] = next[root2];
+    next[root2] = next1;
+  }
+
+
+  /**
+   * Listener of the cluster assignments of documents.
+   */
+  @FunctionalInterface
+  public interface Listener {
+
+    /**
+     * Called when the document with the specified id is added, or when its cluster is merged
+     * into another cluster, with the id of its new cluster.
+     */
+    void onAssign(long id, long clusterId);
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * LSH index partitioned into a fixed number of shards, where every document is stored in the
+ * shard selected by the hash of its id. Each shard owns its own band tables and lock, so
+ * insertions into different shards never contend with each other, and queries are fanned out to
+ * all shards in parallel on the specified executor before their ranked results are merged.
+ * <p>
+ * Shards can be written to and read from snapshots individually, so that they can be moved to
+ * another process that holds a sharded index with the same number of shards.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class ShardedLSHIndex {
+
+  private final int b;
+
+  private final int sigSize;
+
+  private final AtomicReferenceArray<LSHIndex> shards;
+
+  /**
+   * Per-shard gates, which are shared by writes to a shard and held exclusively while that shard
+   * is replaced by a snapshot, so that no write is applied to a shard that is being discarded.
+   */
+  private final ReadWriteLock[] writeGates;
+
+  private final ExecutorService exec;
+
+
+  /**
+   * Instantiates an empty sharded index for signatures with the specified size.
+   *
+   * @param shardCount the number of shards in which documents are partitioned
+   * @param b the number of bands in which signatures are split
+   * @param sigSize the length of the signatures that will be indexed
+   * @param exec the executor that will receive the concurrent per-shard query tasks
+   */
+  public ShardedLSHIndex(int shardCount, int b, int sigSize, ExecutorService exec) {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("Number of shards must be positive");
+    }
+    Objects.requireNonNull(exec, "Executor must not be null");
+    this.b = b;
+    this.sigSize = sigSize;
+    this.shards = new AtomicReferenceArray<>(shardCount);
+    this.writeGates = new ReadWriteLock[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards.set(i, new LSHIndex(b, sigSize));
+      writeGates[i] = new ReentrantReadWriteLock();
+    }
+    this.exec = exec;
+  }
+
+
+  public int getShardCount() {
+    return shards.length();
+  }
+
+
+  public int getBandCount() {
+    return b;
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  /**
+   * Returns the shard where the document with the specified id is stored. This mapping only
+   * depends on the id and on the number of shards, so it is stable across processes.
+   */
+  public int shardOf(long id) {
+    long h = id * 0x9E3779B97F4A7C15L;
+    return (int) Math.floorMod(h ^ (h >>> 32), (long) shards.length());
+  }
+
+
+  /**
+   * Returns the number of documents in all shards.
+   */
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < shards.length(); i++) {
+      size += shards.get(i).size();
+    }
+    return size;
+  }
+
+
+  /**
+   * Adds the signature of the document with the specified id to the shard of that id.
+   *
+   * @throws IllegalArgumentException if a document with the same id was already added
+   */
+  public void add(long id, int[] signature) {
+    int shard = shardOf(id);
+    Lock gate = writeGates[shard].readLock();
+    gate.lock();
+    try {
+      shards.get(shard).add(id, signature);
+    } finally {
+      gate.unlock();
+    }
+  }
+
+
+  /**
+   * Removes the document with the specified id from the shard of that id.
+   *
+   * @return true if the document was indexed
+   */
+  public boolean remove(long id) {
+    int shard = shardOf(id);
+    Lock gate = writeGates[shard].readLock();
+    gate.lock();
+    try {
+      return shards.get(shard).remove(id);
+    } finally {
+      gate.unlock();
+    }
+  }
+
+
+  /**
+   * Replaces the signature of the document with the specified id in the shard of that id, or adds
+   * it if it was not indexed.
+   */
+  public void update(long id, int[] signature) {
+    int shard = shardOf(id);
+    Lock gate = writeGates[shard].readLock();
+    gate.lock();
+    try {
+      shards.get(shard).update(id, signature);
+    } finally {
+      gate.unlock();
+    }
+  }
+
+
+  /**
+   * Queries all shards in parallel and returns the documents that share at least one band with
+   * the specified signature, ranked from the most to the least similar, up to a maximum of limit
+   * results.
+   */
+  public List<Match> query(int[] signature, int limit) {
+    int shardCount = shards.length();
+    List<Future<List<Match>>> futures = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      LSHIndex shard = shards.get(i);
+      futures.add(exec.submit(() -> shard.query(signature, limit)));
+    }
+
+    List<Match> result = new ArrayList<>();
+    try {
+      for (Future<List<Match>> future : futures) {
+        result.addAll(future.get());
+      }
+    } catch (ExecutionException | InterruptedException ex) {
+      String m = "There was a problem querying index shards.";
+      throw new RuntimeException(m, ex);
+    }
+
+    Collections.sort(result);
+    return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+  }
+
+
+  /**
+   * Writes a snapshot of the specified shard to the specified stream.
+   */
+  public void writeShard(int shard, OutputStream out) throws IOException {
+    shards.get(shard).writeTo(out);
+  }
+
+
+  /**
+   * Replaces the specified shard with the one read from a snapshot that was written with
+   * {@link #writeShard(int, OutputStream)}, from a sharded index with the same number of shards.
+   * Queries that are running while the shard is replaced see either the old or the new shard.
+   * Writes to the replaced shard wait until the snapshot is read and are then applied to the new
+   * shard, while writes to the other shards are not blocked.
+   *
+   * @throws IOException if the snapshot is not of an index with the same bands and signature size
+   * as this one, or if it holds any document that is routed to another shard of this index, which
+   * could then not be removed or updated
+   */
+  public void readShard(int shard, InputStream in) throws IOException {
+    Lock gate = writeGates[shard].writeLock();
+    gate.lock();
+    try {
+      LSHIndex index = LSHIndex.readFrom(in);
+      if (index.getBandCount() != b || index.getSignatureSize() != sigSize) {
+        throw new IOException("Snapshot has " + index.getBandCount() + " bands and signatures of "
+            + index.getSignatureSize() + " slots, but this index expects " + b + " and "
+            + sigSize);
+      }
+      for (long id : index.ids()) {
+        if (shardOf(id) != shard) {
+          throw new IOException("Snapshot has document " + id + ", which belongs to shard "
+              + shardOf(id) + " instead of shard " + shard);
+        }
+      }
+      shards.set(shard, index);
+    } finally {
+      gate.unlock();
+    }
+  }
+}
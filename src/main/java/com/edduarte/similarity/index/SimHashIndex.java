@@ -0,0 +1,592 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Index of 64-bit SimHash fingerprints that finds every fingerprint within a Hamming distance k of
+ * a query, following Manku et al., "Detecting Near-Duplicates for Web Crawling".
+ * <p>
+ * Fingerprints are split in n &gt; k blocks of bits, so any two fingerprints that differ in at
+ * most k bits have at least n - k blocks in common. The index keeps one table for every choice of
+ * n - k blocks, where every fingerprint is permuted so that the bits of those blocks come first,
+ * and the table is sorted. A query then only needs to be compared against the fingerprints in a
+ * single sorted range of every table, found with a binary search. More blocks mean more tables,
+ * but longer prefixes and so fewer fingerprints in every range; by default, the number of blocks
+ * is the highest that keeps at most 8(k + 1) tables, which for k = 3 gives 20 tables with 32-bit
+ * prefixes.
+ * <p>
+ * Like in Manku et al., every table stores only the 8-byte permuted fingerprint of every document,
+ * since the permutation is reversed to recover the fingerprint, and the first table, whose
+ * permutation is the identity, also stores the 8-byte id. A document thus takes 8 bytes per table
+ * plus 8 bytes, or 168 bytes with the default 20 tables. The 8 bytes per document of a single
+ * table cannot be reached with more than one table, since every table must be sorted by its own
+ * permutation; fewer blocks reduce the number of tables down to k + 1, at the cost of longer
+ * scans. Since tables are Java arrays, an index holds up to {@link #MAX_SIZE} documents, and
+ * larger collections must be split in several indexes, for example by a few fingerprint bits.
+ * <p>
+ * Added fingerprints are first kept in a small buffer that queries scan linearly, and are then
+ * sorted into a run of every table, where runs of similar sizes are merged like in a log-structured
+ * merge tree. Every fingerprint is thus merged a logarithmic number of times, and queries search
+ * a logarithmic number of runs, whether the index is filled in batches or interleaves additions
+ * and queries. The index is safe for use by multiple threads: queries run concurrently with each
+ * other, while insertions are serialized.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class SimHashIndex {
+
+  /**
+   * Maximum number of documents in an index, which is the maximum length of a Java array
+   */
+  public static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Number of added fingerprints that are scanned linearly before they are sorted into the tables
+   */
+  private static final int BUFFER_SIZE = 64;
+
+  private final int maxDistance;
+
+  /**
+   * Bits of every block, where block 0 holds the most significant bits
+   */
+  private final long[] blockMasks;
+
+  /**
+   * Sorted tables, where the first one keeps the fingerprints in their original bit order along
+   * with the ids of their documents
+   */
+  private final Table[] tables;
+
+  private final ReadWriteLock lock;
+
+  private final long[] bufferIds;
+
+  private final long[] bufferFingerprints;
+
+  private int bufferCount;
+
+  /**
+   * Number of documents that were sorted into the tables
+   */
+  private int sortedCount;
+
+
+  /**
+   * Instantiates an empty index for fingerprint queries with a Hamming distance up to the
+   * specified distance, with the default number of blocks. Since the number of tables grows
+   * quickly with the distance, small distances (up to 3 to 7 bits) are recommended.
+   *
+   * @param maxDistance the maximum number of bits in which query and indexed fingerprints differ
+   */
+  public SimHashIndex(int maxDistance) {
+    this(maxDistance, defaultBlocks(maxDistance));
+  }
+
+
+  /**
+   * Instantiates an empty index for fingerprint queries with a Hamming distance up to the
+   * specified distance, where fingerprints are split in the specified number of blocks. The index
+   * keeps one table for every choice of blocks - maxDistance blocks.
+   *
+   * @param maxDistance the maximum number of bits in which query and indexed fingerprints differ
+   * @param blocks      the number of blocks, between maxDistance + 1 and 64
+   */
+  public SimHashIndex(int maxDistance, int blocks) {
+    if (maxDistance < 0 || maxDistance >= 64) {
+      throw new IllegalArgumentException("Maximum distance must be between 0 and 63");
+    }
+    if (blocks <= maxDistance || blocks > 64) {
+      throw new IllegalArgumentException(
+          "Number of blocks must be between " + (maxDistance + 1) + " and 64");
+    }
+    this.maxDistance = maxDistance;
+    this.blockMasks = new long[blocks];
+    for (int b = 0; b < blocks; b++) {
+      int start = b * 64 / blocks;
+      int length = (b + 1) * 64 / blocks - start;
+      blockMasks[b] = (length == 64 ? -1L : (1L << length) - 1) << (64 - start - length);
+    }
+    List<Table> tables = new ArrayList<>();
+    addTables(new int[blocks - maxDistance], 0, 0, blocks, tables);
+    this.tables = tables.toArray(new Table[0]);
+    this.lock = new ReentrantReadWriteLock();
+    this.bufferIds = new long[BUFFER_SIZE];
+    this.bufferFingerprints = new long[BUFFER_SIZE];
+    this.bufferCount = 0;
+    this.sortedCount = 0;
+  }
+
+
+  /**
+   * Returns the highest number of blocks for which the index keeps at most 8(k + 1) tables.
+   */
+  private static int defaultBlocks(int maxDistance) {
+    if (maxDistance <= 0 || maxDistance >= 63) {
+      return maxDistance + 1;
+    }
+    long maxTables = 8L * (maxDistance + 1);
+    int blocks = maxDistance + 1;
+    // the number of tables for n + 1 blocks is C(n + 1, k) = C(n, k) * (n + 1) / (n + 1 - k)
+    long tables = blocks;
+    while (blocks < 64) {
+      long next = tables * (blocks + 1) / (blocks + 1 - maxDistance);
+      if (next > maxTables) {
+        break;
+      }
+      tables = next;
+      blocks++;
+    }
+    return blocks;
+  }
+
+
+  /**
+   * Adds a table for every choice of the remaining blocks of the specified prefix, in
+   * lexicographic order, so that the first table chooses the first blocks and its permutation is
+   * the identity.
+   */
+  private void addTables(int[] prefix, int chosen, int from, int blocks, List<Table> tables) {
+    if (chosen == prefix.length) {
+      tables.add(new Table(prefix.clone(), blocks, tables.isEmpty()));
+      return;
+    }
+    for (int b = from; b <= blocks - (prefix.length - chosen); b++) {
+      prefix[chosen] = b;
+      addTables(prefix, chosen + 1, b + 1, blocks, tables);
+    }
+  }
+
+
+  public int getMaxDistance() {
+    return maxDistance;
+  }
+
+
+  /**
+   * Returns the number of blocks in which fingerprints are split.
+   */
+  public int getBlockCount() {
+    return blockMasks.length;
+  }
+
+
+  /**
+   * Returns the number of sorted tables kept by this index.
+   */
+  public int getTableCount() {
+    return tables.length;
+  }
+
+
+  /**
+   * Returns the number of documents in this index.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return sortedCount + bufferCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Adds the fingerprint of the document with the specified id to this index. Since the index
+   * keeps no map of ids, only a document that is added again with the same id and fingerprint is
+   * detected, for example an unchanged page that is crawled again, and callers must ensure that
+   * ids are not reused for different fingerprints.
+   *
+   * @throws IllegalArgumentException if a document with the same id and fingerprint was already
+   * added
+   * @throws IllegalStateException    if the index already holds {@link #MAX_SIZE} documents
+   */
+  public void add(long id, long fingerprint) {
+    lock.writeLock().lock();
+    try {
+      if (sortedCount + bufferCount == MAX_SIZE) {
+        throw new IllegalStateException("SimHash index is full, with " + MAX_SIZE + " documents");
+      }
+      if (contains(id, fingerprint)) {
+        throw new IllegalArgumentException("Document " + id + " was already indexed");
+      }
+      bufferIds[bufferCount] = id;
+      bufferFingerprints[bufferCount] = fingerprint;
+      bufferCount++;
+      if (bufferCount == BUFFER_SIZE) {
+        for (Table table : tables) {
+          table.addRun(bufferFingerprints, bufferIds, bufferCount);
+        }
+        sortedCount += bufferCount;
+        bufferCount = 0;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Returns the documents with fingerprints within the maximum Hamming distance of the specified
+   * fingerprint, ranked from the highest to the lowest similarity, where the similarity is the
+   * fraction of equal bits in both fingerprints.
+   */
+  public List<Match> query(long fingerprint) {
+    List<Match> result = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      // a fingerprint with the blocks of several tables is found by all of them, and a
+      // fingerprint of several documents is found once per run, so they are deduplicated before
+      // the ids of their documents are read from the first table
+      Fingerprints found = new Fingerprints();
+      for (Table table : tables) {
+        table.query(fingerprint, found);
+      }
+      for (long candidate : found.toSortedValues()) {
+        double similarity = 1 - Long.bitCount(candidate ^ fingerprint) / 64.0;
+        tables[0].forEachId(candidate, id -> result.add(new Match(id, similarity)));
+      }
+      for (int i = 0; i < bufferCount; i++) {
+        int distance = Long.bitCount(bufferFingerprints[i] ^ fingerprint);
+        if (distance <= maxDistance) {
+          result.add(new Match(bufferIds[i], 1 - distance / 64.0));
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+
+  /**
+   * Returns true if the document with the specified id and fingerprint is in this index. Must be
+   * called while holding the lock.
+   */
+  private boolean contains(long id, long fingerprint) {
+    for (int i = 0; i < bufferCount; i++) {
+      if (bufferIds[i] == id && bufferFingerprints[i] == fingerprint) {
+        return true;
+      }
+    }
+    return tables[0].containsId(fingerprint, id);
+  }
+
+
+  /**
+   * Sorts the specified keys in ascending order, moving the ids at the same positions with them.
+   */
+  private static void sort(long[] keys, long[] ids, int from, int to) {
+    while (to - from > 16) {
+      long pivot = keys[(from + to) >>> 1];
+      int i = from;
+      int j = to - 1;
+      while (i <= j) {
+        while (keys[i] < pivot) {
+          i++;
+        }
+        while (keys[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(keys, ids, i++, j--);
+        }
+      }
+      // recurse into the smaller side, and loop on the larger one
+      if (j + 1 - from < to - i) {
+        sort(keys, ids, from, j + 1);
+        from = i;
+      } else {
+        sort(keys, ids, i, to);
+        to = j + 1;
+      }
+    }
+    for (int i = from + 1; i < to; i++) {
+      for (int j = i; j > from && keys[j - 1] > keys[j]; j--) {
+        swap(keys, ids, j - 1, j);
+      }
+    }
+  }
+
+
+  private static void swap(long[] keys, long[] ids, int i, int j) {
+    long key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    long id = ids[i];
+    ids[i] = ids[j];
+    ids[j] = id;
+  }
+
+
+  /**
+   * Returns the position of the first of the specified keys that is equal or above the specified
+   * key.
+   */
+  private static int lowerBound(long[] keys, long key) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (keys[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+
+  private class Table {
+
+    /**
+     * Blocks in the order in which their bits appear in the permuted fingerprints
+     */
+    private final int[] order;
+
+    /**
+     * Bits below the chosen blocks once fingerprints are permuted, or 0 if they have all 64 bits
+     */
+    private final long mask;
+
+    /**
+     * Sorted runs of permuted fingerprints, from the largest to the smallest, with the sign bit
+     * flipped so that signed order is the unsigned order of the permuted fingerprints
+     */
+    private long[][] runKeys;
+
+    /**
+     * Ids of the documents at the same positions of every run, or null if this table does not
+     * keep ids
+     */
+    private long[][] runIds;
+
+    private int runCount;
+
+
+    private Table(int[] prefix, int blockCount, boolean withIds) {
+      long blocks = 0;
+      int prefixLength = 0;
+      this.order = new int[blockCount];
+      for (int i = 0; i < prefix.length; i++) {
+        blocks |= 1L << prefix[i];
+        prefixLength += Long.bitCount(blockMasks[prefix[i]]);
+        order[i] = prefix[i];
+      }
+      for (int b = 0, i = prefix.length; b < blockCount; b++) {
+        if ((blocks & 1L << b) == 0) {
+          order[i++] = b;
+        }
+      }
+      this.mask = prefixLength == 64 ? 0 : -1L >>> prefixLength;
+      this.runKeys = new long[4][];
+      this.runIds = withIds ? new long[4][] : null;
+      this.runCount = 0;
+    }
+
+
+    /**
+     * Returns the specified fingerprint with the bits of the blocks of this table first.
+     */
+    private long permute(long fingerprint) {
+      long permuted = 0;
+      for (int b : order) {
+        long block = blockMasks[b];
+        int length = Long.bitCount(block);
+        long bits = (fingerprint & block) >>> Long.numberOfTrailingZeros(block);
+        permuted = length == 64 ? bits : permuted << length | bits;
+      }
+      return permuted;
+    }
+
+
+    /**
+     * Returns the fingerprint that was permuted into the specified one.
+     */
+    private long unpermute(long permuted) {
+      long fingerprint = 0;
+      for (int i = order.length - 1; i >= 0; i--) {
+        long block = blockMasks[order[i]];
+        int length = Long.bitCount(block);
+        if (length == 64) {
+          return permuted;
+        }
+        fingerprint |= (permuted & ((1L << length) - 1)) << Long.numberOfTrailingZeros(block);
+        permuted >>>= length;
+      }
+      return fingerprint;
+    }
+
+
+    /**
+     * Sorts the specified fingerprints into a new run, and merges it with the previous runs that
+     * are not larger, so that the runs have decreasing sizes.
+     */
+    private void addRun(long[] fingerprints, long[] documentIds, int count) {
+      long[] keys = new long[count];
+      long[] ids = runIds != null ? Arrays.copyOf(documentIds, count) : null;
+      for (int i = 0; i < count; i++) {
+        keys[i] = permute(fingerprints[i]) ^ Long.MIN_VALUE;
+      }
+      if (ids != null) {
+        sort(keys, ids, 0, count);
+      } else {
+        Arrays.sort(keys);
+      }
+
+      while (runCount > 0 && runKeys[runCount - 1].length <= keys.length) {
+        runCount--;
+        long[] previousKeys = runKeys[runCount];
+        long[] previousIds = ids != null ? runIds[runCount] : null;
+        long[] mergedKeys = new long[previousKeys.length + keys.length];
+        long[] mergedIds = ids != null ? new long[mergedKeys.length] : null;
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < mergedKeys.length; k++) {
+          if (j == keys.length || (i < previousKeys.length && previousKeys[i] <= keys[j])) {
+            if (ids != null) {
+              mergedIds[k] = previousIds[i];
+            }
+            mergedKeys[k] = previousKeys[i++];
+          } else {
+            if (ids != null) {
+              mergedIds[k] = ids[j];
+            }
+            mergedKeys[k] = keys[j++];
+          }
+        }
+        keys = mergedKeys;
+        ids = mergedIds;
+        runKeys[runCount] = null;
+        if (runIds != null) {
+          runIds[runCount] = null;
+        }
+      }
+      if (runCount == runKeys.length) {
+        runKeys = Arrays.copyOf(runKeys, runCount * 2);
+        if (runIds != null) {
+          runIds = Arrays.copyOf(runIds, runCount * 2);
+        }
+      }
+      runKeys[runCount] = keys;
+      if (runIds != null) {
+        runIds[runCount] = ids;
+      }
+      runCount++;
+    }
+
+
+    /**
+     * Adds the fingerprints of this table within the maximum distance of the specified one to the
+     * specified collector. Since permutations keep the number of different bits, the distance is
+     * computed on the permuted fingerprints, and only matches are permuted back.
+     */
+    private void query(long fingerprint, Fingerprints found) {
+      long permuted = permute(fingerprint);
+      long low = (permuted & ~mask) ^ Long.MIN_VALUE;
+      long high = (permuted | mask) ^ Long.MIN_VALUE;
+
+      for (int run = 0; run < runCount; run++) {
+        long[] keys = runKeys[run];
+        for (int i = lowerBound(keys, low); i < keys.length && keys[i] <= high; i++) {
+          long candidate = keys[i] ^ Long.MIN_VALUE;
+          if (Long.bitCount(candidate ^ permuted) <= maxDistance) {
+            found.add(unpermute(candidate));
+          }
+        }
+      }
+    }
+
+
+    /**
+     * Passes the id of every document with the specified fingerprint to the specified action.
+     * Only the first table keeps ids, and its permutation is the identity.
+     */
+    private void forEachId(long fingerprint, LongConsumer action) {
+      long key = fingerprint ^ Long.MIN_VALUE;
+      for (int run = 0; run < runCount; run++) {
+        long[] keys = runKeys[run];
+        for (int i = lowerBound(keys, key); i < keys.length && keys[i] == key; i++) {
+          action.accept(runIds[run][i]);
+        }
+      }
+    }
+
+
+    /**
+     * Returns true if a document with the specified fingerprint has the specified id. Only the
+     * first table keeps ids.
+     */
+    private boolean containsId(long fingerprint, long id) {
+      long key = fingerprint ^ Long.MIN_VALUE;
+      for (int run = 0; run < runCount; run++) {
+        long[] keys = runKeys[run];
+        for (int i = lowerBound(keys, key); i < keys.length && keys[i] == key; i++) {
+          if (runIds[run][i] == id) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+
+
+  /**
+   * Collector of the fingerprints found by a query, which are then deduplicated since a
+   * fingerprint with the blocks of several tables is found by all of them.
+   */
+  private static final class Fingerprints {
+
+    private long[] values = new long[16];
+
+    private int count;
+
+
+    private void add(long fingerprint) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, count * 2);
+      }
+      values[count++] = fingerprint;
+    }
+
+
+    private long[] toSortedValues() {
+      Arrays.sort(values, 0, count);
+      int unique = 0;
+      for (int i = 0; i < count; i++) {
+        if (unique == 0 || values[unique - 1] != values[i]) {
+          values[unique++] = values[i];
+        }
+      }
+      return Arrays.copyOf(values, unique);
+    }
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.join;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * Processor class to find every pair of sets in a list whose Jaccard similarity is equal or above
+ * a threshold, with the exact same result as comparing all pairs but at a fraction of the cost.
+ * <p>
+ * This follows the AllPairs and PPJoin algorithms (Bayardo et al., "Scaling Up All Pairs
+ * Similarity Search", and Xiao et al., "Efficient Similarity Joins for Near Duplicate
+ * Detection"): elements are ordered globally from the rarest to the most frequent, only a short
+ * prefix of the rarest elements of every set is indexed and probed, candidates are pruned by size
+ * and by the position of their shared prefix elements, and the survivors are verified with a
+ * merge that stops as soon as the threshold can no longer be reached. The higher the threshold,
+ * the shorter the prefixes and the larger the savings.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class ExactJaccardJoin
+    implements Function<List<? extends Collection<?>>, Callable<List<JoinPair>>> {
+
+  /**
+   * Tolerance for the rounding of bounds, which keeps filters conservative
+   */
+  private static final double EPSILON = 1e-9;
+
+  private final double threshold;
+
+
+  /**
+   * Instantiates a join for pairs of sets with a Jaccard similarity equal or above the specified
+   * threshold (value between 0.0, exclusive, and 1.0).
+   */
+  public ExactJaccardJoin(double threshold) {
+    if (!(threshold > 0 && threshold <= 1)) {
+      throw new IllegalArgumentException("Threshold must be above 0 and at most 1");
+    }
+    this.threshold = threshold;
+  }
+
+
+  @Override
+  public Callable<List<JoinPair>> apply(List<? extends Collection<?>> sets) {
+    return new JoinCallable(sets, threshold);
+  }
+
+
+  private static class JoinCallable implements Callable<List<JoinPair>> {
+
+    private final List<? extends Collection<?>> sets;
+
+    private final double t;
+
+
+    private JoinCallable(List<? extends Collection<?>> sets, double t) {
+      this.sets = sets;
+      this.t = t;
+    }
+
+
+    @Override
+    public List<JoinPair> call() {
+      int[][] records = toOrderedRecords(sets);
+      int count = records.length;
+
+      // records are processed from the smallest to the largest, so every probed record is at
+      // most as large as the record that probes it
+      Integer[] order = new Integer[count];
+      for (int i = 0; i < count; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Integer.compare(records[a].length, records[b].length));
+
+      Postings[] index = new Postings[maxToken(records) + 1];
+      int[] overlaps = new int[count];
+      int[] candidates = new int[count];
+      List<JoinPair> result = new ArrayList<>();
+
+      for (int x : order) {
+        int[] rx = records[x];
+        int sizeX = rx.length;
+        if (sizeX == 0) {
+          continue;
+        }
+        int minSize = ceil(t * sizeX);
+        int probePrefix = sizeX - minSize + 1;
+        int indexPrefix = sizeX - ceil(2 * t / (1 + t) * sizeX) + 1;
+        int candidateCount = 0;
+
+        for (int i = 0; i < probePrefix; i++) {
+          Postings postings = index[rx[i]];
+          if (postings == null) {
+            continue;
+          }
+          for (int p = 0; p < postings.size; p++) {
+            int y = postings.records[p];
+            int sizeY = records[y].length;
+            if (sizeY < minSize || overlaps[y] < 0) {
+              // size filter, or already pruned by the positional filter
+              continue;
+            }
+            int j = postings.positions[p];
+            int alpha = ceil(t / (1 + t) * (sizeX + sizeY));
+            int upperBound = overlaps[y] + 1 + Math.min(sizeX - i - 1, sizeY - j - 1);
+            if (overlaps[y] == 0) {
+              candidates[candidateCount++] = y;
+            }
+            // positional filter: prune the candidate if the elements after the current positions
+            // are not enough to reach the overlap required by the threshold
+            overlaps[y] = upperBound >= alpha ? overlaps[y] + 1 : Integer.MIN_VALUE;
+          }
+        }
+
+        for (int c = 0; c < candidateCount; c++) {
+          int y = candidates[c];
+          if (overlaps[y] > 0) {
+            double similarity = verify(rx, records[y]);
+            if (similarity >= t) {
+              result.add(new JoinPair(x, y, similarity));
+            }
+          }
+          overlaps[y] = 0;
+        }
+
+        for (int i = 0; i < Math.min(indexPrefix, sizeX); i++) {
+          Postings postings = index[rx[i]];
+          if (postings == null) {
+            postings = index[rx[i]] = new Postings();
+          }
+          postings.add(x, i);
+        }
+      }
+
+      Collections.sort(result);
+      return result;
+    }
+
+
+    /**
+     * Returns the Jaccard similarity of two sorted records, or 0 if it is known to be below the
+     * threshold before the merge completes.
+     */
+    private double verify(int[] rx, int[] ry) {
+      int sizeX = rx.length;
+      int sizeY = ry.length;
+      int alpha = ceil(t / (1 + t) * (sizeX + sizeY));
+      int overlap = 0;
+      int i = 0;
+      int j = 0;
+      while (i < sizeX && j < sizeY) {
+        if (overlap + Math.min(sizeX - i, sizeY - j) < alpha) {
+          return 0;
+        }
+        if (rx[i] == ry[j]) {
+          overlap++;
+          i++;
+          j++;
+        } else if (rx[i] < ry[j]) {
+          i++;
+        } else {
+          j++;
+        }
+      }
+      return (double) overlap / (double) (sizeX + sizeY - overlap);
+    }
+
+
+    private int ceil(double value) {
+      return (int) Math.ceil(value - EPSILON);
+    }
+  }
+
+
+  /**
+   * Converts every set to a sorted array of distinct element ids, where ids are assigned from the
+   * least to the most frequent element across all sets.
+   */
+  private static int[][] toOrderedRecords(List<? extends Collection<?>> sets) {
+    Map<Object, int[]> frequencies = new HashMap<>();
+    List<Object> elements = new ArrayList<>();
+    for (Collection<?> set : sets) {
+      for (Object element : set) {
+        int[] frequency = frequencies.get(element);
+        if (frequency == null) {
+          frequencies.put(element, new int[]{1, elements.size()});
+          elements.add(element);
+        } else {
+          frequency[0]++;
+        }
+      }
+    }
+
+    // elements are sorted by frequency, and then by order of appearance so that ids are stable
+    elements.sort((a, b) -> {
+      int[] fa = frequencies.get(a);
+      int[] fb = frequencies.get(b);
+      int c = Integer.compare(fa[0], fb[0]);
+      return c != 0 ? c : Integer.compare(fa[1], fb[1]);
+    });
+    for (int id = 0; id < elements.size(); id++) {
+      frequencies.get(elements.get(id))[1] = id;
+    }
+
+    int[][] records = new int[sets.size()][];
+    for (int r = 0; r < records.length; r++) {
+      Collection<?> set = sets.get(r);
+      int[] record = new int[set.size()];
+      int size = 0;
+      for (Object element : set) {
+        record[size++] = frequencies.get(element)[1];
+      }
+      Arrays.sort(record, 0, size);
+      int unique = 0;
+      for (int i = 0; i < size; i++) {
+        if (unique == 0 || record[unique - 1] != record[i]) {
+          record[unique++] = record[i];
+        }
+      }
+      records[r] = Arrays.copyOf(record, unique);
+    }
+    return records;
+  }
+
+
+  private static int maxToken(int[][] records) {
+    int max = -1;
+    for (int[] record : records) {
+      if (record.length > 0) {
+        max = Math.max(max, record[record.length - 1]);
+      }
+    }
+    return max;
+  }
+
+
+  private static class Postings {
+
+    private int[] records = new int[4];
+
+    private int[] positions = new int[4];
+
+    private int size;
+
+
+    private void add(int record, int position) {
+      if (size == records.length) {
+        records = Arrays.copyOf(records, size * 2);
+        positions = Arrays.copyOf(positions, size * 2);
+      }
+      records[size] = record;
+      positions[size] = position;
+      size++;
+    }
+  }
+}
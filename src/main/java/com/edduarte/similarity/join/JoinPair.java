@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.join;
+
+/**
+ * A pair of records returned by a similarity join, identified by their positions in the joined
+ * list, together with their similarity.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class JoinPair implements Comparable<JoinPair> {
+
+  private final int first;
+
+  private final int second;
+
+  private final double similarity;
+
+
+  public JoinPair(int first, int second, double similarity) {
+    this.first = Math.min(first, second);
+    this.second = Math.max(first, second);
+    this.similarity = similarity;
+  }
+
+
+  /**
+   * Returns the position of the first record of this pair, which is always lower than the
+   * position of the second record.
+   */
+  public int getFirst() {
+    return first;
+  }
+
+
+  public int getSecond() {
+    return second;
+  }
+
+
+  public double getSimilarity() {
+    return similarity;
+  }
+
+
+  /**
+   * Orders pairs by the position of their first record and then of their second record.
+   */
+  @Override
+  public int compareTo(JoinPair o) {
+    int c = Integer.compare(first, o.first);
+    return c != 0 ? c : Integer.compare(second, o.second);
+  }
+
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof JoinPair)) {
+      return false;
+    }
+    JoinPair pair = (JoinPair) o;
+    return first == pair.first
+        && second == pair.second
+        && Double.compare(pair.similarity, similarity) == 0;
+  }
+
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * first + second) + Double.hashCode(similarity);
+  }
+
+
+  @Override
+  public String toString() {
+    return "JoinPair{first=" + first + ", second=" + second + ", similarity=" + similarity + "}";
+  }
+}
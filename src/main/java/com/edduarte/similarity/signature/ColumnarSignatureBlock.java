@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.signature;
+
+import java.util.Arrays;
+
+/**
+ * Signature matrix stored on the heap in a single slot-major array, where the values of one slot
+ * for all rows are stored next to each other (the signatures are the columns of the array).
+ * <p>
+ * This layout is meant for comparing one query against many stored signatures at once: for every
+ * slot of the query, {@link #matches(int[], int, int, int[])} walks a contiguous run of values and
+ * adds 1 to the count of every row with an equal value. The loop has no branches or dependencies
+ * between rows, so the JIT compiler can unroll and vectorize it instead of comparing row
+ * arrays one by one with a branch per slot. Reading or appending a single row is slower than with
+ * a {@link HeapSignatureMatrix}, since its values are far apart.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class ColumnarSignatureBlock implements SignatureMatrix {
+
+  private final int sigSize;
+
+  /**
+   * Slot-major values, where the value of a slot of a row is at slot * capacity + row, for a
+   * capacity of data.length / sigSize rows
+   */
+  private volatile int[] data;
+
+  private volatile int size;
+
+
+  public ColumnarSignatureBlock(int sigSize) {
+    this(sigSize, 16);
+  }
+
+
+  public ColumnarSignatureBlock(int sigSize, int initialCapacity) {
+    if (sigSize <= 0) {
+      throw new IllegalArgumentException("Signature size must be positive");
+    }
+    long length = (long) Math.max(initialCapacity, 1) * sigSize;
+    if (length > HeapSignatureMatrix.MAX_ARRAY_SIZE) {
+      throw new IllegalArgumentException("Initial capacity of " + initialCapacity
+          + " signatures of " + sigSize + " slots exceeds the maximum array size of "
+          + HeapSignatureMatrix.MAX_ARRAY_SIZE + " slots");
+    }
+    this.sigSize = sigSize;
+    this.data = new int[(int) length];
+    this.size = 0;
+  }
+
+
+  /**
+   * Instantiates a block with the signatures of all rows of the specified matrix.
+   */
+  public static ColumnarSignatureBlock of(SignatureMatrix matrix) {
+    int sigSize = matrix.getSignatureSize();
+    int rows = matrix.size();
+    ColumnarSignatureBlock block = new ColumnarSignatureBlock(sigSize, rows);
+    int[] d = block.data;
+    int capacity = d.length / sigSize;
+    for (int row = 0; row < rows; row++) {
+      for (int slot = 0; slot < sigSize; slot++) {
+        d[slot * capacity + row] = matrix.get(row, slot);
+      }
+    }
+    block.size = rows;
+    return block;
+  }
+
+
+  @Override
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+
+  @Override
+  public SignatureMatrix newEmpty() {
+    return new ColumnarSignatureBlock(sigSize);
+  }
+
+
+  @Override
+  public int append(int[] signature) {
+    checkSignature(signature);
+    int row = size;
+    int[] d = data;
+    int capacity = d.length / sigSize;
+    if (row == capacity) {
+      // every slot run grows, so values are moved to their positions in the larger array, and
+      // the capacity is computed as a long, since doubling a block of more than 1G slots overflows
+      int maxCapacity = HeapSignatureMatrix.MAX_ARRAY_SIZE / sigSize;
+      if (row >= maxCapacity) {
+        throw new IllegalStateException("Signature block is full, since " + (row + 1)
+            + " signatures of " + sigSize + " slots exceed the maximum array size of "
+            + HeapSignatureMatrix.MAX_ARRAY_SIZE + " slots");
+      }
+      int newCapacity = (int) Math.min(capacity * 2L, maxCapacity);
+      int[] grown = new int[newCapacity * sigSize];
+      for (int slot = 0; slot < sigSize; slot++) {
+        System.arraycopy(d, slot * capacity, grown, slot * newCapacity, row);
+      }
+      d = grown;
+      capacity = newCapacity;
+    }
+    for (int slot = 0; slot < sigSize; slot++) {
+      d[slot * capacity + row] = signature[slot];
+    }
+    data = d;
+    size = row + 1;
+    return row;
+  }
+
+
+  @Override
+  public int get(int row, int slot) {
+    int[] d = data;
+    return d[slot * (d.length / sigSize) + row];
+  }
+
+
+  @Override
+  public void copy(int row, int[] dst) {
+    int[] d = data;
+    int capacity = d.length / sigSize;
+    for (int slot = 0; slot < sigSize; slot++) {
+      dst[slot] = d[slot * capacity + row];
+    }
+  }
+
+
+  @Override
+  public int matches(int[] query, int row) {
+    int[] d = data;
+    int capacity = d.length / sigSize;
+    int matches = 0;
+    for (int slot = 0; slot < sigSize; slot++) {
+      if (d[slot * capacity + row] == query[slot]) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+
+  @Override
+  public void matches(int[] query, int fromRow, int toRow, int[] matches) {
+    int[] d = data;
+    int capacity = d.length / sigSize;
+    int count = toRow - fromRow;
+    Arrays.fill(matches, 0, count, 0);
+    for (int slot = 0; slot < sigSize; slot++) {
+      int q = query[slot];
+      int offset = slot * capacity + fromRow;
+      for (int i = 0; i < count; i++) {
+        // v is 0 only for equal values, and ((v - 1) & ~v) has its sign bit set only for 0
+        int v = d[offset + i] ^ q;
+        matches[i] += ((v - 1) & ~v) >>> 31;
+      }
+    }
+  }
+
+
+  private void checkSignature(int[] signature) {
+    if (signature.length != sigSize) {
+      throw new IllegalArgumentException("Signature must have " + sigSize + " slots");
+    }
+  }
+}
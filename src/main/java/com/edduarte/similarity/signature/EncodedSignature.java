@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.signature;
+
+import orestes.bloomfilter.HashProvider.HashMethod;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only view over a record encoded by {@link SignatureCodec}, which reads slots directly from
+ * the underlying buffer without copying them to an array.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class EncodedSignature {
+
+  /**
+   * The type of values held in an encoded record.
+   */
+  public enum Kind {
+    SIGNATURE, BANDS, BAND_KEYS
+  }
+
+  private final SignatureCodec.Family family;
+
+  private final HashMethod hash;
+
+  private final long seed;
+
+  private final int sigSize;
+
+  private final int b;
+
+  private final int r;
+
+  private final Kind kind;
+
+  private final int length;
+
+  private final int min;
+
+  private final int width;
+
+  /**
+   * Buffer positioned at the first byte of the packed payload
+   */
+  private final ByteBuffer payload;
+
+
+  private EncodedSignature(
+      SignatureCodec.Family family,
+      HashMethod hash,
+      long seed,
+      int sigSize,
+      int b,
+      int r,
+      Kind kind,
+      int length,
+      int min,
+      int width,
+      ByteBuffer payload) {
+    this.family = family;
+    this.hash = hash;
+    this.seed = seed;
+    this.sigSize = sigSize;
+    this.b = b;
+    this.r = r;
+    this.kind = kind;
+    this.length = length;
+    this.min = min;
+    this.width = width;
+    this.payload = payload;
+  }
+
+
+  static EncodedSignature read(ByteBuffer buffer) {
+    // encoded records are always big-endian, regardless of the order of the specified buffer
+    ByteBuffer src = buffer.slice();
+    if (src.getShort() != SignatureCodec.MAGIC) {
+      throw new IllegalArgumentException("Buffer does not contain an encoded signature");
+    }
+    byte version = src.get();
+    if (version != SignatureCodec.VERSION) {
+      throw new IllegalArgumentException("Unsupported signature encoding version " + version);
+    }
+    int familyOrdinal = src.get();
+    if (familyOrdinal < 0 || familyOrdinal >= SignatureCodec.Family.values().length) {
+      throw new IllegalArgumentException("Unknown signature hash family " + familyOrdinal);
+    }
+    SignatureCodec.Family family = SignatureCodec.Family.values()[familyOrdinal];
+    HashMethod hash = null;
+    int nameLength = src.get();
+    if (nameLength > 0) {
+      byte[] name = new byte[nameLength];
+      src.get(name);
+      hash = HashMethod.valueOf(new String(name, StandardCharsets.US_ASCII));
+    }
+    long seed = src.getLong();
+    int sigSize = getVarInt(src);
+    int b = getVarInt(src);
+    int r = getVarInt(src);
+    Kind kind = Kind.values()[src.get()];
+    int length = getVarInt(src);
+
+    int min = 0;
+    int width = Long.SIZE;
+    if (kind != Kind.BAND_KEYS) {
+      min = src.getInt();
+      width = src.get();
+    }
+    int payloadBytes = (int) (((long) length * width + 7) / 8);
+    ByteBuffer payload = src.slice();
+    payload.limit(payloadBytes);
+    buffer.position(buffer.position() + src.position() + payloadBytes);
+    return new EncodedSignature(
+        family, hash, seed, sigSize, b, r, kind, length, min, width, payload);
+  }
+
+
+  public SignatureCodec.Family getFamily() {
+    return family;
+  }
+
+
+  /**
+   * Returns the hash method of the family that produced this record, or null if it was produced
+   * with universal permutations.
+   */
+  public HashMethod getHashMethod() {
+    return hash;
+  }
+
+
+  public long getSeed() {
+    return seed;
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  public int getBandCount() {
+    return b;
+  }
+
+
+  public int getRowCount() {
+    return r;
+  }
+
+
+  public Kind getKind() {
+    return kind;
+  }
+
+
+  /**
+   * Returns the number of values in this record.
+   */
+  public int size() {
+    return length;
+  }
+
+
+  /**
+   * Returns the value at the specified index of a signature or bands record.
+   */
+  public int get(int index) {
+    if (kind == Kind.BAND_KEYS) {
+      throw new IllegalStateException("Band keys must be read with getLong");
+    }
+    if (width == 0) {
+      return min;
+    }
+    long bit = (long) index * width;
+    int pos = (int) (bit >>> 3);
+    int shift = (int) (bit & 7);
+    int bytes = (shift + width + 7) >>> 3;
+    long value = 0;
+    for (int i = 0; i < bytes; i++) {
+      value |= (payload.get(pos + i) & 0xFFL) << (i << 3);
+    }
+    long mask = (1L << width) - 1;
+    return (int) (((value >>> shift) & mask) + min);
+  }
+
+
+  /**
+   * Returns the key at the specified index of a band keys record.
+   */
+  public long getLong(int index) {
+    if (kind != Kind.BAND_KEYS) {
+      throw new IllegalStateException("Only band keys can be read with getLong");
+    }
+    return payload.getLong(index * Long.BYTES);
+  }
+
+
+  /**
+   * Returns the number of slots where this signature is equal to the specified signature, without
+   * decoding this signature to an array.
+   */
+  public int matches(int[] signature) {
+    int count = Math.min(length, signature.length);
+    int matches = 0;
+    for (int i = 0; i < count; i++) {
+      if (get(i) == signature[i]) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+
+  /**
+   * Decodes all values of a signature or bands record into a new array.
+   */
+  public int[] toArray() {
+    int[] result = new int[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = get(i);
+    }
+    return result;
+  }
+
+
+  /**
+   * Decodes all keys of a band keys record into a new array.
+   */
+  public long[] toLongArray() {
+    long[] result = new long[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = getLong(i);
+    }
+    return result;
+  }
+
+
+  private static int getVarInt(ByteBuffer src) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = src.get();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
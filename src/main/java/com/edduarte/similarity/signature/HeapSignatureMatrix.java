@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.signature;
+
+import java.util.Arrays;
+
+/**
+ * Signature matrix stored on the heap as a single packed array, row after row, so that no
+ * per-signature array is allocated.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class HeapSignatureMatrix implements SignatureMatrix {
+
+  /**
+   * The largest array length that every JVM can allocate, which bounds the number of slots of all
+   * signatures of a heap matrix.
+   */
+  static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private final int sigSize;
+
+  private volatile int[] data;
+
+  private volatile int size;
+
+
+  public HeapSignatureMatrix(int sigSize) {
+    this(sigSize, 16);
+  }
+
+
+  public HeapSignatureMatrix(int sigSize, int initialCapacity) {
+    if (sigSize <= 0) {
+      throw new IllegalArgumentException("Signature size must be positive");
+    }
+    long length = (long) Math.max(initialCapacity, 1) * sigSize;
+    if (length > MAX_ARRAY_SIZE) {
+      throw new IllegalArgumentException("Initial capacity of " + initialCapacity
+          + " signatures of " + sigSize + " slots exceeds the maximum array size of "
+          + MAX_ARRAY_SIZE + " slots");
+    }
+    this.sigSize = sigSize;
+    this.data = new int[(int) length];
+    this.size = 0;
+  }
+
+
+  /**
+   * Instantiates a matrix backed by the specified packed array, which holds the signatures of the
+   * first size rows one after the other. The array is not copied.
+   */
+  public HeapSignatureMatrix(int sigSize, int[] data, int size) {
+    if (sigSize <= 0) {
+      throw new IllegalArgumentException("Signature size must be positive");
+    }
+    if (size < 0 || data.length < (long) size * sigSize) {
+      throw new IllegalArgumentException("Array must hold " + size + " signatures");
+    }
+    this.sigSize = sigSize;
+    this.data = data;
+    this.size = size;
+  }
+
+
+  @Override
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+
+  @Override
+  public int append(int[] signature) {
+    checkSignature(signature);
+    int row = size;
+    int[] d = data;
+    // sizes are computed as longs, since doubling a matrix of more than 1G slots overflows
+    long length = (row + 1L) * sigSize;
+    if (length > d.length) {
+      if (length > MAX_ARRAY_SIZE) {
+        throw new IllegalStateException("Signature matrix is full, since " + (row + 1)
+            + " signatures of " + sigSize + " slots exceed the maximum array size of "
+            + MAX_ARRAY_SIZE + " slots");
+      }
+      d = Arrays.copyOf(d, (int) Math.min(Math.max(d.length * 2L, length), MAX_ARRAY_SIZE));
+    }
+    System.arraycopy(signature, 0, d, row * sigSize, sigSize);
+    data = d;
+    size = row + 1;
+    return row;
+  }
+
+
+  @Override
+  public int get(int row, int slot) {
+    return data[row * sigSize + slot];
+  }
+
+
+  @Override
+  public void copy(int row, int[] dst) {
+    System.arraycopy(data, row * sigSize, dst, 0, sigSize);
+  }
+
+
+  @Override
+  public int matches(int[] query, int row) {
+    int[] d = data;
+    int offset = row * sigSize;
+    int matches = 0;
+    for (int i = 0; i < sigSize; i++) {
+      if (d[offset + i] == query[i]) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+
+  @Override
+  public boolean matchesAtLeast(int[] query, int row, int minMatches) {
+    return SignatureMatrix.matchesAtLeast(query, data, row * sigSize, minMatches);
+  }
+
+
+  /**
+   * Returns the packed array that backs this matrix, which holds the signatures of all rows one
+   * after the other. Only the first size() * getSignatureSize() values of the array are set.
+   */
+  public int[] array() {
+    return data;
+  }
+
+
+  private void checkSignature(int[] signature) {
+    if (signature.length != sigSize) {
+      throw new IllegalArgumentException("Signature must have " + sigSize + " slots");
+    }
+  }
+}
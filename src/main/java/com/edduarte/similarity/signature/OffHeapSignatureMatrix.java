@@ -0,0 +1,347 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.signature;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Signature matrix stored outside of the heap, either in direct byte buffers or in a
+ * memory-mapped file, so that heap usage and garbage collection work stay flat regardless of the
+ * number of signatures. Rows are stored in fixed-size chunks, so that the matrix can grow past the
+ * 2GB limit of a single buffer.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class OffHeapSignatureMatrix implements SignatureMatrix, Closeable {
+
+  /**
+   * Maximum size in bytes of each chunk
+   */
+  static final int CHUNK_BYTES = 1 << 26;
+
+  private final int sigSize;
+
+  private final int rowBytes;
+
+  private final int rowsPerChunk;
+
+  private final FileChannel channel;
+
+  /**
+   * File that backs this matrix, or null if it is stored in direct byte buffers or was mapped
+   */
+  private final Path file;
+
+  /**
+   * File given by the caller to the matrix from which this one was created with
+   * {@link #newEmpty()}, or the file of this matrix if it was given by the caller
+   */
+  private final Path originalFile;
+
+  /**
+   * Number of calls to {@link #newEmpty()} between the matrix of the original file and this one
+   */
+  private final int generation;
+
+  private final boolean readOnly;
+
+  private volatile ByteBuffer[] chunks;
+
+  private volatile int size;
+
+
+  /**
+   * Instantiates an empty matrix stored in direct byte buffers.
+   */
+  public OffHeapSignatureMatrix(int sigSize) {
+    this(sigSize, CHUNK_BYTES, null);
+  }
+
+
+  /**
+   * Instantiates an empty matrix stored in the specified file, which is created if it does not
+   * exist or truncated if it does, and which is memory-mapped chunk by chunk as it grows.
+   */
+  public OffHeapSignatureMatrix(int sigSize, Path file) throws IOException {
+    this(sigSize, CHUNK_BYTES, open(file), file, file, 0);
+  }
+
+
+  OffHeapSignatureMatrix(int sigSize, int chunkBytes, FileChannel channel) {
+    this(sigSize, chunkBytes, channel, null, null, 0);
+  }
+
+
+  private OffHeapSignatureMatrix(
+      int sigSize,
+      int chunkBytes,
+      FileChannel channel,
+      Path file,
+      Path originalFile,
+      int generation) {
+    if (sigSize <= 0) {
+      throw new IllegalArgumentException("Signature size must be positive");
+    }
+    this.sigSize = sigSize;
+    this.rowBytes = sigSize * Integer.BYTES;
+    this.rowsPerChunk = Math.max(chunkBytes / rowBytes, 1);
+    this.channel = channel;
+    this.file = file;
+    this.originalFile = originalFile;
+    this.generation = generation;
+    this.readOnly = false;
+    this.chunks = new ByteBuffer[0];
+    this.size = 0;
+  }
+
+
+  private OffHeapSignatureMatrix(int sigSize, ByteBuffer[] chunks, int size) {
+    this.sigSize = sigSize;
+    this.rowBytes = sigSize * Integer.BYTES;
+    this.rowsPerChunk = Math.max(CHUNK_BYTES / rowBytes, 1);
+    this.channel = null;
+    this.file = null;
+    this.originalFile = null;
+    this.generation = 0;
+    this.readOnly = true;
+    this.chunks = chunks;
+    this.size = size;
+  }
+
+
+  /**
+   * Maps a read-only matrix of the specified number of rows, which were written in sequence and
+   * in little-endian byte order to the specified file starting at the specified position. Pages
+   * of the file are only read when the rows in them are first accessed, and the mapping stays
+   * valid after the channel is closed.
+   */
+  public static OffHeapSignatureMatrix map(
+      FileChannel channel, long position, int size, int sigSize) throws IOException {
+    if (sigSize <= 0) {
+      throw new IllegalArgumentException("Signature size must be positive");
+    }
+    long rowBytes = sigSize * Integer.BYTES;
+    int rowsPerChunk = (int) Math.max(CHUNK_BYTES / rowBytes, 1);
+    ByteBuffer[] chunks = new ByteBuffer[(size + rowsPerChunk - 1) / rowsPerChunk];
+    for (int chunk = 0; chunk < chunks.length; chunk++) {
+      int rows = Math.min(rowsPerChunk, size - chunk * rowsPerChunk);
+      chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY,
+          position + chunk * rowsPerChunk * rowBytes, rows * rowBytes)
+          .order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return new OffHeapSignatureMatrix(sigSize, chunks, size);
+  }
+
+
+  @Override
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+
+  /**
+   * Returns the file that backs this matrix, or null if it is stored in direct byte buffers or was
+   * mapped read-only.
+   */
+  public Path getFile() {
+    return file;
+  }
+
+
+  /**
+   * Returns a new empty matrix stored like this one. If this matrix is stored in a file, the new
+   * matrix is stored in a new file next to the file given by the caller, named after it with a
+   * numeric suffix (such as "signatures.bin.1"), which is created or truncated, and which is
+   * deleted when the new matrix is closed. Otherwise, including if this matrix was mapped
+   * read-only, the new matrix is stored in direct byte buffers.
+   *
+   * @throws UncheckedIOException if the new file could not be opened
+   */
+  @Override
+  public SignatureMatrix newEmpty() {
+    if (file == null) {
+      return new OffHeapSignatureMatrix(sigSize, rowsPerChunk * rowBytes, null);
+    }
+    Path next = originalFile.resolveSibling(originalFile.getFileName() + "." + (generation + 1));
+    try {
+      return new OffHeapSignatureMatrix(
+          sigSize, rowsPerChunk * rowBytes, open(next), next, originalFile, generation + 1);
+    } catch (IOException ex) {
+      String m = "There was a problem creating the signature file " + next + ".";
+      throw new UncheckedIOException(m, ex);
+    }
+  }
+
+
+  /**
+   * @throws UnsupportedOperationException if this matrix was mapped read-only
+   */
+  @Override
+  public synchronized int append(int[] signature) {
+    if (readOnly) {
+      throw new UnsupportedOperationException("Signature matrix is read-only");
+    }
+    if (signature.length != sigSize) {
+      throw new IllegalArgumentException("Signature must have " + sigSize + " slots");
+    }
+    int row = size;
+    int chunk = row / rowsPerChunk;
+    ByteBuffer[] c = chunks;
+    if (chunk == c.length) {
+      c = Arrays.copyOf(c, chunk + 1);
+      c[chunk] = allocateChunk(chunk);
+      chunks = c;
+    }
+    ByteBuffer buffer = c[chunk];
+    int offset = (row % rowsPerChunk) * rowBytes;
+    for (int i = 0; i < sigSize; i++) {
+      buffer.putInt(offset + i * Integer.BYTES, signature[i]);
+    }
+    size = row + 1;
+    return row;
+  }
+
+
+  @Override
+  public int get(int row, int slot) {
+    return chunks[row / rowsPerChunk].getInt(
+        (row % rowsPerChunk) * rowBytes + slot * Integer.BYTES);
+  }
+
+
+  @Override
+  public void copy(int row, int[] dst) {
+    ByteBuffer buffer = chunks[row / rowsPerChunk];
+    int offset = (row % rowsPerChunk) * rowBytes;
+    for (int i = 0; i < sigSize; i++) {
+      dst[i] = buffer.getInt(offset + i * Integer.BYTES);
+    }
+  }
+
+
+  @Override
+  public int matches(int[] query, int row) {
+    return matches(query, chunks[row / rowsPerChunk], (row % rowsPerChunk) * rowBytes);
+  }
+
+
+  @Override
+  public boolean matchesAtLeast(int[] query, int row, int minMatches) {
+    int maxMismatches = sigSize - minMatches;
+    if (maxMismatches < 0) {
+      return false;
+    }
+    ByteBuffer buffer = chunks[row / rowsPerChunk];
+    int offset = (row % rowsPerChunk) * rowBytes;
+    int matches = 0;
+    int mismatches = 0;
+    for (int i = 0; matches < minMatches; i++) {
+      if (buffer.getInt(offset + i * Integer.BYTES) == query[i]) {
+        matches++;
+      } else if (++mismatches > maxMismatches) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  @Override
+  public void matches(int[] query, int fromRow, int toRow, int[] matches) {
+    ByteBuffer[] c = chunks;
+    int row = fromRow;
+    while (row < toRow) {
+      // compare all requested rows of one chunk before moving to the next
+      ByteBuffer buffer = c[row / rowsPerChunk];
+      int chunkEnd = Math.min(toRow, (row / rowsPerChunk + 1) * rowsPerChunk);
+      int offset = (row % rowsPerChunk) * rowBytes;
+      for (; row < chunkEnd; row++, offset += rowBytes) {
+        matches[row - fromRow] = matches(query, buffer, offset);
+      }
+    }
+  }
+
+
+  /**
+   * Releases the file that backs this matrix, if any, and deletes it if it was created by
+   * {@link #newEmpty()}. Direct buffers are released by the garbage collector once this matrix is
+   * no longer referenced.
+   */
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      if (generation > 0) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+
+  private static FileChannel open(Path file) throws IOException {
+    return FileChannel.open(file,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+  }
+
+
+
+  private int matches(int[] query, ByteBuffer buffer, int offset) {
+    int matches = 0;
+    for (int i = 0; i < sigSize; i++) {
+      if (buffer.getInt(offset + i * Integer.BYTES) == query[i]) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+
+  private ByteBuffer allocateChunk(int chunk) {
+    int chunkBytes = rowsPerChunk * rowBytes;
+    if (channel == null) {
+      return ByteBuffer.allocateDirect(chunkBytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    try {
+      long position = (long) chunk * chunkBytes;
+      return channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes)
+          .order(ByteOrder.LITTLE_ENDIAN);
+    } catch (IOException ex) {
+      String m = "There was a problem mapping the signature file.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.signature;
+
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import orestes.bloomfilter.HashProvider.HashMethod;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Versioned binary codec for signatures, bands and band keys. Every encoded record starts with a
+ * header that identifies the hash family that produced it (family, hash method, seed, signature
+ * size, bands and rows), so that records produced by incompatible configurations can be told
+ * apart.
+ * <p>
+ * Only string signatures can be encoded, produced either with a hash method or with universal
+ * permutations drawn from a seed (see
+ * {@link com.edduarte.similarity.converter.KShinglesToSignatureConverter}). Set signatures are
+ * produced with random coefficients that are drawn anew in every process, so they can never be
+ * compared with signatures from another process.
+ * <p>
+ * Signatures and bands are encoded with frame-of-reference bit-packing: the minimum value is
+ * stored once, and every slot is stored as its offset from that minimum with the smallest bit
+ * width that fits all offsets. Minhash values are much smaller than the range of their hash
+ * functions, so this usually takes a fraction of the 4 bytes per slot of a raw int array, while
+ * still allowing any slot to be read directly from the encoded bytes (see
+ * {@link EncodedSignature}).
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class SignatureCodec {
+
+  /**
+   * The family of hash functions that produced the encoded signatures.
+   */
+  public enum Family {
+    /**
+     * Every slot is hashed with a {@link HashMethod}
+     */
+    HASH_METHOD,
+    /**
+     * Every shingle is hashed once, and slots are universal permutations drawn from a seed
+     */
+    PERMUTATION
+  }
+
+  static final short MAGIC = 0x5347;
+
+  static final byte VERSION = 2;
+
+  private final Family family;
+
+  private final HashMethod hash;
+
+  private final long seed;
+
+  private final int sigSize;
+
+  private final int b;
+
+  private final int r;
+
+  private final byte[] header;
+
+
+  /**
+   * Instantiates a codec for the records of signatures produced with the specified hash method.
+   *
+   * @param hash the hash method used to hash shingles to signatures
+   * @param seed the seed of the hash family, or 0 if it has none
+   * @param sigSize the length of the signatures
+   * @param b the number of bands, or 0 if signatures are not split in bands
+   * @param r the number of rows, or 0 if signatures are not split in bands
+   */
+  public SignatureCodec(HashMethod hash, long seed, int sigSize, int b, int r) {
+    this(Family.HASH_METHOD, Objects.requireNonNull(hash, "Hash method must not be null"),
+        seed, sigSize, b, r);
+  }
+
+
+  private SignatureCodec(Family family, HashMethod hash, long seed, int sigSize, int b, int r) {
+    this.family = family;
+    this.hash = hash;
+    this.seed = seed;
+    this.sigSize = sigSize;
+    this.b = b;
+    this.r = r;
+    this.header = header(family, hash, seed, sigSize, b, r);
+  }
+
+
+  /**
+   * Returns a codec for the records of signatures produced with universal permutations drawn
+   * from the specified seed.
+   *
+   * @param seed the seed of the universal permutations
+   * @param sigSize the length of the signatures
+   * @param b the number of bands, or 0 if signatures are not split in bands
+   * @param r the number of rows, or 0 if signatures are not split in bands
+   */
+  public static SignatureCodec forPermutations(long seed, int sigSize, int b, int r) {
+    return new SignatureCodec(Family.PERMUTATION, null, seed, sigSize, b, r);
+  }
+
+
+  /**
+   * Returns a codec for the records of signatures produced by the specified converter.
+   *
+   * @param converter the converter that produces the signatures
+   * @param b the number of bands, or 0 if signatures are not split in bands
+   * @param r the number of rows, or 0 if signatures are not split in bands
+   */
+  public static SignatureCodec of(KShinglesToSignatureConverter converter, int b, int r) {
+    return converter.getHashMethod() != null
+        ? new SignatureCodec(converter.getHashMethod(), 0, converter.getSignatureSize(), b, r)
+        : forPermutations(converter.getSeed(), converter.getSignatureSize(), b, r);
+  }
+
+
+  public Family getFamily() {
+    return family;
+  }
+
+
+  /**
+   * Returns the hash method used to hash shingles, or null if signatures are produced with
+   * universal permutations.
+   */
+  public HashMethod getHashMethod() {
+    return hash;
+  }
+
+
+  public long getSeed() {
+    return seed;
+  }
+
+
+  public int getSignatureSize() {
+    return sigSize;
+  }
+
+
+  public int getBandCount() {
+    return b;
+  }
+
+
+  public int getRowCount() {
+    return r;
+  }
+
+
+  /**
+   * Returns true if the specified record was produced by the same hash family as this codec, and
+   * can therefore be compared with the records of this codec.
+   */
+  public boolean isCompatible(EncodedSignature encoded) {
+    return encoded.getFamily() == family
+        && encoded.getHashMethod() == hash
+        && encoded.getSeed() == seed
+        && encoded.getSignatureSize() == sigSize
+        && encoded.getBandCount() == b
+        && encoded.getRowCount() == r;
+  }
+
+
+  /**
+   * Encodes the specified signature.
+   */
+  public byte[] encode(int[] signature) {
+    return encodePacked(EncodedSignature.Kind.SIGNATURE, signature);
+  }
+
+
+  /**
+   * Encodes the specified signature into the specified buffer, starting at its current position.
+   *
+   * @throws java.nio.BufferOverflowException if the buffer has less remaining bytes than
+   * {@link #encodedSize(int[])}
+   */
+  public void encode(int[] signature, ByteBuffer dst) {
+    putPacked(EncodedSignature.Kind.SIGNATURE, signature, dst);
+  }
+
+
+  /**
+   * Returns the number of bytes needed to encode the specified signature or bands.
+   */
+  public int encodedSize(int[] values) {
+    int width = width(values);
+    int packedBytes = (int) (((long) values.length * width + 7) / 8);
+    return header.length + 1 + varIntSize(values.length) + 4 + 1 + packedBytes;
+  }
+
+
+  /**
+   * Encodes the specified bands, as returned by
+   * {@link com.edduarte.similarity.converter.SignatureToBandsConverter#apply(int[])}.
+   */
+  public byte[] encodeBands(int[] bands) {
+    return encodePacked(EncodedSignature.Kind.BANDS, bands);
+  }
+
+
+  /**
+   * Encodes the specified band keys, as returned by
+   * {@link com.edduarte.similarity.converter.SignatureToBandsConverter#toBandKeys(int[])}. Band
+   * keys are uniformly distributed 64-bit hashes, so they are stored as they are.
+   */
+  public byte[] encodeBandKeys(long[] keys) {
+    byte[] result = new byte[header.length + 1 + varIntSize(keys.length) + keys.length * 8];
+    ByteBuffer dst = ByteBuffer.wrap(result);
+    dst.put(header);
+    dst.put((byte) EncodedSignature.Kind.BAND_KEYS.ordinal());
+    putVarInt(dst, keys.length);
+    for (long key : keys) {
+      dst.putLong(key);
+    }
+    return result;
+  }
+
+
+  /**
+   * Decodes the record that starts at the current position of the specified buffer, and advances
+   * the position of the buffer to the end of that record. The returned view reads slots directly
+   * from the buffer, so no array is allocated and the buffer contents must not change while the
+   * view is in use.
+   */
+  public static EncodedSignature decode(ByteBuffer src) {
+    return EncodedSignature.read(src);
+  }
+
+
+  private byte[] encodePacked(EncodedSignature.Kind kind, int[] values) {
+    byte[] result = new byte[encodedSize(values)];
+    putPacked(kind, values, ByteBuffer.wrap(result));
+    return result;
+  }
+
+
+  private void putPacked(EncodedSignature.Kind kind, int[] values, ByteBuffer dst) {
+    int min = min(values);
+    int width = width(values);
+    dst.put(header);
+    dst.put((byte) kind.ordinal());
+    putVarInt(dst, values.length);
+    dst.putInt(min);
+    dst.put((byte) width);
+
+    // slots are packed least significant bit first, one after the other
+    long buffer = 0;
+    int bits = 0;
+    for (int v : values) {
+      buffer |= (((long) v - min) & 0xFFFFFFFFL) << bits;
+      bits += width;
+      while (bits >= 8) {
+        dst.put((byte) buffer);
+        buffer >>>= 8;
+        bits -= 8;
+      }
+    }
+    if (bits > 0) {
+      dst.put((byte) buffer);
+    }
+  }
+
+
+  private static int min(int[] values) {
+    int min = values.length > 0 ? Integer.MAX_VALUE : 0;
+    for (int v : values) {
+      min = Math.min(min, v);
+    }
+    return min;
+  }
+
+
+  /**
+   * Returns the number of bits needed to store the offset of every value from the minimum.
+   */
+  private static int width(int[] values) {
+    int min = min(values);
+    long maxOffset = 0;
+    for (int v : values) {
+      maxOffset = Math.max(maxOffset, (long) v - min);
+    }
+    return 64 - Long.numberOfLeadingZeros(maxOffset);
+  }
+
+
+  private static byte[] header(
+      Family family,
+      HashMethod hash,
+      long seed,
+      int sigSize,
+      int b,
+      int r) {
+    byte[] name = hash != null ? hash.name().getBytes(StandardCharsets.US_ASCII) : new byte[0];
+    ByteBuffer dst = ByteBuffer.allocate(2 + 1 + 1 + 1 + name.length + 8 + 15);
+    dst.putShort(MAGIC);
+    dst.put(VERSION);
+    dst.put((byte) family.ordinal());
+    dst.put((byte) name.length);
+    dst.put(name);
+    dst.putLong(seed);
+    putVarInt(dst, sigSize);
+    putVarInt(dst, b);
+    putVarInt(dst, r);
+    byte[] result = new byte[dst.position()];
+    dst.flip();
+    dst.get(result);
+    return result;
+  }
+
+
+  static void putVarInt(ByteBuffer dst, int value) {
+    while ((value & ~0x7F) != 0) {
+      dst.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    dst.put((byte) value);
+  }
+
+
+  static int varIntSize(int value) {
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+}
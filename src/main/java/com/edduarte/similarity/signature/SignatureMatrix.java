@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.signature;
+
+/**
+ * Matrix of minhash signatures with a fixed size, where every row holds the signature of one
+ * document. Rows are appended in sequence and are never reordered, so a row number can be used
+ * as a compact document reference.
+ * <p>
+ * Implementations are safe for use by multiple threads, as long as appends are not performed
+ * concurrently with each other.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public interface SignatureMatrix {
+
+  /**
+   * Returns the number of slots in each signature.
+   */
+  int getSignatureSize();
+
+  /**
+   * Returns the number of rows in this matrix.
+   */
+  int size();
+
+  /**
+   * Appends the specified signature as a new row, and returns its row number.
+   */
+  int append(int[] signature);
+
+  /**
+   * Returns the value of the specified slot of the specified row.
+   */
+  int get(int row, int slot);
+
+  /**
+   * Copies the signature in the specified row to the destination array.
+   */
+  void copy(int row, int[] dst);
+
+  /**
+   * Returns the number of slots where the signature in the specified row is equal to the
+   * specified query signature.
+   */
+  int matches(int[] query, int row);
+
+  /**
+   * Returns true if the signature in the specified row is equal to the specified query signature
+   * in at least minMatches slots. The comparison stops as soon as the outcome is decided, either
+   * because minMatches slots are equal or because too many slots are different for the remaining
+   * ones to reach it.
+   */
+  default boolean matchesAtLeast(int[] query, int row, int minMatches) {
+    int maxMismatches = getSignatureSize() - minMatches;
+    if (maxMismatches < 0) {
+      return false;
+    }
+    int matches = 0;
+    int mismatches = 0;
+    for (int i = 0; matches < minMatches; i++) {
+      if (get(row, i) == query[i]) {
+        matches++;
+      } else if (++mismatches > maxMismatches) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if the query signature is equal in at least minMatches slots to the signature of
+   * the same size that starts at the specified offset of the specified array, stopping as soon as
+   * the outcome is decided (see {@link #matchesAtLeast(int[], int, int)}). This is the comparison
+   * of every signature held in an array, for matrices and indexes alike.
+   */
+  static boolean matchesAtLeast(int[] query, int[] signatures, int offset, int minMatches) {
+    int maxMismatches = query.length - minMatches;
+    if (maxMismatches < 0) {
+      return false;
+    }
+    int matches = 0;
+    int mismatches = 0;
+    for (int i = 0; matches < minMatches; i++) {
+      if (signatures[offset + i] == query[i]) {
+        matches++;
+      } else if (++mismatches > maxMismatches) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the minimum number of equal slots for two signatures with the specified size to have
+   * an estimated similarity, matches / sigSize, equal or above the specified threshold, or
+   * sigSize + 1 if no number of equal slots reaches it.
+   */
+  static int minMatches(double threshold, int sigSize) {
+    int minMatches = (int) Math.max(Math.min(Math.ceil(threshold * sigSize), sigSize + 1), 0);
+    // correct the rounding errors of the product, so that the result is consistent with
+    // comparing the division with the threshold
+    while (minMatches > 0 && (double) (minMatches - 1) / sigSize >= threshold) {
+      minMatches--;
+    }
+    while (minMatches <= sigSize && (double) minMatches / sigSize < threshold) {
+      minMatches++;
+    }
+    return minMatches;
+  }
+
+  /**
+   * Compares the specified query signature against every row from fromRow (inclusive) to toRow
+   * (exclusive), and stores the number of equal slots of each row in the matches array, starting
+   * at index 0.
+   */
+  default void matches(int[] query, int fromRow, int toRow, int[] matches) {
+    for (int row = fromRow; row < toRow; row++) {
+      matches[row - fromRow] = matches(query, row);
+    }
+  }
+
+  /**
+   * Returns a new empty matrix of the same kind and with the same signature size as this one,
+   * for example to copy the rows that are still in use to a smaller matrix.
+   */
+  default SignatureMatrix newEmpty() {
+    return new HeapSignatureMatrix(getSignatureSize());
+  }
+
+  /**
+   * Returns the signature in the specified row as a new array.
+   */
+  default int[] getRow(int row) {
+    int[] dst = new int[getSignatureSize()];
+    copy(row, dst);
+    return dst;
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.sketch;
+
+import com.edduarte.similarity.converter.ElementHasher;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Bottom-k minhash sketch, also known as a k minimum values (KMV) sketch, following Cohen and
+ * Kaplan, "Summarizing data using bottom-k sketches", and Beyer et al., "On synopses for
+ * distinct-value estimation under multiset operations".
+ * <p>
+ * Unlike a minhash signature, which keeps the minimum of k independent hash functions, every
+ * element is hashed only once, and the sketch keeps the k smallest distinct hashes in a sorted
+ * array. Most elements are rejected by a single comparison with the largest kept hash, and on
+ * average only about k ln(n / k) of n elements are inserted into the array, after a binary
+ * search.
+ * <p>
+ * The sketches of two sets, or of two partitions of a set, can be merged into the sketch of
+ * their union, and two sketches estimate the Jaccard similarity, union and intersection sizes
+ * and containment of their sets, with a standard error of about 1 / sqrt(k). Sketches are only
+ * comparable if they have the same k and were built with the same element hasher.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class BottomKSketch {
+
+  /**
+   * Range of the kept hashes, which are shifted to 63 bits so that they can be compared as
+   * signed values
+   */
+  private static final double HASH_RANGE = 0x1p63;
+
+  private final int k;
+
+  /**
+   * The smallest distinct hashes added to this sketch, in ascending order
+   */
+  private final long[] hashes;
+
+  private int size;
+
+
+  /**
+   * Instantiates an empty sketch that keeps the k smallest hashes.
+   */
+  public BottomKSketch(int k) {
+    if (k < 2) {
+      throw new IllegalArgumentException("Sketch size must be at least 2");
+    }
+    this.k = k;
+    this.hashes = new long[k];
+    this.size = 0;
+  }
+
+
+  /**
+   * Returns the sketch of the specified set with the k smallest hashes of its elements, which
+   * are hashed with {@link ElementHasher#hash(Object)}.
+   */
+  public static BottomKSketch of(Collection<?> c, int k) {
+    BottomKSketch sketch = new BottomKSketch(k);
+    sketch.addAll(c);
+    return sketch;
+  }
+
+
+  public int getK() {
+    return k;
+  }
+
+
+  /**
+   * Returns the number of hashes kept in this sketch, which is k unless fewer than k distinct
+   * elements were added.
+   */
+  public int size() {
+    return size;
+  }
+
+
+  /**
+   * Adds the specified element to this sketch, hashed with {@link ElementHasher#hash(Object)}.
+   */
+  public void add(Object element) {
+    addHash(ElementHasher.hash(element));
+  }
+
+
+  public void addAll(Collection<?> c) {
+    for (Object element : c) {
+      add(element);
+    }
+  }
+
+
+  /**
+   * Adds an element to this sketch by its 64-bit hash, which must be uniformly distributed.
+   */
+  public void addHash(long hash) {
+    long h = hash >>> 1;
+    if (size == k && h >= hashes[k - 1]) {
+      return;
+    }
+    int i = Arrays.binarySearch(hashes, 0, size, h);
+    if (i >= 0) {
+      return;
+    }
+    i = -i - 1;
+    int moved = Math.min(size, k - 1) - i;
+    System.arraycopy(hashes, i, hashes, i + 1, moved);
+    hashes[i] = h;
+    if (size < k) {
+      size++;
+    }
+  }
+
+
+  /**
+   * Merges the specified sketch into this sketch, so that this sketch keeps the k smallest
+   * hashes of the union of both sets.
+   *
+   * @return this sketch
+   */
+  public BottomKSketch merge(BottomKSketch other) {
+    checkCompatible(other);
+    long[] merged = new long[k];
+    int count = union(this, other, merged);
+    System.arraycopy(merged, 0, hashes, 0, count);
+    size = count;
+    return this;
+  }
+
+
+  /**
+   * Returns the estimated number of distinct elements added to this sketch, which is exact if
+   * there were fewer than k of them.
+   */
+  public double cardinality() {
+    return cardinality(hashes, size);
+  }
+
+
+  /**
+   * Returns the estimated Jaccard similarity of the sets of this and of the specified sketch,
+   * which is the fraction of the k smallest hashes of their union that are in both sets.
+   */
+  public double jaccard(BottomKSketch other) {
+    checkCompatible(other);
+    long[] union = new long[k];
+    int count = union(this, other, union);
+    if (count == 0) {
+      return 1;
+    }
+    int both = 0;
+    for (int i = 0; i < count; i++) {
+      // a hash among the k smallest of the union is also among the k smallest of each set
+      if (contains(union[i]) && other.contains(union[i])) {
+        both++;
+      }
+    }
+    return (double) both / count;
+  }
+
+
+  /**
+   * Returns the estimated number of distinct elements in the union of the sets of this and of the
+   * specified sketch.
+   */
+  public double unionSize(BottomKSketch other) {
+    checkCompatible(other);
+    long[] union = new long[k];
+    int count = union(this, other, union);
+    return cardinality(union, count);
+  }
+
+
+  /**
+   * Returns the estimated number of distinct elements in the intersection of the sets of this and
+   * of the specified sketch.
+   */
+  public double intersectionSize(BottomKSketch other) {
+    return jaccard(other) * unionSize(other);
+  }
+
+
+  /**
+   * Returns the estimated fraction of the elements of the set of this sketch that are contained
+   * in the set of the specified sketch, |this intersect other| / |this|.
+   */
+  public double containmentIn(BottomKSketch other) {
+    double cardinality = cardinality();
+    if (cardinality == 0) {
+      return 1;
+    }
+    return Math.min(intersectionSize(other) / cardinality, 1);
+  }
+
+
+  private boolean contains(long h) {
+    return Arrays.binarySearch(hashes, 0, size, h) >= 0;
+  }
+
+
+  private void checkCompatible(BottomKSketch other) {
+    if (other.k != k) {
+      throw new IllegalArgumentException("Sketches must have the same size");
+    }
+  }
+
+
+  /**
+   * Writes the k smallest distinct hashes of both sketches into dst, in ascending order, and
+   * returns how many were written.
+   */
+  private static int union(BottomKSketch s1, BottomKSketch s2, long[] dst) {
+    int i = 0;
+    int j = 0;
+    int count = 0;
+    while (count < dst.length && (i < s1.size || j < s2.size)) {
+      long h;
+      if (j == s2.size || (i < s1.size && s1.hashes[i] < s2.hashes[j])) {
+        h = s1.hashes[i++];
+      } else if (i == s1.size || s2.hashes[j] < s1.hashes[i]) {
+        h = s2.hashes[j++];
+      } else {
+        h = s1.hashes[i++];
+        j++;
+      }
+      dst[count++] = h;
+    }
+    return count;
+  }
+
+
+  private double cardinality(long[] hashes, int size) {
+    if (size < k) {
+      return size;
+    }
+    // the k-th smallest of n uniform values in [0, 1) is expected at k / (n + 1)
+    return (k - 1) / (hashes[k - 1] / HASH_RANGE);
+  }
+}
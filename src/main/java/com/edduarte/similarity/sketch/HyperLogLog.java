@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edduarte.similarity.sketch;
+
+import com.edduarte.similarity.converter.ElementHasher;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Fixed-size sketch that estimates the number of distinct elements of a stream in a single pass,
+ * following Flajolet et al., "HyperLogLog: the analysis of a near-optimal cardinality estimation
+ * algorithm", with the 64-bit hashes and small range correction of Heule et al., "HyperLogLog in
+ * Practice".
+ * <p>
+ * Every element is hashed to 64 bits, where the first p bits select one of 2^p registers and the
+ * register keeps the longest run of leading zeros seen in the remaining bits. The estimate has a
+ * standard error of about 1.04 / sqrt(2^p), using 2^p bytes. Sketches with the same precision
+ * can be merged to estimate the size of the union of their streams.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class HyperLogLog {
+
+  public static final int DEFAULT_PRECISION = 14;
+
+  /**
+   * Cardinalities below which linear counting is used, for precisions 4 to 18
+   */
+  private static final int[] THRESHOLDS = {
+      10, 20, 40, 80, 220, 400, 900, 1800, 3100, 6500, 11500, 20000, 50000, 120000, 350000
+  };
+
+  /**
+   * Combined size of two collections up to which {@link #unionSize} counts their distinct elements
+   * exactly, which is faster than filling and scanning the registers of a sketch
+   */
+  static final int EXACT_UNION_LIMIT = 1 << 13;
+
+  private final int p;
+
+  private final byte[] registers;
+
+
+  /**
+   * Instantiates an empty sketch with 2^14 registers, with a standard error of about 0.8%.
+   */
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+
+  /**
+   * Instantiates an empty sketch with 2^p registers.
+   *
+   * @param p the precision, between 4 and 18
+   */
+  public HyperLogLog(int p) {
+    if (p < 4 || p > 18) {
+      throw new IllegalArgumentException("Precision must be between 4 and 18");
+    }
+    this.p = p;
+    this.registers = new byte[1 << p];
+  }
+
+
+  /**
+   * Returns the estimated number of distinct elements in the union of the specified sets, in a
+   * single pass over both sets. The number is exact when both sets have up to 8192 elements
+   * combined.
+   */
+  public static long unionSize(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2) {
+    long size = (long) c1.size() + c2.size();
+    if (size <= EXACT_UNION_LIMIT) {
+      return exactUnionSize(c1, c2, (int) size);
+    }
+    HyperLogLog sketch = new HyperLogLog();
+    sketch.addAll(c1);
+    sketch.addAll(c2);
+    return sketch.cardinality();
+  }
+
+
+  public int getPrecision() {
+    return p;
+  }
+
+
+  /**
+   * Adds the specified number to this sketch, where numbers are equal if they have the same hash
+   * with {@link ElementHasher#hash}, so that 2, 2L and 2.0 are the same element.
+   */
+  public void add(Number number) {
+    addHash(ElementHasher.hash(number));
+  }
+
+
+  public void addAll(Collection<? extends Number> c) {
+    for (Number number : c) {
+      add(number);
+    }
+  }
+
+
+  /**
+   * Adds an element to this sketch by its 64-bit hash, which must be uniformly distributed.
+   */
+  public void addHash(long hash) {
+    int index = (int) (hash >>> (64 - p));
+    // the sentinel bit bounds the rank when the remaining bits are all zeros
+    int rank = Long.numberOfLeadingZeros((hash << p) | (1L << (p - 1))) + 1;
+    if (rank > registers[index]) {
+      registers[index] = (byte) rank;
+    }
+  }
+
+
+  /**
+   * Merges the registers of the specified sketch into this sketch, so that this sketch estimates
+   * the size of the union of both streams.
+   *
+   * @return this sketch
+   */
+  public HyperLogLog merge(HyperLogLog other) {
+    if (other.p != p) {
+      throw new IllegalArgumentException("Sketches must have the same precision");
+    }
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+    return this;
+  }
+
+
+  /**
+   * Returns the estimated number of distinct elements added to this sketch.
+   */
+  public long cardinality() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double estimate = alpha(m) * m * m / sum;
+    if (zeros > 0) {
+      // linear counting is more accurate while there are empty registers, up to the threshold
+      // determined empirically in "HyperLogLog in Practice"
+      double linear = m * Math.log((double) m / zeros);
+      if (linear <= THRESHOLDS[p - 4]) {
+        return Math.round(linear);
+      }
+    }
+    return Math.round(estimate);
+  }
+
+
+  /**
+   * Counts the distinct hashes of the elements of both collections in an open-addressing table
+   * with at least twice as many slots as elements. The hash of integral numbers is a bijection of
+   * their value, so equal hashes mean equal elements, except for a fractional number and the long
+   * with the same bits, which the sketch does not tell apart either.
+   */
+  private static long exactUnionSize(
+      Collection<? extends Number> c1,
+      Collection<? extends Number> c2,
+      int size) {
+    long[] table = new long[Integer.highestOneBit(Math.max(size, 1)) << 2];
+    int mask = table.length - 1;
+    // 0 marks empty slots, so the element with hash 0 is counted apart
+    boolean zero = false;
+    long distinct = 0;
+    for (Collection<? extends Number> c : Arrays.asList(c1, c2)) {
+      for (Number number : c) {
+        long hash = ElementHasher.hash(number);
+        if (hash == 0) {
+          if (!zero) {
+            zero = true;
+            distinct++;
+          }
+          continue;
+        }
+        int slot = (int) hash & mask;
+        while (table[slot] != 0 && table[slot] != hash) {
+          slot = (slot + 1) & mask;
+        }
+        if (table[slot] == 0) {
+          table[slot] = hash;
+          distinct++;
+        }
+      }
+    }
+    return distinct;
+  }
+
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / m);
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Eduardo Duarte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.edduarte.similarity.sketch;
+
+import com.edduarte.similarity.converter.ElementHasher;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of the shingles of a document, prepared once so that it can be compared with
+ * many other documents by exact Jaccard similarity without shingling it again. Every distinct
+ * shingle is kept as a 64-bit hash in a sorted array, so that two documents are compared with a
+ * single linear merge of their arrays, which neither allocates nor boxes.
+ * <p>
+ * Results are exact for the sets of shingles, up to collisions of their 64-bit hashes, which
+ * are negligible for documents below billions of shingles.
+ *
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public final class PreparedDocument {
+
+  /**
+   * The distinct hashes of the shingles of this document, in ascending order
+   */
+  private final long[] hashes;
+
+
+  private PreparedDocument(long[] hashes) {
+    this.hashes = hashes;
+  }
+
+
+  /**
+   * Returns the prepared document with the specified shingles, which are hashed with
+   * {@link ElementHasher#hash(Object)}.
+   */
+  public static PreparedDocument of(List<? extends CharSequence> shingles) {
+    long[] hashes = new long[shingles.size()];
+    int i = 0;
+    for (CharSequence shingle : shingles) {
+      hashes[i++] = ElementHasher.hash(shingle);
+    }
+    Arrays.sort(hashes);
+
+    int size = 0;
+    for (i = 0; i < hashes.length; i++) {
+      if (size == 0 || hashes[i] != hashes[size - 1]) {
+        hashes[size++] = hashes[i];
+      }
+    }
+    return new PreparedDocument(size == hashes.length ? hashes : Arrays.copyOf(hashes, size));
+  }
+
+
+  /**
+   * Returns the number of distinct shingles in this document.
+   */
+  public int size() {
+    return hashes.length;
+  }
+
+
+  /**
+   * Returns the number of distinct shingles that are in both this and the specified document.
+   */
+  public int intersectionSize(PreparedDocument other) {
+    long[] hashes1 = hashes;
+    long[] hashes2 = other.hashes;
+    int i = 0;
+    int j = 0;
+    int intersection = 0;
+    while (i < hashes1.length && j < hashes2.length) {
+      long h1 = hashes1[i];
+      long h2 = hashes2[j];
+      if (h1 == h2) {
+        intersection++;
+        i++;
+        j++;
+      } else if (h1 < h2) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return intersection;
+  }
+
+
+  /**
+   * Returns the Jaccard similarity of the sets of shingles of this and of the specified document,
+   * or 1 if both are empty.
+   */
+  public double jaccard(PreparedDocument other) {
+    int intersection = intersectionSize(other);
+    int union = hashes.length + other.hashes.length - intersection;
+    return union == 0 ? 1 : (double) intersection / union;
+  }
+
+
+  /**
+   * Returns true if the Jaccard similarity of this and of the specified document is equal or above
+   * the specified threshold. The merge stops as soon as the outcome is decided, and is skipped
+   * when the sizes of both documents alone rule the threshold out, as the similarity can never be
+   * above the ratio of the smallest to the largest size.
+   */
+  public boolean jaccardAtLeast(PreparedDocument other, double threshold) {
+    long[] hashes1 = hashes;
+    long[] hashes2 = other.hashes;
+    int n1 = hashes1.length;
+    int n2 = hashes2.length;
+    if (n1 + n2 == 0) {
+      return 1 >= threshold;
+    } else if ((double) Math.min(n1, n2) / Math.max(n1, n2) < threshold) {
+      return false;
+    }
+
+    // the similarity grows with the intersection, which is at least the hashes matched so far,
+    // and at most those plus the hashes left in the array with fewer of them
+    int i = 0;
+    int j = 0;
+    int intersection = 0;
+    while (i < n1 && j < n2) {
+      long h1 = hashes1[i];
+      long h2 = hashes2[j];
+      if (h1 == h2) {
+        intersection++;
+        i++;
+        j++;
+        if ((double) intersection / (n1 + n2 - intersection) >= threshold) {
+          return true;
+        }
+      } else {
+        if (h1 < h2) {
+          i++;
+        } else {
+          j++;
+        }
+        int left = Math.min(n1 - i, n2 - j);
+        int maxIntersection = intersection + left;
+        if ((double) maxIntersection / (n1 + n2 - maxIntersection) < threshold) {
+          return false;
+        }
+      }
+    }
+    return (double) intersection / (n1 + n2 - intersection) >= threshold;
+  }
+
+
+  /**
+   * Returns the fraction of the shingles of this document that are also in the specified
+   * document, |this intersect other| / |this|, or 1 if this document is empty.
+   */
+  public double containmentIn(PreparedDocument other) {
+    if (hashes.length == 0) {
+      return 1;
+    }
+    return (double) intersectionSize(other) / hashes.length;
+  }
+
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return Arrays.equals(hashes, ((PreparedDocument) o).hashes);
+  }
+
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(hashes);
+  }
+}
@@ -0,0 +1,67 @@
+package com.edduarte.similarity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void bucketBoundariesTest() {
+    // values below 128 have a bucket of their own
+    for (long value = 0; value < 128; value++) {
+      assertEquals(value, LatencyHistogram.bucketOf(value));
+      assertEquals(value, LatencyHistogram.highestValueOf((int) value));
+    }
+
+    // from 128, every power of two range is split in 64 buckets, so
+    // [128, 256) has buckets of 2 values and [256, 512) of 4 values
+    assertEquals(128, LatencyHistogram.bucketOf(128));
+    assertEquals(128, LatencyHistogram.bucketOf(129));
+    assertEquals(129, LatencyHistogram.bucketOf(130));
+    assertEquals(129, LatencyHistogram.highestValueOf(128));
+    assertEquals(255, LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(255)));
+    assertEquals(192, LatencyHistogram.bucketOf(256));
+    assertEquals(259, LatencyHistogram.highestValueOf(192));
+
+    // the last bucket holds the highest long
+    int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+    assertEquals(3711, last);
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(last));
+  }
+
+
+  @Test
+  public void bucketRangesTest() {
+    // every bucket starts right after the highest value of the previous
+    // one, and has a width below 1/64 of its values
+    for (int bucket = 1; bucket < 3712; bucket++) {
+      long lowest = LatencyHistogram.highestValueOf(bucket - 1) + 1;
+      long highest = LatencyHistogram.highestValueOf(bucket);
+      assertEquals(bucket, LatencyHistogram.bucketOf(lowest));
+      assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+      assertTrue(highest - lowest <= lowest / 64);
+    }
+  }
+
+
+  @Test
+  public void percentileTest() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    for (long value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+    histogram.record(-1);
+    assertEquals(101, histogram.getCount());
+    assertEquals(100, histogram.getMax());
+    assertEquals(50, histogram.getValueAtPercentile(50));
+    assertEquals(100, histogram.getValueAtPercentile(100));
+  }
+}
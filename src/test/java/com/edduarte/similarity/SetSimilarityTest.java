@@ -1,15 +1,24 @@
 package com.edduarte.similarity;
 
+import com.edduarte.similarity.converter.SetToSignatureConverter;
+import com.edduarte.similarity.join.JoinPair;
+import com.edduarte.similarity.signature.HeapSignatureMatrix;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -68,6 +77,47 @@ public class SetSimilarityTest {
   }
 
 
+  @Test
+  public void containmentTest() {
+    JaccardFactory s = Similarity.jaccard().withExecutor(executorService);
+
+    assertEquals(1.0, s.containmentOf(c1, c2), 0);
+    assertEquals(8.0 / 9.0, s.containmentOf(c1, c3), 0);
+    assertEquals(0.8, s.containmentOf(c3, c1), 0);
+    assertEquals(1.0, s.containmentOf(Arrays.asList(1, 2, 3), c1), 0);
+  }
+
+
+  @Test
+  public void signParallelTest() throws Exception {
+    List<Integer> set = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      set.add(i * 3);
+    }
+    SetToSignatureConverter c = new SetToSignatureConverter(300000, 100);
+    assertArrayEquals(c.apply(set).call(), c.signParallel(set, ForkJoinPool.commonPool()));
+
+    // the factories sign sets of this size in parallel on a fork/join pool
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      assertArrayEquals(c.apply(set).call(), pool.submit(c.apply(set, pool)).get());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+
+  @Test
+  public void signAllTest() {
+    HeapSignatureMatrix matrix = Similarity.minhash()
+        .withSignatureSize(200)
+        .signAll(Stream.of(c1, c2, c3, c4));
+    assertEquals(4, matrix.size());
+    assertArrayEquals(matrix.getRow(0), matrix.getRow(1));
+    assertEquals(0.495, Similarity.signatureIndex(matrix.getRow(0), matrix.getRow(2)), 0.3);
+  }
+
+
   @Test
   public void minHashTest() {
     // for min-hash indexes, which generates signatures for universal hashes
@@ -84,6 +134,36 @@ public class SetSimilarityTest {
   }
 
 
+  @Test
+  public void objectSetTest() {
+    MinHashFactory s = Similarity.minhash()
+        .withSignatureSize(200)
+        .withExecutor(executorService);
+
+    // string ids need no mapping to numbers, and elements that are equal
+    // but of different types (or orders) have the same hash
+    List<String> ids1 = Arrays.asList("a1", "b2", "c3", "d4", "e5", "f6");
+    List<StringBuilder> ids2 = new ArrayList<>();
+    for (String id : Arrays.asList("f6", "e5", "d4", "c3", "b2", "a1")) {
+      ids2.add(new StringBuilder(id));
+    }
+    assertEquals(1.0, s.ofObjects(ids1, ids2), 0);
+    assertEquals(1.0, s.ofObjects(c1, Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8.0)), 0);
+
+    // fractional parts are not dropped, so these sets are disjoint
+    assertEquals(0.0, s.ofObjects(
+        Arrays.asList(0.1, 1.1, 2.1, 3.1), Arrays.asList(0.2, 1.2, 2.2, 3.2)), 0.05);
+
+    List<UUID> uuids = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      uuids.add(new UUID(i, i * 31));
+    }
+    assertEquals(0.5, s.ofObjects(uuids.subList(0, 75), uuids.subList(25, 100)), 0.15);
+    assertEquals(5.0 / 6.0, s.ofObjects(ids1, Arrays.asList("a1", "b2", "c3", "d4", "e5"),
+        id -> id.charAt(1)), 0.15);
+  }
+
+
   @Test
   public void lshTest() {
     // for lsh indexes, which determined candidate pairs but produces
@@ -117,4 +197,22 @@ public class SetSimilarityTest {
 
 
   }
+
+
+  @Test
+  public void jaccardJoinTest() {
+    // the join must return exactly the pairs from "jaccardTest" with an
+    // index equal or above the threshold
+    JaccardFactory s = Similarity.jaccard().withExecutor(executorService);
+    List<Collection<Integer>> sets = Arrays.asList(c1, c2, c3, c4);
+
+    assertEquals(Arrays.asList(
+        new JoinPair(0, 1, 1.0),
+        new JoinPair(0, 2, 0.7272727272727273),
+        new JoinPair(1, 2, 0.7272727272727273)
+    ), s.join(sets, 0.7));
+
+    assertEquals(6, s.join(sets, 0.5).size());
+    assertEquals(1, s.join(sets, 1.0).size());
+  }
 }
@@ -1,15 +1,37 @@
 package com.edduarte.similarity;
 
+import com.edduarte.similarity.converter.KShingler;
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.WordShingler;
+import com.edduarte.similarity.impl.LSHStringSimilarity;
+import com.edduarte.similarity.impl.MinHashStringSimilarity;
+import com.edduarte.similarity.index.ConcurrentLSHIndex;
+import com.edduarte.similarity.index.LSHIndex;
+import com.edduarte.similarity.index.ShardedLSHIndex;
+import com.edduarte.similarity.signature.HeapSignatureMatrix;
+import orestes.bloomfilter.HashProvider.HashMethod;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
@@ -77,6 +99,58 @@ public class StringSimilarityTest {
   }
 
 
+  @Test
+  public void jaccardWordShinglesTest() {
+    // word shingles ignore punctuation and case, so s4 becomes an exact
+    // copy of s1
+    JaccardFactory s = Similarity.jaccard()
+        .withWordShingleLength(2)
+        .withExecutor(executorService);
+    assertEquals(1.0, s.of(s1, s2), 0);
+    assertEquals(0.75, s.of(s1, s3), 0);
+    assertEquals(1.0, s.of(s1, s4), 0);
+    assertEquals(0.75, s.of(s3, s4), 0);
+  }
+
+
+  @Test
+  public void wordShinglesNormalizationTest() throws Exception {
+    // decomposed and composed accents, and compatibility characters, are the
+    // same tokens once normalized
+    WordShingler shingler = new WordShingler(2);
+    String composed = "Caf\u00e9 na\u00efve x2";
+    String decomposed = "Cafe\u0301 nai\u0308ve x\u00b2";
+    List<CharSequence> expected = Arrays.asList("caf\u00e9 na\u00efve", "na\u00efve x2");
+    assertEquals(expected, shingler.apply(composed).call());
+    assertEquals(expected, shingler.apply(decomposed).call());
+    assertEquals(
+        shingler.apply(Normalizer.normalize(s3, Normalizer.Form.NFD)).call(),
+        shingler.apply(s3).call());
+  }
+
+
+  @Test
+  public void preparedTest() throws Exception {
+    // prepared documents compare the sets of shingles of both strings
+    JaccardFactory s = Similarity.jaccard().withShingleLength(3);
+    String[] strings = {s1, s2, s3, s4};
+    for (String a : strings) {
+      for (String b : strings) {
+        List<CharSequence> shingles1 = new KShingler(3).apply(a).call();
+        List<CharSequence> shingles2 = new KShingler(3).apply(b).call();
+        Set<CharSequence> union = new HashSet<>(shingles1);
+        union.addAll(shingles2);
+        Set<CharSequence> intersection = new HashSet<>(shingles1);
+        intersection.retainAll(shingles2);
+        double expected = (double) intersection.size() / union.size();
+
+        assertEquals(expected, s.prepare(a).jaccard(s.prepare(b)), 0);
+      }
+    }
+    assertEquals(s.prepare(s1), s.prepare(s2));
+  }
+
+
   @Test
   public void minHashTest() {
     // for min-hash indexes, which generates signatures for universal hashes
@@ -94,6 +168,194 @@ public class StringSimilarityTest {
   }
 
 
+  @Test
+  public void thresholdTest() {
+    // comparisons that stop as soon as the outcome is decided must always
+    // agree with comparing the full score with the threshold
+    Random random = new Random(42);
+    for (int i = 0; i < 200; i++) {
+      int[] signature1 = random.ints(100, 0, 3).toArray();
+      int[] signature2 = random.ints(100, 0, 3).toArray();
+      List<Integer> r1 = new ArrayList<>();
+      List<Integer> r2 = new ArrayList<>();
+      for (int j = random.nextInt(20); j > 0; j--) {
+        r1.add(random.nextInt(2));
+        r2.add(random.nextInt(3));
+      }
+      List<CharSequence> shingles1 = new ArrayList<>();
+      List<CharSequence> shingles2 = new ArrayList<>();
+      for (int j = random.nextInt(20); j > 0; j--) {
+        shingles1.add(Integer.toString(random.nextInt(10)));
+      }
+      for (int j = random.nextInt(20); j > 0; j--) {
+        shingles2.add(Integer.toString(random.nextInt(15)));
+      }
+      for (double t = 0; t <= 1; t += 0.05) {
+        assertEquals(Similarity.signatureIndex(signature1, signature2) >= t,
+            Similarity.signatureIndexAtLeast(signature1, signature2, t));
+        assertEquals(Similarity.jaccardIndexFromR(r1, r2) >= t,
+            Similarity.jaccardIndexFromRAtLeast(r1, r2, t));
+        assertEquals(Similarity.jaccardIndexFromShingles(shingles1, shingles2) >= t,
+            Similarity.jaccardIndexFromShinglesAtLeast(shingles1, shingles2, t));
+      }
+    }
+
+    assertTrue(new MinHashStringSimilarity(s1, s2, 2, 100, HashMethod.Murmur3, executorService)
+        .getAsBoolean());
+    for (String s : Arrays.asList(s2, s3, s4)) {
+      LSHStringSimilarity lsh = new LSHStringSimilarity(
+          s1, s, 3, 20, 5, 0.7, HashMethod.Murmur3, executorService);
+      assertEquals(lsh.getAsDouble() >= 0.7, lsh.getAsBoolean());
+    }
+  }
+
+
+  @Test
+  public void adaptiveTest() throws Exception {
+    // exact jaccard is cheaper for small inputs and grows quadratically in
+    // this model, while minhash starts slower but grows linearly, so they
+    // cross at 10000 characters
+    double[][] nanos = {{1000, 100000}, {100000, 1000000}};
+    int[] sizes = {100, 1000};
+    AdaptiveFactory.CostModel model = new AdaptiveFactory.CostModel(sizes, nanos);
+    AdaptiveFactory s = new AdaptiveFactory(model, model).withExecutor(executorService);
+    double jaccard = shingleSetJaccard(s1, s3, 2);
+    assertEquals(AdaptiveFactory.Engine.JACCARD, s.engineFor(s1, s3));
+    assertEquals(jaccard, s.of(s1, s3), 0);
+    AdaptiveFactory.Result result = s.compare(s1, s3);
+    assertEquals(jaccard, result.getSimilarity(), 0);
+    assertEquals(AdaptiveFactory.Engine.JACCARD, result.getEngine());
+
+    StringBuilder large = new StringBuilder();
+    while (large.length() < 20000) {
+      large.append(s1);
+    }
+    assertEquals(AdaptiveFactory.Engine.MINHASH, s.engineFor(large.toString(), s2));
+    result = s.compare(large.toString(), large.toString());
+    assertEquals(1.0, result.getSimilarity(), 0);
+    assertEquals(AdaptiveFactory.Engine.MINHASH, result.getEngine());
+
+    // noisy timings must never make a cost decrease with the size, and
+    // extrapolated costs grow at least linearly
+    double[][] noisy = {{5000, 1000, 2000}, {1000, 1000, 1000}};
+    model = new AdaptiveFactory.CostModel(new int[] {100, 1000, 10000}, noisy);
+    for (AdaptiveFactory.Engine engine : AdaptiveFactory.Engine.values()) {
+      double previous = 0;
+      for (long size = 10; size <= 1000000; size *= 10) {
+        double cost = model.cost(engine, size);
+        assertTrue(cost >= previous);
+        previous = cost;
+      }
+      assertEquals(100 * model.cost(engine, 10000), model.cost(engine, 1000000), 1e-6);
+    }
+
+    // an uncalibrated factory compares with the exact engine right away,
+    // while it calibrates in the background
+    result = Similarity.adaptive().withExecutor(executorService).compare(s1, s3);
+    assertEquals(AdaptiveFactory.Engine.JACCARD, result.getEngine());
+    assertEquals(jaccard, result.getSimilarity(), 0);
+
+    // whichever engine a calibrated factory picks, it must return the
+    // jaccard index of the shingle sets, exactly or within the minhash error
+    AdaptiveFactory calibrated = Similarity.adaptive()
+        .withShingleLength(3)
+        .withExecutor(executorService)
+        .calibrate();
+    assertEquals(1.0, calibrated.of(s1, s2), 0);
+    assertEquals(shingleSetJaccard(s1, s3, 3), calibrated.of(s1, s3), 0.1);
+  }
+
+
+  private static double shingleSetJaccard(String a, String b, int k) throws Exception {
+    Set<CharSequence> union = new HashSet<>(new KShingler(k).apply(a).call());
+    Set<CharSequence> intersection = new HashSet<>(union);
+    List<CharSequence> shingles = new KShingler(k).apply(b).call();
+    union.addAll(shingles);
+    intersection.retainAll(shingles);
+    return (double) intersection.size() / union.size();
+  }
+
+
+  @Test
+  public void minHashPermutationTest() {
+    // signatures derived from a single hash per shingle must estimate the
+    // same indexes as signatures computed with a hash method
+    MinHashFactory s = Similarity.minhash()
+        .withShingleLength(3)
+        .withSignatureSize(200)
+        .withPermutationHashing(42)
+        .withExecutor(executorService);
+    assertEquals(1.0, s.of(s1, s2), 0);
+    assertEquals(0.535, s.of(s1, s3), 0.2);
+    assertEquals(0.535, s.of(s2, s3), 0.2);
+    assertEquals(0.925, s.of(s1, s4), 0.2);
+    assertEquals(0.925, s.of(s2, s4), 0.2);
+    assertEquals(0.495, s.of(s3, s4), 0.2);
+  }
+
+
+  @Test
+  public void signIntoArrayTest() throws Exception {
+    // signing into a reused array must produce the same signatures as
+    // signing into a new array, with both hash methods and permutations
+    List<CharSequence> shingles1 = new KShingler(3).apply(s1).call();
+    List<CharSequence> shingles3 = new KShingler(3).apply(s3).call();
+    KShinglesToSignatureConverter[] converters = {
+        new KShinglesToSignatureConverter(HashMethod.Murmur3, 100),
+        new KShinglesToSignatureConverter(100, 42)
+    };
+    int[] signature = new int[100];
+    for (KShinglesToSignatureConverter c : converters) {
+      assertArrayEquals(c.apply(shingles1).call(), c.sign(shingles1, signature));
+      assertArrayEquals(c.apply(shingles3).call(), c.sign(shingles3, signature));
+    }
+  }
+
+
+  @Test
+  public void signParallelTest() throws Exception {
+    // a document large enough to be split in several chunks must have the
+    // same signature when its chunks are signed in parallel
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      sb.append(i % 2 == 0 ? s1 : s3).append(i);
+    }
+    List<CharSequence> shingles = new KShingler(5).apply(sb).call();
+    KShinglesToSignatureConverter c = new KShinglesToSignatureConverter(100, 42);
+    assertArrayEquals(
+        c.apply(shingles).call(),
+        c.signParallel(shingles, ForkJoinPool.commonPool()));
+
+    // the factories sign documents of this size in parallel on a fork/join pool
+    assertTrue(shingles.size() >= KShinglesToSignatureConverter.PARALLEL_THRESHOLD);
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      assertArrayEquals(c.apply(shingles).call(), pool.submit(c.apply(shingles, pool)).get());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+
+  @Test
+  public void signAllTest() throws Exception {
+    // every row of the bulk matrix must be the signature of the string at
+    // the same position
+    List<String> strings = Arrays.asList(s1, s2, s3, s4);
+    HeapSignatureMatrix matrix = Similarity.minhash()
+        .withShingleLength(3)
+        .withPermutationHashing(42)
+        .signAll(strings);
+    assertEquals(strings.size(), matrix.size());
+
+    KShinglesToSignatureConverter c = new KShinglesToSignatureConverter(100, 42);
+    for (int row = 0; row < strings.size(); row++) {
+      List<CharSequence> shingles = new KShingler(3).apply(strings.get(row)).call();
+      assertArrayEquals(c.apply(shingles).call(), matrix.getRow(row));
+    }
+  }
+
+
   @Test
   public void lshTest() {
     // for lsh indexes, which determines candidate pairs but produces
@@ -113,4 +375,77 @@ public class StringSimilarityTest {
     assertEquals(0.9772727272727273, s.of(s2, s4), 0);
     assertEquals(0.6984126984126984, s.of(s3, s4), 0);
   }
+
+
+  @Test
+  public void lshIndexTest() throws Exception {
+    // the factory signer matches the signature size and hash family of the
+    // factory indexes, so an indexed string is found by its own signature
+    // and by the signature of its exact copy
+    LSHFactory s = Similarity.lsh()
+        .withShingleLength(3)
+        .withPermutationHashing(42)
+        .withExecutor(executorService);
+    KShinglesToSignatureConverter signer = s.signer();
+    assertEquals(42, signer.getSeed());
+    assertEquals(null, signer.getHashMethod());
+
+    LSHIndex index = s.index();
+    ConcurrentLSHIndex concurrentIndex = s.concurrentIndex();
+    ShardedLSHIndex shardedIndex = s.shardedIndex(4);
+    assertEquals(index.getSignatureSize(), signer.getSignatureSize());
+    assertEquals(concurrentIndex.getSignatureSize(), signer.getSignatureSize());
+    assertEquals(shardedIndex.getSignatureSize(), signer.getSignatureSize());
+
+    List<String> strings = Arrays.asList(s1, s3);
+    for (int i = 0; i < strings.size(); i++) {
+      int[] signature = s.sign(strings.get(i));
+      assertArrayEquals(signature, signer.apply(new KShingler(3).apply(strings.get(i)).call())
+          .call());
+      index.add(i, signature);
+      concurrentIndex.add(i, signature);
+      shardedIndex.add(i, signature);
+    }
+    int[] query = s.sign(s2);
+    assertEquals(0, index.query(query, 1).get(0).getId());
+    assertEquals(0, concurrentIndex.query(query, 1).get(0).getId());
+    assertEquals(0, shardedIndex.query(query, 1).get(0).getId());
+  }
+
+
+  @Test
+  public void simHashTest() {
+    // simhash fingerprints are deterministic for the same seed, and
+    // near-duplicates differ in fewer bits than different strings
+    SimHashFactory s = Similarity.simhash()
+        .withShingleLength(3)
+        .withExecutor(executorService);
+
+    assertEquals(1.0, s.of(s1, s2), 0);
+    assertEquals(s.fingerprint(s1), s.fingerprint(s2));
+    assertTrue(s.of(s1, s4) > s.of(s1, s3));
+  }
+
+
+  @Test
+  public void dedupFilterTest() {
+    // s2 is an exact copy of s1 and s4 is a near-duplicate of it, so only
+    // the first occurrence of that cluster and s3 should be kept
+    List<String> kept = Arrays.asList(s1, s2, s3, s4).stream()
+        .filter(Similarity.lsh().withShingleLength(3).dedupFilter(0.8))
+        .collect(Collectors.toList());
+    assertEquals(Arrays.asList(s1, s3), kept);
+
+    // on a parallel stream, exactly one string of each cluster is kept
+    List<String> corpus = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      corpus.add(s1);
+      corpus.add(s3);
+    }
+    Collections.shuffle(corpus);
+    long count = corpus.parallelStream()
+        .filter(Similarity.lsh().withShingleLength(3).dedupFilter(0.8))
+        .count();
+    assertEquals(2, count);
+  }
 }
@@ -0,0 +1,588 @@
+package com.edduarte.similarity.index;
+
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.signature.OffHeapSignatureMatrix;
+import orestes.bloomfilter.HashProvider.HashMethod;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class LSHIndexTest {
+
+  private static final int BANDS = 20;
+
+  private static final int SIGNATURE_SIZE = 100;
+
+  private static ExecutorService executorService;
+
+  private static int[][] signatures;
+
+
+  @BeforeClass
+  public static void setUp() {
+    int maxThreads = Runtime.getRuntime().availableProcessors() - 1;
+    maxThreads = maxThreads > 0 ? maxThreads : 1;
+    executorService = Executors.newFixedThreadPool(maxThreads);
+
+    // random signatures, where every odd signature is a near-duplicate of
+    // the even signature before it (only its first slot differs)
+    Random random = new Random(42);
+    signatures = new int[1000][];
+    for (int i = 0; i < signatures.length; i += 2) {
+      signatures[i] = random.ints(SIGNATURE_SIZE).toArray();
+      signatures[i + 1] = signatures[i].clone();
+      signatures[i + 1][0]++;
+    }
+  }
+
+
+  @AfterClass
+  public static void shutdown() {
+    executorService.shutdown();
+    try {
+      executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    } catch (InterruptedException ex) {
+      String m = "There was a problem executing the processing tasks.";
+      throw new RuntimeException(m, ex);
+    }
+  }
+
+
+  @Test
+  public void shardedQueryTest() {
+    ShardedLSHIndex index = new ShardedLSHIndex(8, BANDS, SIGNATURE_SIZE, executorService);
+    for (int i = 0; i < signatures.length; i++) {
+      index.add(i, signatures[i]);
+    }
+    assertEquals(signatures.length, index.size());
+
+    List<Match> matches = index.query(signatures[10], 10);
+    assertEquals(2, matches.size());
+    assertEquals(new Match(10, 1.0), matches.get(0));
+    assertEquals(new Match(11, 0.99), matches.get(1));
+  }
+
+
+  @Test
+  public void shardSnapshotTest() throws IOException {
+    ShardedLSHIndex source = new ShardedLSHIndex(4, BANDS, SIGNATURE_SIZE, executorService);
+    ShardedLSHIndex target = new ShardedLSHIndex(4, BANDS, SIGNATURE_SIZE, executorService);
+    for (int i = 0; i < signatures.length; i++) {
+      source.add(i, signatures[i]);
+    }
+
+    for (int shard = 0; shard < source.getShardCount(); shard++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      source.writeShard(shard, out);
+      target.readShard(shard, new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    assertEquals(source.size(), target.size());
+    for (int i = 0; i < signatures.length; i += 50) {
+      assertEquals(source.query(signatures[i], 5), target.query(signatures[i], 5));
+      assertTrue(target.query(signatures[i], 5).contains(new Match(i, 1.0)));
+    }
+  }
+
+
+  @Test
+  public void shardSnapshotRoutingTest() throws IOException {
+    ShardedLSHIndex source = new ShardedLSHIndex(4, BANDS, SIGNATURE_SIZE, executorService);
+    ShardedLSHIndex target = new ShardedLSHIndex(4, BANDS, SIGNATURE_SIZE, executorService);
+    for (int i = 0; i < signatures.length; i++) {
+      source.add(i, signatures[i]);
+    }
+
+    // a snapshot of a shard can only replace the same shard, where its documents are routed
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    source.writeShard(0, out);
+    try {
+      target.readShard(1, new ByteArrayInputStream(out.toByteArray()));
+      fail("Snapshot of shard 0 was read into shard 1");
+    } catch (IOException ex) {
+      assertEquals(0, target.size());
+    }
+  }
+
+
+  @Test
+  public void shardSnapshotWriteGateTest() throws Exception {
+    ShardedLSHIndex source = new ShardedLSHIndex(4, BANDS, SIGNATURE_SIZE, executorService);
+    ShardedLSHIndex target = new ShardedLSHIndex(4, BANDS, SIGNATURE_SIZE, executorService);
+    long id = 0;
+    while (source.shardOf(id) != 0 || source.shardOf(id + 1) != 0) {
+      id++;
+    }
+    source.add(id, signatures[0]);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    source.writeShard(0, out);
+
+    // a write to a shard that is being read from a snapshot waits for the new shard instead of
+    // being applied to the discarded one
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    InputStream in = new FilterInputStream(new ByteArrayInputStream(out.toByteArray())) {
+      @Override
+      public int read() throws IOException {
+        awaitRelease();
+        return super.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        awaitRelease();
+        return super.read(b, off, len);
+      }
+
+      private void awaitRelease() throws IOException {
+        reading.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException ex) {
+          throw new IOException(ex);
+        }
+      }
+    };
+    Future<?> read = executorService.submit(() -> {
+      target.readShard(0, in);
+      return null;
+    });
+    reading.await();
+    long writtenId = id + 1;
+    Future<?> write = executorService.submit(() -> target.add(writtenId, signatures[1]));
+    Thread.sleep(100);
+    assertFalse(write.isDone());
+
+    release.countDown();
+    read.get();
+    write.get();
+    assertEquals(2, target.size());
+    assertTrue(target.query(signatures[1], 5).contains(new Match(writtenId, 1.0)));
+  }
+
+
+  @Test
+  public void removeAndCompactTest() throws Exception {
+    LSHIndex index = new LSHIndex(BANDS, SIGNATURE_SIZE);
+    for (int i = 0; i < signatures.length; i++) {
+      index.add(i, signatures[i]);
+    }
+
+    // removed documents are no longer returned, even before a compaction
+    for (int i = 0; i < signatures.length; i += 4) {
+      assertTrue(index.remove(i));
+    }
+    assertFalse(index.remove(0));
+    assertEquals(signatures.length * 3 / 4, index.size());
+    assertEquals(signatures.length / 4, index.getRemovedCount());
+    List<Match> matches = index.query(signatures[8], 10);
+    assertEquals(1, matches.size());
+    assertEquals(new Match(9, 0.99), matches.get(0));
+
+    // an updated document is only found by its new signature
+    index.update(2, signatures[8]);
+    assertEquals(new Match(2, 1.0), index.query(signatures[8], 10).get(0));
+    assertFalse(index.query(signatures[2], 10).contains(new Match(2, 1.0)));
+
+    List<List<Match>> before = new ArrayList<>();
+    for (int i = 0; i < signatures.length; i += 10) {
+      before.add(index.query(signatures[i], 10));
+    }
+    int size = index.size();
+    index.compactAsync(executorService).get();
+    assertEquals(0, index.getRemovedCount());
+    assertEquals(size, index.size());
+    for (int i = 0; i < signatures.length; i += 10) {
+      assertEquals(before.get(i / 10), index.query(signatures[i], 10));
+    }
+  }
+
+
+  @Test
+  public void compactFileBackedTest() throws IOException {
+    // a matrix stored in a file is compacted to a new file next to it, and
+    // the files created by compactions are deleted once they are replaced
+    Path file = Files.createTempFile("signatures", ".bin");
+    Path compacted1 = file.resolveSibling(file.getFileName() + ".1");
+    Path compacted2 = file.resolveSibling(file.getFileName() + ".2");
+    try {
+      LSHIndex index = new LSHIndex(BANDS, new OffHeapSignatureMatrix(SIGNATURE_SIZE, file));
+      for (int i = 0; i < signatures.length; i++) {
+        index.add(i, signatures[i]);
+      }
+      for (int i = 0; i < signatures.length; i += 4) {
+        index.remove(i);
+      }
+      List<Match> before = index.query(signatures[9], 10);
+      index.compact();
+      assertTrue(Files.exists(compacted1));
+      assertEquals(before, index.query(signatures[9], 10));
+
+      index.remove(9);
+      index.compact();
+      assertFalse(Files.exists(compacted1));
+      assertTrue(Files.exists(compacted2));
+      assertEquals(signatures.length * 3 / 4 - 1, index.size());
+      assertEquals(Collections.emptyList(), index.query(signatures[8], 10));
+    } finally {
+      Files.deleteIfExists(compacted2);
+      Files.deleteIfExists(compacted1);
+      Files.deleteIfExists(file);
+    }
+  }
+
+
+  @Test
+  public void concurrentCompactTest() throws Exception {
+    // documents are added, removed and updated while compactions run, and
+    // the index must end up with the same documents as if none had run
+    LSHIndex index = new LSHIndex(BANDS, SIGNATURE_SIZE);
+    Map<Long, int[]> expected = new HashMap<>();
+    for (int i = 0; i < signatures.length / 2; i++) {
+      index.add(i, signatures[i]);
+      expected.put((long) i, signatures[i]);
+    }
+    CountDownLatch done = new CountDownLatch(1);
+    Future<?> compactions = executorService.submit(() -> {
+      while (done.getCount() > 0) {
+        index.compact();
+      }
+      return null;
+    });
+    Random random = new Random(7);
+    for (int i = signatures.length / 2; i < signatures.length; i++) {
+      index.add(i, signatures[i]);
+      expected.put((long) i, signatures[i]);
+      long removed = random.nextInt(i);
+      assertEquals(expected.remove(removed) != null, index.remove(removed));
+      long updated = random.nextInt(i);
+      int[] signature = signatures[random.nextInt(signatures.length)];
+      index.update(updated, signature);
+      expected.put(updated, signature);
+    }
+    done.countDown();
+    compactions.get();
+    index.compact();
+
+    assertEquals(expected.size(), index.size());
+    for (Map.Entry<Long, int[]> entry : expected.entrySet()) {
+      Match match = new Match(entry.getKey(), 1.0);
+      assertTrue(index.query(entry.getValue(), signatures.length).contains(match));
+    }
+  }
+
+
+  @Test
+  public void mappedSnapshotTest() throws IOException {
+    LSHIndex index = new LSHIndex(BANDS, SIGNATURE_SIZE);
+    for (int i = 0; i < signatures.length; i++) {
+      index.add(i, signatures[i]);
+    }
+    for (int i = 0; i < signatures.length; i += 3) {
+      index.remove(i);
+    }
+
+    Path file = Files.createTempFile("index", ".snapshot");
+    try {
+      // the snapshot records the hash family, so that queries signed with
+      // another family are rejected instead of finding no candidates
+      KShinglesToSignatureConverter converter =
+          new KShinglesToSignatureConverter(SIGNATURE_SIZE, 42);
+      index.writeSnapshot(file, converter);
+      MappedLSHIndex mapped = MappedLSHIndex.open(file, converter);
+      assertTrue(mapped.isCompatible(converter));
+      assertFalse(mapped.isCompatible(new KShinglesToSignatureConverter(SIGNATURE_SIZE, 43)));
+      assertFalse(mapped.isCompatible(
+          new KShinglesToSignatureConverter(HashMethod.Murmur3, SIGNATURE_SIZE)));
+      try {
+        MappedLSHIndex.open(file, new KShinglesToSignatureConverter(SIGNATURE_SIZE, 0));
+        fail("Snapshot was opened with another hash family");
+      } catch (IOException ex) {
+        // expected
+      }
+      assertEquals(index.size(), mapped.size());
+      assertFalse(mapped.contains(0));
+      assertTrue(mapped.contains(1));
+      assertArrayEquals(signatures[1], mapped.getSignature(1));
+      for (int i = 0; i < signatures.length; i += 10) {
+        assertEquals(index.query(signatures[i], 5), mapped.query(signatures[i], 5));
+      }
+      assertTrue(mapped.containsSimilar(signatures[2], 0.99));
+      assertFalse(mapped.containsSimilar(signatures[3], 1.0));
+
+      // chunks of 64 bytes, so that every section spans several chunks
+      MappedLSHIndex chunked = MappedLSHIndex.open(file, 64);
+      for (int i = 0; i < signatures.length; i += 10) {
+        assertEquals(mapped.query(signatures[i], 5), chunked.query(signatures[i], 5));
+        assertArrayEquals(mapped.getSignature(i), chunked.getSignature(i));
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+
+  @Test
+  public void concurrentBandTableTest() throws Exception {
+    // writers insert rows into overlapping keys while readers look them up,
+    // and readers must only ever see rows that belong to the key
+    ConcurrentBandTable table = new ConcurrentBandTable();
+    int threads = 8;
+    int rowsPerThread = 20000;
+    int keyCount = 5000;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    ExecutorService exec = Executors.newFixedThreadPool(threads + 2);
+    try {
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        futures.add(exec.submit(() -> {
+          start.await();
+          for (int i = 0; i < rowsPerThread; i++) {
+            int row = thread * rowsPerThread + i;
+            table.put(bandKey(row % keyCount), row);
+          }
+          return null;
+        }));
+      }
+      for (int t = 0; t < 2; t++) {
+        futures.add(exec.submit(() -> {
+          start.await();
+          Random random = new Random();
+          for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(keyCount);
+            table.forEach(bandKey(key), row -> assertEquals(key, row % keyCount));
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      exec.shutdown();
+    }
+
+    for (int key = 0; key < keyCount; key++) {
+      List<Integer> rows = new ArrayList<>();
+      table.forEach(bandKey(key), rows::add);
+      Collections.sort(rows);
+      List<Integer> expected = new ArrayList<>();
+      for (int row = key; row < threads * rowsPerThread; row += keyCount) {
+        expected.add(row);
+      }
+      assertEquals(expected, rows);
+    }
+  }
+
+
+  @Test
+  public void concurrentIndexTest() throws Exception {
+    ConcurrentLSHIndex index = new ConcurrentLSHIndex(BANDS, SIGNATURE_SIZE);
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    ExecutorService exec = Executors.newFixedThreadPool(threads + 1);
+    try {
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        futures.add(exec.submit(() -> {
+          start.await();
+          for (int i = thread; i < signatures.length; i += threads) {
+            index.add(i, signatures[i]);
+          }
+          return null;
+        }));
+      }
+      futures.add(exec.submit(() -> {
+        // queries running during insertions only find exact or near copies
+        start.await();
+        for (int i = 0; i < signatures.length; i++) {
+          for (Match match : index.query(signatures[i], 10)) {
+            assertEquals(i / 2, match.getId() / 2);
+          }
+        }
+        return null;
+      }));
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      exec.shutdown();
+    }
+
+    assertEquals(signatures.length, index.size());
+    for (int i = 0; i < signatures.length; i++) {
+      List<Match> matches = index.query(signatures[i], 10);
+      assertEquals(2, matches.size());
+      assertEquals(new Match(i, 1.0), matches.get(0));
+      assertTrue(index.containsSimilar(signatures[i], 0.99));
+    }
+  }
+
+
+  private static long bandKey(int key) {
+    // keys spread over all stripes, as band keys are
+    return key * 0x9E3779B97F4A7C15L;
+  }
+
+
+  @Test
+  public void clusterTest() {
+    // every odd signature is a near-duplicate of the even signature before
+    // it, so documents must be clustered in pairs, and the assignments
+    // streamed to the listener must end in the same clusters
+    Map<Long, Long> streamed = new HashMap<>();
+    NearDuplicateClusters clusters = new NearDuplicateClusters(
+        BANDS, SIGNATURE_SIZE, 0.9, streamed::put);
+    for (int i = 0; i < signatures.length; i++) {
+      long clusterId = clusters.add(i, signatures[i]);
+      assertEquals(i - i % 2, clusterId);
+    }
+    assertEquals(signatures.length, clusters.size());
+    assertEquals(signatures.length / 2, clusters.clusterCount());
+    assertEquals(clusters.clusters(), streamed);
+
+    // a chain of near-duplicates ends in a single cluster, even when its
+    // ends are not similar (the last link differs in 30 slots of the first)
+    int[] chain = signatures[0].clone();
+    for (int i = 0; i < 30; i++) {
+      chain[10 + i]++;
+      clusters.add(signatures.length + i, chain.clone());
+    }
+    assertEquals(clusters.clusterOf(0), clusters.clusterOf(signatures.length + 29));
+    assertEquals(clusters.clusterOf(1), clusters.clusterOf(signatures.length + 29));
+  }
+
+
+  @Test
+  public void ensembleContainmentTest() throws Exception {
+    // a small query set that is fully contained in a much larger set, which
+    // has a Jaccard index of only 0.25 with it, and a disjoint set
+    KShinglesToSignatureConverter converter = new KShinglesToSignatureConverter(128, 42L);
+    LSHEnsemble index = new LSHEnsemble(128, 8);
+    index.add(1, converter.apply(elements(0, 200)).call(), 200);
+    index.add(2, converter.apply(elements(1000, 1050)).call(), 50);
+
+    List<Match> matches = index.query(converter.apply(elements(0, 50)).call(), 50, 0.8);
+    assertFalse(matches.isEmpty());
+    assertEquals(1, matches.get(0).getId());
+    assertTrue(matches.get(0).getSimilarity() > 0.5);
+    assertTrue(matches.stream().noneMatch(m -> m.getId() == 2));
+  }
+
+
+  @Test
+  public void simHashIndexTest() {
+    // by default, a distance of 3 bits splits fingerprints in 6 blocks,
+    // which gives C(6, 3) = 20 tables with 32-bit prefixes
+    SimHashIndex index = new SimHashIndex(3);
+    assertEquals(6, index.getBlockCount());
+    assertEquals(20, index.getTableCount());
+    assertSimHashQueries(index);
+
+    // k + 1 blocks keep one table per block
+    index = new SimHashIndex(3, 4);
+    assertEquals(4, index.getTableCount());
+    long[] fingerprints = assertSimHashQueries(index);
+
+    // a document added again with the same id and fingerprint is rejected,
+    // whether it is still in the buffer or already sorted into the tables
+    index.add(-1, 0L);
+    try {
+      index.add(-1, 0L);
+      throw new AssertionError("A duplicate document must be rejected");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+    try {
+      index.add(7, fingerprints[7]);
+      throw new AssertionError("A duplicate document must be rejected");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+    assertEquals(fingerprints.length + 1, index.size());
+  }
+
+
+  private static long[] assertSimHashQueries(SimHashIndex index) {
+    // fingerprints with up to 5 flipped bits of a few base fingerprints, so
+    // that the index must return exactly what a linear scan returns, both
+    // while documents are added and once all of them were
+    Random random = new Random(42);
+    long[] bases = random.longs(20).toArray();
+    long[] fingerprints = new long[2000];
+    for (int i = 0; i < fingerprints.length; i++) {
+      long fingerprint = bases[i % bases.length];
+      for (int flips = random.nextInt(6); flips > 0; flips--) {
+        fingerprint ^= 1L << random.nextInt(64);
+      }
+      fingerprints[i] = fingerprint;
+      index.add(i, fingerprint);
+      if (i % 97 == 0) {
+        long base = bases[random.nextInt(bases.length)];
+        assertEquals(linearScan(fingerprints, i + 1, base), index.query(base));
+      }
+    }
+    assertEquals(fingerprints.length, index.size());
+
+    for (long base : bases) {
+      assertEquals(linearScan(fingerprints, fingerprints.length, base), index.query(base));
+    }
+    return fingerprints;
+  }
+
+
+  private static List<Match> linearScan(long[] fingerprints, int count, long query) {
+    List<Match> expected = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int distance = Long.bitCount(fingerprints[i] ^ query);
+      if (distance <= 3) {
+        expected.add(new Match(i, 1 - distance / 64.0));
+      }
+    }
+    expected.sort(null);
+    return expected;
+  }
+
+
+  private static List<CharSequence> elements(int from, int to) {
+    List<CharSequence> elements = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      elements.add("e" + i);
+    }
+    return elements;
+  }
+}
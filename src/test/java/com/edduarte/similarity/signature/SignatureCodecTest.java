@@ -0,0 +1,86 @@
+package com.edduarte.similarity.signature;
+
+import com.edduarte.similarity.converter.KShinglesToSignatureConverter;
+import com.edduarte.similarity.converter.SignatureToBandsConverter;
+import orestes.bloomfilter.HashProvider.HashMethod;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class SignatureCodecTest {
+
+  @Test
+  public void roundTripTest() throws Exception {
+    SignatureCodec codec = new SignatureCodec(HashMethod.Murmur3, 42, 100, 20, 5);
+    SignatureToBandsConverter bandConverter = new SignatureToBandsConverter(20, 5);
+    Random random = new Random(42);
+    int[] signature = random.ints(100, 0, 1 << 20).toArray();
+    int[] bands = bandConverter.apply(signature).call();
+    long[] keys = bandConverter.toBandKeys(signature);
+
+    // several records can be read back to back from the same buffer
+    ByteBuffer buffer = ByteBuffer.allocate(2048);
+    buffer.put(codec.encode(signature));
+    buffer.put(codec.encodeBands(bands));
+    buffer.put(codec.encodeBandKeys(keys));
+    buffer.flip();
+
+    EncodedSignature decoded = SignatureCodec.decode(buffer);
+    assertTrue(codec.isCompatible(decoded));
+    assertEquals(HashMethod.Murmur3, decoded.getHashMethod());
+    assertEquals(EncodedSignature.Kind.SIGNATURE, decoded.getKind());
+    assertArrayEquals(signature, decoded.toArray());
+    assertEquals(100, decoded.matches(signature));
+    assertArrayEquals(bands, SignatureCodec.decode(buffer).toArray());
+    assertArrayEquals(keys, SignatureCodec.decode(buffer).toLongArray());
+    assertEquals(0, buffer.remaining());
+
+    // 20-bit values are packed in 20 bits instead of 32
+    assertTrue(codec.encode(signature).length < 100 * 3);
+  }
+
+
+  @Test
+  public void familyTest() {
+    // permutation signatures with seed 0 are not comparable with signatures
+    // of a hash method, even with the same seed and sizes
+    SignatureCodec permutations = SignatureCodec.of(new KShinglesToSignatureConverter(4, 0), 0, 0);
+    SignatureCodec murmur = new SignatureCodec(HashMethod.Murmur3, 0, 4, 0, 0);
+    int[] signature = {1, 2, 3, 4};
+    EncodedSignature decoded =
+        SignatureCodec.decode(ByteBuffer.wrap(permutations.encode(signature)));
+    assertEquals(SignatureCodec.Family.PERMUTATION, decoded.getFamily());
+    assertTrue(permutations.isCompatible(decoded));
+    assertFalse(murmur.isCompatible(decoded));
+    assertFalse(SignatureCodec.forPermutations(1, 4, 0, 0).isCompatible(decoded));
+
+    decoded = SignatureCodec.decode(ByteBuffer.wrap(murmur.encode(signature)));
+    assertEquals(SignatureCodec.Family.HASH_METHOD, decoded.getFamily());
+    assertFalse(permutations.isCompatible(decoded));
+    assertTrue(SignatureCodec.of(
+        new KShinglesToSignatureConverter(HashMethod.Murmur3, 4), 0, 0).isCompatible(decoded));
+  }
+
+
+  @Test
+  public void negativeValuesTest() {
+    SignatureCodec codec = SignatureCodec.forPermutations(0, 4, 0, 0);
+    int[] signature = {-7, Integer.MAX_VALUE, Integer.MIN_VALUE, 0};
+    EncodedSignature decoded = SignatureCodec.decode(ByteBuffer.wrap(codec.encode(signature)));
+    assertNull(decoded.getHashMethod());
+    assertArrayEquals(signature, decoded.toArray());
+    assertEquals(codec.encodedSize(signature), codec.encode(signature).length);
+  }
+}
@@ -0,0 +1,112 @@
+package com.edduarte.similarity.signature;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class SignatureMatrixTest {
+
+  private static final int SIGNATURE_SIZE = 50;
+
+
+  @Test
+  public void offHeapTest() {
+    // chunks of 3 rows, so that rows and range comparisons span several chunks
+    SignatureMatrix m = new OffHeapSignatureMatrix(
+        SIGNATURE_SIZE, 3 * SIGNATURE_SIZE * Integer.BYTES, null);
+    assertSameAsHeap(m);
+  }
+
+
+  @Test
+  public void mappedTest() throws IOException {
+    Path file = Files.createTempFile("signatures", ".bin");
+    try (OffHeapSignatureMatrix m = new OffHeapSignatureMatrix(SIGNATURE_SIZE, file)) {
+      assertSameAsHeap(m);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+
+  @Test
+  public void columnarTest() {
+    // an initial capacity of 1, so that every slot run is moved several times
+    assertSameAsHeap(new ColumnarSignatureBlock(SIGNATURE_SIZE, 1));
+
+    HeapSignatureMatrix heap = new HeapSignatureMatrix(SIGNATURE_SIZE);
+    assertSameAsHeap(heap);
+    ColumnarSignatureBlock block = ColumnarSignatureBlock.of(heap);
+    for (int row = 0; row < heap.size(); row++) {
+      assertArrayEquals(heap.getRow(row), block.getRow(row));
+    }
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void heapCapacityTest() {
+    // 2^32 slots do not fit in a Java array, and are not wrapped to 0
+    new HeapSignatureMatrix(1 << 16, 1 << 16);
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void columnarCapacityTest() {
+    new ColumnarSignatureBlock(1 << 16, 1 << 16);
+  }
+
+
+  @Test
+  public void minMatchesTest() {
+    assertEquals(0, SignatureMatrix.minMatches(0, 100));
+    assertEquals(50, SignatureMatrix.minMatches(0.5, 100));
+    assertEquals(70, SignatureMatrix.minMatches(0.7, 100));
+    assertEquals(34, SignatureMatrix.minMatches(0.335, 100));
+    assertEquals(100, SignatureMatrix.minMatches(1, 100));
+    assertEquals(101, SignatureMatrix.minMatches(1.5, 100));
+    for (int matches = 0; matches <= 30; matches++) {
+      double threshold = (double) matches / 30;
+      assertEquals(matches, SignatureMatrix.minMatches(threshold, 30));
+    }
+  }
+
+
+  private static void assertSameAsHeap(SignatureMatrix m) {
+    SignatureMatrix expected = new HeapSignatureMatrix(SIGNATURE_SIZE);
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      // small values, so that some slots match the query
+      int[] signature = random.ints(SIGNATURE_SIZE, 0, 4).toArray();
+      assertEquals(i, m.append(signature));
+      expected.append(signature);
+    }
+    assertEquals(expected.size(), m.size());
+
+    int[] query = random.ints(SIGNATURE_SIZE, 0, 4).toArray();
+    for (int row = 0; row < m.size(); row++) {
+      assertArrayEquals(expected.getRow(row), m.getRow(row));
+      assertEquals(expected.matches(query, row), m.matches(query, row));
+      for (int minMatches = 0; minMatches <= SIGNATURE_SIZE + 1; minMatches += 4) {
+        assertEquals(expected.matches(query, row) >= minMatches,
+            m.matchesAtLeast(query, row, minMatches));
+      }
+    }
+
+    int[] expectedMatches = new int[90];
+    int[] actualMatches = new int[90];
+    expected.matches(query, 5, 95, expectedMatches);
+    m.matches(query, 5, 95, actualMatches);
+    assertArrayEquals(expectedMatches, actualMatches);
+  }
+}
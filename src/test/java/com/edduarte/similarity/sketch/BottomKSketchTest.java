@@ -0,0 +1,78 @@
+package com.edduarte.similarity.sketch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class BottomKSketchTest {
+
+  @Test
+  public void estimatesTest() {
+    // c1 = [0, 60000) and c2 = [20000, 100000), so the union has 100000
+    // elements, the intersection has 40000 and the jaccard index is 0.4;
+    // with k = 1024 the standard error is about 3%
+    List<Integer> c1 = new ArrayList<>();
+    List<Integer> c2 = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      if (i < 60000) {
+        c1.add(i);
+      }
+      if (i >= 20000) {
+        c2.add(i);
+      }
+    }
+    BottomKSketch s1 = BottomKSketch.of(c1, 1024);
+    BottomKSketch s2 = BottomKSketch.of(c2, 1024);
+
+    assertEquals(60000, s1.cardinality(), 60000 * 0.1);
+    assertEquals(0.4, s1.jaccard(s2), 0.05);
+    assertEquals(100000, s1.unionSize(s2), 100000 * 0.1);
+    assertEquals(40000, s1.intersectionSize(s2), 40000 * 0.15);
+    assertEquals(40000.0 / 60000, s1.containmentIn(s2), 0.1);
+    assertEquals(40000.0 / 80000, s2.containmentIn(s1), 0.1);
+  }
+
+
+  @Test
+  public void mergeTest() {
+    // sketches of the partitions of a set merge into the sketch of the set
+    BottomKSketch whole = new BottomKSketch(256);
+    BottomKSketch part1 = new BottomKSketch(256);
+    BottomKSketch part2 = new BottomKSketch(256);
+    for (int i = 0; i < 50000; i++) {
+      whole.add("element-" + i);
+      (i % 2 == 0 ? part1 : part2).add("element-" + i);
+    }
+    part1.merge(part2);
+    assertEquals(1.0, whole.jaccard(part1), 0);
+    assertEquals(whole.cardinality(), part1.cardinality(), 0);
+  }
+
+
+  @Test
+  public void smallSetTest() {
+    // with fewer than k distinct elements, every estimate is exact
+    BottomKSketch s1 = BottomKSketch.of(Arrays.asList(4, 5, 6, 7, 8, 8, 8), 16);
+    BottomKSketch s2 = BottomKSketch.of(Arrays.asList(7, 8, 9, 10), 16);
+    assertEquals(5, s1.size());
+    assertEquals(5, s1.cardinality(), 0);
+    assertEquals(7, s1.unionSize(s2), 0);
+    assertEquals(2.0 / 7, s1.jaccard(s2), 0);
+    assertEquals(0.5, s2.containmentIn(s1), 1e-9);
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mergeSizeTest() {
+    new BottomKSketch(16).merge(new BottomKSketch(32));
+  }
+}
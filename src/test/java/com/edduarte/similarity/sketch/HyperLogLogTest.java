@@ -0,0 +1,82 @@
+package com.edduarte.similarity.sketch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class HyperLogLogTest {
+
+  @Test
+  public void cardinalityTest() {
+    // small cardinalities are estimated with linear counting, which is
+    // nearly exact, while large ones are within a few standard errors
+    HyperLogLog small = new HyperLogLog();
+    for (int i = 0; i < 10000; i++) {
+      small.add(i % 100);
+    }
+    assertEquals(100, small.cardinality());
+
+    HyperLogLog large = new HyperLogLog();
+    for (long i = 0; i < 1000000; i++) {
+      large.add(i * 31);
+    }
+    assertEquals(1000000, large.cardinality(), 1000000 * 0.03);
+  }
+
+
+  @Test
+  public void unionTest() {
+    List<Integer> c1 = new ArrayList<>();
+    List<Integer> c2 = new ArrayList<>();
+    for (int i = 0; i < 50000; i++) {
+      c1.add(i);
+      c2.add(i + 25000);
+    }
+    HyperLogLog sketch1 = new HyperLogLog();
+    sketch1.addAll(c1);
+    HyperLogLog sketch2 = new HyperLogLog();
+    sketch2.addAll(c2);
+
+    long union = HyperLogLog.unionSize(c1, c2);
+    assertEquals(75000, union, 75000 * 0.03);
+    assertEquals(union, sketch1.merge(sketch2).cardinality());
+
+    List<Integer> set1 = Arrays.asList(4, 5, 6, 7, 8);
+    List<Integer> set2 = Arrays.asList(7, 8, 9, 10);
+    assertEquals(7, HyperLogLog.unionSize(set1, set2));
+  }
+
+
+  @Test
+  public void exactUnionTest() {
+    // up to the limit, the union is counted exactly, with the same equality of numbers as the
+    // sketch, where 2, 2L and 2.0 are the same element and 2.5 is another one
+    List<Number> c1 = new ArrayList<>();
+    List<Number> c2 = new ArrayList<>();
+    for (int i = 0; i < HyperLogLog.EXACT_UNION_LIMIT / 2 - 1; i++) {
+      c1.add(i);
+      c2.add((long) i + 1000);
+    }
+    c1.add(2.0);
+    c2.add(2.5);
+    assertTrue(c1.size() + c2.size() <= HyperLogLog.EXACT_UNION_LIMIT);
+    assertEquals(HyperLogLog.EXACT_UNION_LIMIT / 2 - 1 + 1000 + 1, HyperLogLog.unionSize(c1, c2));
+    assertEquals(0, HyperLogLog.unionSize(c1.subList(0, 0), c2.subList(0, 0)));
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mergePrecisionTest() {
+    new HyperLogLog(10).merge(new HyperLogLog(12));
+  }
+}
@@ -0,0 +1,62 @@
+package com.edduarte.similarity.sketch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Eduardo Duarte (<a href="mailto:hi@edduarte.com">hi@edduarte.com</a>)
+ * @version 0.0.6
+ * @since 0.0.6
+ */
+public class PreparedDocumentTest {
+
+  @Test
+  public void mergeTest() {
+    // d1 = {a, b, c, d}, with a repeated shingle, and d2 = {c, d, e}
+    PreparedDocument d1 = PreparedDocument.of(Arrays.asList("a", "b", "c", "c", "d"));
+    PreparedDocument d2 = PreparedDocument.of(Arrays.asList("e", "d", "c"));
+    PreparedDocument empty = PreparedDocument.of(Collections.emptyList());
+
+    assertEquals(4, d1.size());
+    assertEquals(3, d2.size());
+    assertEquals(2, d1.intersectionSize(d2));
+    assertEquals(2.0 / 5, d1.jaccard(d2), 0);
+    assertEquals(2.0 / 4, d1.containmentIn(d2), 0);
+    assertEquals(2.0 / 3, d2.containmentIn(d1), 0);
+    assertEquals(1.0, d1.jaccard(d1), 0);
+    assertEquals(0.0, d1.jaccard(empty), 0);
+    assertEquals(1.0, empty.jaccard(empty), 0);
+  }
+
+
+  @Test
+  public void jaccardAtLeastTest() {
+    // the early exit must agree with the full merge for every threshold
+    Random random = new Random(42);
+    for (int n = 0; n < 200; n++) {
+      List<String> shingles1 = new ArrayList<>();
+      List<String> shingles2 = new ArrayList<>();
+      int universe = 1 + random.nextInt(100);
+      for (int i = random.nextInt(80); i > 0; i--) {
+        shingles1.add(String.valueOf(random.nextInt(universe)));
+      }
+      for (int i = random.nextInt(80); i > 0; i--) {
+        shingles2.add(String.valueOf(random.nextInt(universe)));
+      }
+      PreparedDocument d1 = PreparedDocument.of(shingles1);
+      PreparedDocument d2 = PreparedDocument.of(shingles2);
+      double jaccard = d1.jaccard(d2);
+      for (double threshold = 0; threshold <= 1; threshold += 0.05) {
+        assertEquals(jaccard >= threshold, d1.jaccardAtLeast(d2, threshold));
+      }
+      assertEquals(true, d1.jaccardAtLeast(d2, jaccard));
+    }
+  }
+}